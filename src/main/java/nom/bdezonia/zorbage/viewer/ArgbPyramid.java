@@ -0,0 +1,211 @@
+/*
+ * zorbage-viewer: utility app for loading and viewing various image data formats
+ *
+ * Copyright (c) 2020-2022 Barry DeZonia All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 
+ * Neither the name of the <copyright holder> nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+ * BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package nom.bdezonia.zorbage.viewer;
+
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+import java.util.function.ToIntFunction;
+
+import nom.bdezonia.zorbage.algebra.Algebra;
+import nom.bdezonia.zorbage.dataview.PlaneView;
+import nom.bdezonia.zorbage.type.color.RgbUtils;
+
+/**
+ * A pyramid of a color plane. Levels hold packed argb ints whose channels are
+ * the means of the channels they cover.
+ * 
+ * @author Barry DeZonia
+ *
+ * @param <U> RgbMember or ArgbMember
+ */
+public class ArgbPyramid<U> extends PlanePyramid<U> {
+
+	private final Algebra<?,U> alg;
+	
+	/**
+	 * 
+	 * @param alg The algebra of the plane's values.
+	 * @param onLevelBuilt Called from the build thread with the shift of each
+	 *   level as it becomes available.
+	 */
+	public ArgbPyramid(Algebra<?,U> alg, IntConsumer onLevelBuilt) {
+		
+		super(onLevelBuilt);
+		
+		this.alg = alg;
+	}
+	
+	@Override
+	protected int bytesPerPixel() {
+		
+		return 4;
+	}
+	
+	@Override
+	protected Object reducePlane(PlaneView<U> plane, int shift, int width, int height, BooleanSupplier cancelled) {
+		
+		int[] pixels = new int[width * height];
+		
+		RenderPool.renderInBackground(height, false, new RenderPool.Band() {
+			
+			@Override
+			public void render(int y0, int y1) {
+				
+				PlaneView<U> bandPlane = RenderPool.duplicate(plane);
+				
+				PlaneRowReader<U> reader = new PlaneRowReader<>(alg, bandPlane);
+				
+				ToIntFunction<U> conv = PlaneRowReader.asArgb();
+				
+				int[] row = new int[PlaneRowReader.CHUNK];
+				
+				ChannelReducer reducer = new ChannelReducer(width);
+				
+				long planeWidth = bandPlane.d0();
+				
+				long planeHeight = bandPlane.d1();
+				
+				for (int y = y0; y < y1; y++) {
+					
+					if (cancelled.getAsBoolean())
+						return;
+					
+					reducer.clear();
+					
+					long lastY = Math.min(planeHeight, ((long) y + 1) << shift);
+					
+					for (long my = ((long) y) << shift; my < lastY; my++) {
+						
+						for (long mx = 0; mx < planeWidth; mx += row.length) {
+							
+							int count = (int) Math.min(row.length, planeWidth - mx);
+							
+							reader.readInts(my, mx, count, row, 0, conv);
+							
+							for (int i = 0; i < count; i++) {
+								
+								reducer.add((int) ((mx + i) >> shift), row[i]);
+							}
+						}
+					}
+					
+					reducer.results(pixels, y * width);
+				}
+			}
+		});
+		
+		return pixels;
+	}
+	
+	@Override
+	protected Object reduceLevel(Level finer, int width, int height, BooleanSupplier cancelled) {
+		
+		int[] src = (int[]) finer.pixels;
+		
+		int[] pixels = new int[width * height];
+		
+		RenderPool.renderInBackground(height, false, new RenderPool.Band() {
+			
+			@Override
+			public void render(int y0, int y1) {
+				
+				ChannelReducer reducer = new ChannelReducer(width);
+				
+				for (int y = y0; y < y1; y++) {
+					
+					if (cancelled.getAsBoolean())
+						return;
+					
+					reducer.clear();
+					
+					int lastY = Math.min(finer.height, 2 * y + 2);
+					
+					for (int fy = 2 * y; fy < lastY; fy++) {
+						
+						int rowStart = fy * finer.width;
+						
+						for (int fx = 0; fx < finer.width; fx++) {
+							
+							reducer.add(fx >> 1, src[rowStart + fx]);
+						}
+					}
+					
+					reducer.results(pixels, y * width);
+				}
+			}
+		});
+		
+		return pixels;
+	}
+	
+	// averages the four channels of packed argb values per column
+	
+	private static class ChannelReducer {
+		
+		private final RowReducer a;
+		private final RowReducer r;
+		private final RowReducer g;
+		private final RowReducer b;
+		private final int width;
+		
+		ChannelReducer(int width) {
+			this.width = width;
+			this.a = new RowReducer(RowReducer.Filter.MEAN, width);
+			this.r = new RowReducer(RowReducer.Filter.MEAN, width);
+			this.g = new RowReducer(RowReducer.Filter.MEAN, width);
+			this.b = new RowReducer(RowReducer.Filter.MEAN, width);
+		}
+		
+		void clear() {
+			a.clear();
+			r.clear();
+			g.clear();
+			b.clear();
+		}
+		
+		void add(int column, int color) {
+			a.add(column, RgbUtils.a(color));
+			r.add(column, RgbUtils.r(color));
+			g.add(column, RgbUtils.g(color));
+			b.add(column, RgbUtils.b(color));
+		}
+		
+		void results(int[] pixels, int offset) {
+			for (int x = 0; x < width; x++) {
+				pixels[offset + x] = RgbUtils.argb(
+						(int) Math.round(a.result(x)),
+						(int) Math.round(r.result(x)),
+						(int) Math.round(g.result(x)),
+						(int) Math.round(b.result(x)));
+			}
+		}
+	}
+}
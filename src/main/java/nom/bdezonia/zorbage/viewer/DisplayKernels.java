@@ -0,0 +1,218 @@
+/*
+ * zorbage-viewer: utility app for loading and viewing various image data formats
+ *
+ * Copyright (c) 2020-2022 Barry DeZonia All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 
+ * Neither the name of the <copyright holder> nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+ * BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package nom.bdezonia.zorbage.viewer;
+
+/**
+ * The inner loops of display mapping, min/max scans and box filter reductions.
+ * This class holds the scalar loops that run on every JVM. A multi-release jar
+ * also carries a subclass that uses the Java Vector API. It is used when the
+ * JVM runs Java 17 or later and was started with
+ * {@code --add-modules jdk.incubator.vector}. Otherwise the scalar loops are
+ * used. Setting the system property {@value #VECTOR_PROPERTY} to false forces
+ * the scalar loops.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class DisplayKernels {
+
+	public static final String VECTOR_PROPERTY = "zorbage.viewer.vector";
+	
+	// only present in the META-INF/versions/17 part of the jar
+	
+	private static final String VECTOR_CLASS = "nom.bdezonia.zorbage.viewer.VectorDisplayKernels";
+	
+	private static final DisplayKernels INSTANCE = choose();
+	
+	/**
+	 * The fastest kernels this JVM can run.
+	 */
+	public static DisplayKernels get() {
+		
+		return INSTANCE;
+	}
+	
+	private static DisplayKernels choose() {
+		
+		if (!Boolean.parseBoolean(System.getProperty(VECTOR_PROPERTY, "true")))
+			return new DisplayKernels();
+		
+		try {
+			
+			return (DisplayKernels) Class.forName(VECTOR_CLASS).getDeclaredConstructor().newInstance();
+			
+		} catch (ReflectiveOperationException | LinkageError e) {
+			
+			// an older JVM or the vector module was not added
+			
+			return new DisplayKernels();
+		}
+	}
+	
+	/**
+	 * A short description of the kernels for logs and about boxes.
+	 */
+	public String name() {
+		
+		return "scalar";
+	}
+	
+	/**
+	 * Color a run of values through a color table the way
+	 * {@link DisplayMapping#argb(double)} does.
+	 * 
+	 * @param values The values to color.
+	 * @param off The position of the first value.
+	 * @param count The number of values to color.
+	 * @param min The value at the start of the color table.
+	 * @param scale The color table positions per half unit of value.
+	 * @param colorTable The ramp of argb colors.
+	 * @param dest The array the colors are written to.
+	 * @param destOff The position of the first color.
+	 */
+	public void argb(double[] values, int off, int count, double min, double scale,
+			int[] colorTable, int[] dest, int destOff)
+	{
+		int maxIndex = colorTable.length - 1;
+		
+		double halfMin = min * 0.5;
+		
+		for (int i = 0; i < count; i++) {
+			
+			double value = values[off + i];
+			
+			int color;
+			
+			if (value != value || value == Double.NEGATIVE_INFINITY)
+				color = DisplayMapping.BLACK;
+			
+			else if (value == Double.POSITIVE_INFINITY)
+				color = DisplayMapping.WHITE;
+			
+			else {
+				
+				double pos = ((value * 0.5) - halfMin) * scale + 0.5;
+				
+				if (pos < 1)
+					color = colorTable[0];
+				else if (pos >= maxIndex)
+					color = colorTable[maxIndex];
+				else
+					color = colorTable[(int) pos];
+			}
+			
+			dest[destOff + i] = color;
+		}
+	}
+	
+	/**
+	 * Find the smallest and largest of a run of values. NaNs are skipped.
+	 * 
+	 * @param minMax Receives the min in [0] and the max in [1]. These are positive
+	 *   and negative infinity when every value is a NaN.
+	 * @return The number of values that were not NaNs.
+	 */
+	public int minMax(double[] values, int off, int count, double[] minMax) {
+		
+		double min = Double.POSITIVE_INFINITY;
+		
+		double max = Double.NEGATIVE_INFINITY;
+		
+		int nans = 0;
+		
+		for (int i = off; i < off + count; i++) {
+			
+			double value = values[i];
+			
+			if (value != value) {
+				nans++;
+				continue;
+			}
+			
+			if (value < min) min = value;
+			
+			if (value > max) max = value;
+		}
+		
+		minMax[0] = min;
+		
+		minMax[1] = max;
+		
+		return count - nans;
+	}
+	
+	/**
+	 * The float version of {@link #minMax(double[], int, int, double[])}.
+	 */
+	public int minMax(float[] values, int off, int count, double[] minMax) {
+		
+		float min = Float.POSITIVE_INFINITY;
+		
+		float max = Float.NEGATIVE_INFINITY;
+		
+		int nans = 0;
+		
+		for (int i = off; i < off + count; i++) {
+			
+			float value = values[i];
+			
+			if (value != value) {
+				nans++;
+				continue;
+			}
+			
+			if (value < min) min = value;
+			
+			if (value > max) max = value;
+		}
+		
+		minMax[0] = min;
+		
+		minMax[1] = max;
+		
+		return count - nans;
+	}
+	
+	/**
+	 * The sum of a run of values. Any NaN makes the sum a NaN.
+	 */
+	public double sum(double[] values, int off, int count) {
+		
+		double sum = 0;
+		
+		for (int i = off; i < off + count; i++) {
+			
+			sum += values[i];
+		}
+		
+		return sum;
+	}
+}
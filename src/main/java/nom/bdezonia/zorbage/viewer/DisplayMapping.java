@@ -0,0 +1,214 @@
+/*
+ * zorbage-viewer: utility app for loading and viewing various image data formats
+ *
+ * Copyright (c) 2020-2022 Barry DeZonia All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 
+ * Neither the name of the <copyright holder> nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+ * BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package nom.bdezonia.zorbage.viewer;
+
+import nom.bdezonia.zorbage.type.color.RgbUtils;
+
+/**
+ * A precomputed mapping from real values to the colors of a color table. The
+ * display range is reduced to a double min and scale once so that each
+ * pixel can be colored with a handful of primitive operations rather than a
+ * chain of BigDecimal divides and compares.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class DisplayMapping {
+
+	public static final int BLACK = RgbUtils.argb(255, 0, 0, 0);
+	
+	public static final int WHITE = RgbUtils.argb(255, 255, 255, 255);
+	
+	private final int[] colorTable;
+	private final int maxIndex;
+	private final double min;
+	private final double scale;
+	private final int[] directTable;
+	private final int directBase;
+
+	/**
+	 * Make a mapping of the range [min, max] onto a color table. Values below min
+	 * map to the first color and values above max map to the last color.
+	 * 
+	 * @param colorTable The ramp of argb colors.
+	 * @param min The value that maps to the first color in the table.
+	 * @param max The value that maps to the last color in the table.
+	 */
+	public DisplayMapping(int[] colorTable, double min, double max) {
+		
+		this(colorTable, min, max, 0, -1);
+	}
+
+	/**
+	 * Make a mapping of the range [min, max] onto a color table that also
+	 * precalculates the color of every integer from first to last. Small
+	 * integer types (8 and 16 bit) can then be colored with a single array
+	 * lookup per pixel.
+	 * 
+	 * @param colorTable The ramp of argb colors.
+	 * @param min The value that maps to the first color in the table.
+	 * @param max The value that maps to the last color in the table.
+	 * @param first The smallest integer value of the direct table.
+	 * @param last The largest integer value of the direct table.
+	 */
+	public DisplayMapping(int[] colorTable, double min, double max, int first, int last) {
+		
+		this.colorTable = colorTable;
+		
+		this.maxIndex = colorTable.length - 1;
+		
+		this.min = min;
+		
+		// halve everything so that ranges as wide as the whole double range do not
+		// overflow to infinity
+		
+		double halfSpan = (max * 0.5) - (min * 0.5);
+		
+		// a zero width range is treated the same way the BigDecimal code treats it
+		
+		if (halfSpan == 0)
+			halfSpan = 0.5;
+		
+		this.scale = maxIndex / halfSpan;
+		
+		if (last >= first) {
+			
+			this.directBase = first;
+			
+			this.directTable = new int[last - first + 1];
+			
+			for (int i = 0; i < directTable.length; i++) {
+				
+				directTable[i] = colorTable[colorIndex(first + i)];
+			}
+		}
+		else {
+			
+			this.directBase = 0;
+			
+			this.directTable = null;
+		}
+	}
+	
+	/**
+	 * Returns the color table this mapping colors values with.
+	 */
+	public int[] colorTable() {
+		
+		return colorTable;
+	}
+
+	/**
+	 * Returns true if this mapping has precalculated the colors of an integer range.
+	 */
+	public boolean hasDirectTable() {
+		
+		return directTable != null;
+	}
+	
+	/**
+	 * Returns the color of an integer that lies within the direct table range.
+	 */
+	public int directArgb(int value) {
+		
+		return directTable[value - directBase];
+	}
+	
+	/**
+	 * Calculate the color table index of a value. Callers must handle nans and
+	 * infinities before calling this method.
+	 */
+	public int colorIndex(double value) {
+
+		// measure from min so a range far from zero keeps its precision. the
+		// extra 0.5 forces correct rounding when truncating to an int.
+		
+		double pos = ((value * 0.5) - (min * 0.5)) * scale + 0.5;
+
+		if (pos < 1)
+			return 0;
+		
+		if (pos >= maxIndex)
+			return maxIndex;
+
+		return (int) pos;
+	}
+	
+	/**
+	 * Calculate the argb color of a value. Nans are black, positive infinities
+	 * are white, and negative infinities are black regardless of color table.
+	 */
+	public int argb(double value) {
+		
+		if (Double.isNaN(value))
+			return BLACK;
+		
+		if (value == Double.POSITIVE_INFINITY)
+			return WHITE;
+		
+		if (value == Double.NEGATIVE_INFINITY)
+			return BLACK;
+		
+		return colorTable[colorIndex(value)];
+	}
+	
+	/**
+	 * Calculate the argb colors of a run of values. Each color is the same one
+	 * {@link #argb(double)} calculates.
+	 */
+	public void argb(double[] values, int off, int count, int[] dest, int destOff) {
+		
+		DisplayKernels.get().argb(values, off, count, min, scale, colorTable, dest, destOff);
+	}
+	
+	/**
+	 * Two mappings are equal when they color every value the same: they share the
+	 * same color table and reduce to the same min and scale.
+	 */
+	@Override
+	public boolean equals(Object o) {
+		
+		if (!(o instanceof DisplayMapping))
+			return false;
+		
+		DisplayMapping other = (DisplayMapping) o;
+		
+		return colorTable == other.colorTable &&
+				Double.compare(min, other.min) == 0 &&
+				Double.compare(scale, other.scale) == 0;
+	}
+	
+	@Override
+	public int hashCode() {
+		
+		return System.identityHashCode(colorTable) * 31 + Double.hashCode(min) * 17 + Double.hashCode(scale);
+	}
+}
@@ -0,0 +1,425 @@
+/*
+ * zorbage-viewer: utility app for loading and viewing various image data formats
+ *
+ * Copyright (c) 2020-2022 Barry DeZonia All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 
+ * Neither the name of the <copyright holder> nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+ * BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package nom.bdezonia.zorbage.viewer;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Holds every frame of a walk along one extra axis already rendered to argb
+ * pixels so the walk can be played back by copying pixels instead of drawing.
+ * The frames are rendered once on a background thread at the zoom, pan and
+ * colors of the view when the cache was filled. Each frame is kept run length
+ * encoded when that is smaller than its raw pixels, which it usually is for
+ * frames with a black border or flat areas.
+ * 
+ * The cache is keyed by everything that decides the colors of the frames other
+ * than the position along the axis. The viewer should drop the cache as soon as
+ * its view no longer matches the key.
+ * 
+ * The frames may take up at most a byte budget. The budget defaults to 512 MB
+ * per viewer and can be set with the system property zorbage.viewer.framecache.mb.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class FrameCache {
+
+	public static final String BUDGET_PROPERTY = "zorbage.viewer.framecache.mb";
+	
+	private static final long BUDGET = budget();
+	
+	/**
+	 * The code that draws one frame.
+	 */
+	public interface Renderer {
+		
+		/**
+		 * Draw a frame into pixels. Runs on the cache's fill thread.
+		 * 
+		 * @return False if the frame was cancelled before it was finished.
+		 */
+		boolean render(long frame, int[] pixels, BooleanSupplier cancelled);
+	}
+	
+	/**
+	 * Follows the filling of the cache. Called on the event thread.
+	 */
+	public interface Listener {
+		
+		/**
+		 * Some frames have been filled. Called one last time with filled == total
+		 * once the cache is ready.
+		 */
+		void progress(long filled, long total);
+		
+		/**
+		 * The frames could not be cached. Not called when a fill is cancelled.
+		 */
+		void failed(String reason);
+	}
+	
+	private final AtomicLong generation = new AtomicLong();
+	private List<Object> key = null;
+	private int axis = -1;
+	private int width = 0;
+	private int height = 0;
+	private int[][] frames = new int[0][];
+	private boolean[] encoded = new boolean[0];
+	private boolean ready = false;
+	private long bytes = 0;
+	
+	/**
+	 * Start rendering the frames of a walk along an axis on a background thread.
+	 * Any fill in progress is cancelled and the frames cached before are dropped.
+	 * 
+	 * @param axis The extra axis being walked.
+	 * @param key The view state the frames are drawn with.
+	 * @param frameCount The number of positions along the axis.
+	 * @param width The width in pixels of a frame.
+	 * @param height The height in pixels of a frame.
+	 * @param renderer Draws the frames.
+	 * @param listener Follows the fill.
+	 */
+	public synchronized void fill(int axis, List<Object> key, long frameCount, int width, int height,
+			Renderer renderer, Listener listener)
+	{
+		long gen = generation.incrementAndGet();
+		
+		drop();
+		
+		if (frameCount > Integer.MAX_VALUE) {
+			
+			failed(listener, "Too many frames to cache: " + frameCount);
+			
+			return;
+		}
+		
+		this.key = key;
+		
+		this.axis = axis;
+		
+		this.width = width;
+		
+		this.height = height;
+		
+		this.frames = new int[(int) frameCount][];
+		
+		this.encoded = new boolean[(int) frameCount];
+		
+		BooleanSupplier cancelled = new BooleanSupplier() {
+			
+			@Override
+			public boolean getAsBoolean() {
+
+				return generation.get() != gen;
+			}
+		};
+		
+		Thread t = new Thread(new Runnable() {
+			
+			@Override
+			public void run() {
+				
+				render(frameCount, renderer, listener, cancelled);
+			}
+		}, "zorbage-viewer-framecache");
+		
+		t.setDaemon(true);
+		
+		t.start();
+	}
+	
+	/**
+	 * Returns true if every frame is cached for a view with the given state.
+	 */
+	public synchronized boolean isReady(List<Object> key) {
+		
+		return ready && key.equals(this.key);
+	}
+	
+	/**
+	 * Returns true if the cache holds or is filling the frames of a view with the
+	 * given state.
+	 */
+	public synchronized boolean holds(List<Object> key) {
+		
+		return key.equals(this.key);
+	}
+	
+	/**
+	 * The axis the cached frames walk along or -1 if the cache is empty.
+	 */
+	public synchronized int axis() {
+		
+		return axis;
+	}
+	
+	/**
+	 * Drop the cached frames, cancelling a fill in progress, unless they were
+	 * drawn with the given view state.
+	 * 
+	 * @return True if frames were dropped.
+	 */
+	public synchronized boolean invalidateUnless(List<Object> key) {
+		
+		if (this.key == null || key.equals(this.key))
+			return false;
+		
+		invalidate();
+		
+		return true;
+	}
+	
+	/**
+	 * Drop the cached frames and cancel a fill in progress.
+	 */
+	public synchronized void invalidate() {
+		
+		generation.incrementAndGet();
+		
+		drop();
+	}
+	
+	/**
+	 * Cancel a fill in progress. Frames that are all cached are kept.
+	 * 
+	 * @return True if a fill was cancelled.
+	 */
+	public synchronized boolean cancelFill() {
+		
+		if (this.key == null || ready)
+			return false;
+		
+		invalidate();
+		
+		return true;
+	}
+	
+	/**
+	 * Copy a cached frame into pixels laid out in rows of the cache's width.
+	 * 
+	 * @return False if the frame is not cached.
+	 */
+	public synchronized boolean copyFrame(long frame, int[] pixels) {
+		
+		if (frame < 0 || frame >= frames.length || frames[(int) frame] == null)
+			return false;
+		
+		int[] f = frames[(int) frame];
+		
+		if (!encoded[(int) frame]) {
+			
+			System.arraycopy(f, 0, pixels, 0, f.length);
+			
+			return true;
+		}
+		
+		// pairs of run length and color
+		
+		int pos = 0;
+		
+		for (int i = 0; i < f.length; i += 2) {
+			
+			Arrays.fill(pixels, pos, pos + f[i], f[i+1]);
+			
+			pos += f[i];
+		}
+		
+		return true;
+	}
+	
+	public synchronized int width() {
+		
+		return width;
+	}
+	
+	public synchronized int height() {
+		
+		return height;
+	}
+	
+	private void drop() {
+		
+		key = null;
+		
+		axis = -1;
+		
+		frames = new int[0][];
+		
+		encoded = new boolean[0];
+		
+		ready = false;
+		
+		bytes = 0;
+	}
+	
+	// draw the frames one after another. the rows of each frame are spread across
+	// the render pool so all the cores are busy without holding many frames at once.
+	
+	private void render(long frameCount, Renderer renderer, Listener listener, BooleanSupplier cancelled) {
+		
+		int[] pixels = new int[width * height];
+		
+		long lastReport = 0;
+		
+		for (long i = 0; i < frameCount; i++) {
+			
+			if (!renderer.render(i, pixels, cancelled) || cancelled.getAsBoolean())
+				return;
+			
+			int[] runs = encode(pixels);
+			
+			boolean useRuns = runs.length < pixels.length;
+			
+			int[] stored = useRuns ? runs : pixels.clone();
+			
+			synchronized (this) {
+				
+				if (cancelled.getAsBoolean())
+					return;
+				
+				if (bytes + 4L * stored.length > BUDGET) {
+					
+					drop();
+					
+					failed(listener, "The frames need more than the " + (BUDGET / 1024 / 1024) +
+							" MB set by " + BUDGET_PROPERTY);
+					
+					return;
+				}
+				
+				frames[(int) i] = stored;
+				
+				encoded[(int) i] = useRuns;
+				
+				bytes += 4L * stored.length;
+				
+				if (i == frameCount - 1)
+					ready = true;
+			}
+			
+			long now = System.nanoTime();
+			
+			if (i == frameCount - 1 || now - lastReport > 100_000_000L) {
+				
+				progress(listener, i + 1, frameCount);
+				
+				lastReport = now;
+			}
+		}
+	}
+	
+	// run length encode pixels as pairs of run length and color. gives up once
+	// the runs are no smaller than the pixels.
+	
+	private static int[] encode(int[] pixels) {
+		
+		int[] runs = new int[64];
+		
+		int n = 0;
+		
+		int i = 0;
+		
+		while (i < pixels.length) {
+			
+			int color = pixels[i];
+			
+			int j = i + 1;
+			
+			while (j < pixels.length && pixels[j] == color)
+				j++;
+			
+			if (n + 2 >= pixels.length)
+				return pixels;
+			
+			if (n + 2 > runs.length)
+				runs = Arrays.copyOf(runs, Math.min(pixels.length, runs.length * 2));
+			
+			runs[n++] = j - i;
+			
+			runs[n++] = color;
+			
+			i = j;
+		}
+		
+		return Arrays.copyOf(runs, n);
+	}
+	
+	private static void progress(Listener listener, long filled, long total) {
+		
+		SwingUtilities.invokeLater(new Runnable() {
+			
+			@Override
+			public void run() {
+				
+				listener.progress(filled, total);
+			}
+		});
+	}
+	
+	private static void failed(Listener listener, String reason) {
+		
+		SwingUtilities.invokeLater(new Runnable() {
+			
+			@Override
+			public void run() {
+				
+				listener.failed(reason);
+			}
+		});
+	}
+	
+	private static long budget() {
+		
+		long megabytes = 512;
+		
+		String prop = System.getProperty(BUDGET_PROPERTY);
+		
+		if (prop != null) {
+			
+			try {
+				
+				megabytes = Long.parseLong(prop.trim());
+				
+			} catch (NumberFormatException e) {
+				
+				System.out.println("Ignoring bad value for " + BUDGET_PROPERTY + ": " + prop);
+			}
+		}
+		
+		return Math.max(0, megabytes) * 1024 * 1024;
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * zorbage-viewer: utility app for loading and viewing various image data formats
+ *
+ * Copyright (c) 2020-2022 Barry DeZonia All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 
+ * Neither the name of the <copyright holder> nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+ * BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package nom.bdezonia.zorbage.viewer;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+
+import javax.swing.JComponent;
+
+/**
+ * The component a viewer shows its frames in. It takes up whatever room its
+ * container gives it and paints the most recently published frame at its top
+ * left corner. Any area the frame does not cover yet, such as just after the
+ * component grows, is painted black.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class ImagePane extends JComponent {
+
+	private static final long serialVersionUID = 1L;
+
+	private BufferedImage image = null;
+	
+	/**
+	 * 
+	 * @param preferredWidth The width to ask for when the window is first laid out.
+	 * @param preferredHeight The height to ask for when the window is first laid out.
+	 */
+	public ImagePane(int preferredWidth, int preferredHeight) {
+		
+		setPreferredSize(new Dimension(preferredWidth, preferredHeight));
+		
+		setOpaque(true);
+	}
+	
+	/**
+	 * The frame being shown. Only call from the event thread.
+	 */
+	public BufferedImage getImage() {
+		
+		return image;
+	}
+	
+	/**
+	 * Show a new frame. Only call from the event thread.
+	 */
+	public void setImage(BufferedImage image) {
+		
+		this.image = image;
+		
+		repaint();
+	}
+	
+	@Override
+	protected void paintComponent(Graphics g) {
+		
+		int w = 0;
+		
+		int h = 0;
+		
+		if (image != null) {
+			
+			g.drawImage(image, 0, 0, null);
+			
+			w = image.getWidth();
+			
+			h = image.getHeight();
+		}
+		
+		g.setColor(Color.BLACK);
+		
+		if (getWidth() > w)
+			g.fillRect(w, 0, getWidth() - w, getHeight());
+		
+		if (getHeight() > h)
+			g.fillRect(0, h, w, getHeight() - h);
+	}
+}
@@ -0,0 +1,478 @@
+/*
+ * zorbage-viewer: utility app for loading and viewing various image data formats
+ *
+ * Copyright (c) 2020-2022 Barry DeZonia All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 
+ * Neither the name of the <copyright holder> nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+ * BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package nom.bdezonia.zorbage.viewer;
+
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BooleanSupplier;
+
+import nom.bdezonia.zorbage.algebra.Algebra;
+import nom.bdezonia.zorbage.algebra.Infinite;
+import nom.bdezonia.zorbage.algebra.NaN;
+import nom.bdezonia.zorbage.algebra.Ordered;
+import nom.bdezonia.zorbage.datasource.IndexedDataSource;
+
+/**
+ * The smallest and largest values of a data source along with counts of its
+ * NaNs and infinities. The data source is split into ranges of indices that
+ * are reduced in parallel and then merged.
+ * <p>
+ * Data sources of the fixed width integer and floating point types that live
+ * in array storage are read through a {@link PrimitiveKernel} and reduced with
+ * primitive math. Everything else is reduced one value at a time through its
+ * algebra. Data sources that can only be read by one thread are reduced one
+ * range at a time on the calling thread.
+ * <p>
+ * NaNs are counted and skipped. Infinities are counted and take part in the
+ * min and max. A data source with no values other than NaNs has a min and max
+ * of zero.
+ * 
+ * @author Barry DeZonia
+ *
+ * @param <U> An ordered type.
+ */
+public class MinMaxReduction<U> {
+
+	// the values each task reduces
+	
+	private static final int CHUNK = 1 << 16;
+	
+	// the values read from a primitive array at a time
+	
+	private static final int BLOCK = 4096;
+	
+	private static final BooleanSupplier NEVER = new BooleanSupplier() {
+		
+		@Override
+		public boolean getAsBoolean() {
+			
+			return false;
+		}
+	};
+	
+	private final U min;
+	private final U max;
+	private boolean found = false;
+	private long counted = 0;
+	private long nans = 0;
+	private long posInfs = 0;
+	private long negInfs = 0;
+	
+	private MinMaxReduction(Algebra<?,U> alg) {
+		
+		this.min = alg.construct();
+		
+		this.max = alg.construct();
+	}
+	
+	/**
+	 * Reduce a whole data source.
+	 * 
+	 * @param alg The algebra of the values. It must be Ordered.
+	 * @param data The values to reduce.
+	 * @param lock The object that guards data if it can only be read by one
+	 *   thread at a time.
+	 */
+	public static <U> MinMaxReduction<U> compute(Algebra<?,U> alg, IndexedDataSource<U> data, Object lock) {
+		
+		return compute(alg, data, lock, NEVER);
+	}
+	
+	/**
+	 * Reduce a whole data source unless cancelled first.
+	 * 
+	 * @param alg The algebra of the values. It must be Ordered.
+	 * @param data The values to reduce.
+	 * @param lock The object that guards data if it can only be read by one
+	 *   thread at a time.
+	 * @param cancelled Polled between ranges of values.
+	 * @return The reduction or null if it was cancelled.
+	 */
+	public static <U> MinMaxReduction<U> compute(Algebra<?,U> alg, IndexedDataSource<U> data, Object lock,
+			BooleanSupplier cancelled)
+	{
+		Reducer<U> reducer = new Reducer<>(alg, data, cancelled);
+		
+		long size = data.size();
+		
+		MinMaxReduction<U> result;
+		
+		if (data.accessWithOneThread()) {
+			
+			result = new MinMaxReduction<>(alg);
+			
+			for (long start = 0; start < size && !cancelled.getAsBoolean(); start += CHUNK) {
+				
+				// let other readers have the data between ranges
+				
+				synchronized (lock) {
+					
+					reducer.merge(result, reducer.reduce(start, Math.min(size, start + CHUNK)));
+				}
+			}
+		}
+		else
+			result = RenderPool.invokeInBackground(new Task<>(reducer, 0, size));
+		
+		if (cancelled.getAsBoolean())
+			return null;
+		
+		if (!result.found) {
+			
+			alg.zero().call(result.min);
+			
+			alg.zero().call(result.max);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * The smallest value that is not a NaN.
+	 */
+	public U min() {
+		
+		return min;
+	}
+	
+	/**
+	 * The largest value that is not a NaN.
+	 */
+	public U max() {
+		
+		return max;
+	}
+	
+	/**
+	 * The number of values that are not NaNs.
+	 */
+	public long counted() {
+		
+		return counted;
+	}
+	
+	/**
+	 * The number of NaNs.
+	 */
+	public long nans() {
+		
+		return nans;
+	}
+	
+	/**
+	 * The number of positive infinities.
+	 */
+	public long positiveInfinities() {
+		
+		return posInfs;
+	}
+	
+	/**
+	 * The number of negative infinities.
+	 */
+	public long negativeInfinities() {
+		
+		return negInfs;
+	}
+	
+	@SuppressWarnings("serial")
+	private static class Task<U> extends RecursiveTask<MinMaxReduction<U>> {
+		
+		private final Reducer<U> reducer;
+		private final long start;
+		private final long end;
+		
+		Task(Reducer<U> reducer, long start, long end) {
+			
+			this.reducer = reducer;
+			
+			this.start = start;
+			
+			this.end = end;
+		}
+		
+		@Override
+		protected MinMaxReduction<U> compute() {
+			
+			if (end - start <= CHUNK)
+				return reducer.reduce(start, end);
+			
+			long mid = start + (end - start) / 2;
+			
+			Task<U> left = new Task<>(reducer, start, mid);
+			
+			left.fork();
+			
+			MinMaxReduction<U> right = new Task<>(reducer, mid, end).compute();
+			
+			MinMaxReduction<U> result = left.join();
+			
+			reducer.merge(result, right);
+			
+			return result;
+		}
+	}
+	
+	// reduces ranges of one data source. shared by all the tasks of a reduction
+	// so it holds no per range state.
+	
+	private static class Reducer<U> {
+		
+		private final Algebra<?,U> alg;
+		private final Ordered<U> ordered;
+		private final NaN<U> nanTester;
+		private final Infinite<U> infTester;
+		private final IndexedDataSource<U> data;
+		private final PrimitiveKernel kernel;
+		private final BooleanSupplier cancelled;
+		
+		@SuppressWarnings("unchecked")
+		Reducer(Algebra<?,U> alg, IndexedDataSource<U> data, BooleanSupplier cancelled) {
+			
+			this.alg = alg;
+			
+			this.ordered = (Ordered<U>) alg;
+			
+			this.nanTester = (alg instanceof NaN) ? (NaN<U>) alg : null;
+			
+			this.infTester = (alg instanceof Infinite) ? (Infinite<U>) alg : null;
+			
+			this.data = data;
+			
+			this.kernel = PrimitiveKernel.of(data, alg.construct());
+			
+			this.cancelled = cancelled;
+		}
+		
+		// fold a reduction of other values into a reduction
+		
+		void merge(MinMaxReduction<U> into, MinMaxReduction<U> from) {
+			
+			if (from.found) {
+				
+				if (!into.found || ordered.isLess().call(from.min, into.min))
+					alg.assign().call(from.min, into.min);
+				
+				if (!into.found || ordered.isGreater().call(from.max, into.max))
+					alg.assign().call(from.max, into.max);
+				
+				into.found = true;
+			}
+			
+			into.counted += from.counted;
+			
+			into.nans += from.nans;
+			
+			into.posInfs += from.posInfs;
+			
+			into.negInfs += from.negInfs;
+		}
+		
+		MinMaxReduction<U> reduce(long start, long end) {
+			
+			MinMaxReduction<U> result = new MinMaxReduction<>(alg);
+			
+			if (cancelled.getAsBoolean())
+				return result;
+			
+			if (kernel == null)
+				reduceValues(result, start, end);
+			else if (kernel.isFloatingPoint())
+				reduceDoubles(result, start, end);
+			else
+				reduceLongs(result, start, end);
+			
+			return result;
+		}
+		
+		private void reduceValues(MinMaxReduction<U> result, long start, long end) {
+			
+			U value = alg.construct();
+			
+			for (long i = start; i < end; i++) {
+				
+				data.get(i, value);
+				
+				if (nanTester != null && nanTester.isNaN().call(value)) {
+					
+					result.nans++;
+					
+					continue;
+				}
+				
+				if (infTester != null && infTester.isInfinite().call(value)) {
+					
+					if (ordered.signum().call(value) < 0)
+						result.negInfs++;
+					else
+						result.posInfs++;
+				}
+				
+				if (!result.found) {
+					
+					alg.assign().call(value, result.min);
+					
+					alg.assign().call(value, result.max);
+					
+					result.found = true;
+				}
+				else if (ordered.isLess().call(value, result.min))
+					alg.assign().call(value, result.min);
+				else if (ordered.isGreater().call(value, result.max))
+					alg.assign().call(value, result.max);
+				
+				result.counted++;
+			}
+		}
+		
+		// the min and max are found as primitives along with where they are. the
+		// values there are then read to get them as the data source's type.
+		
+		private void reduceDoubles(MinMaxReduction<U> result, long start, long end) {
+			
+			DisplayKernels kernels = DisplayKernels.get();
+			
+			double[] block = new double[BLOCK];
+			
+			double[] minMax = new double[2];
+			
+			double lo = 0, hi = 0;
+			
+			long loIndex = -1, hiIndex = -1;
+			
+			for (long i = start; i < end; i += BLOCK) {
+				
+				int n = (int) Math.min(BLOCK, end - i);
+				
+				kernel.readDoubles(i, 1, n, block, 0);
+				
+				int counted = kernels.minMax(block, 0, n, minMax);
+				
+				result.nans += n - counted;
+				
+				result.counted += counted;
+				
+				if (counted == 0)
+					continue;
+				
+				if (loIndex < 0 || minMax[0] < lo) {
+					
+					lo = minMax[0];
+					
+					loIndex = i + indexOf(block, n, lo);
+				}
+				
+				if (hiIndex < 0 || minMax[1] > hi) {
+					
+					hi = minMax[1];
+					
+					hiIndex = i + indexOf(block, n, hi);
+				}
+				
+				if (minMax[0] == Double.NEGATIVE_INFINITY || minMax[1] == Double.POSITIVE_INFINITY) {
+					
+					for (int k = 0; k < n; k++) {
+						
+						if (block[k] == Double.NEGATIVE_INFINITY)
+							result.negInfs++;
+						else if (block[k] == Double.POSITIVE_INFINITY)
+							result.posInfs++;
+					}
+				}
+			}
+			
+			found(result, loIndex, hiIndex);
+		}
+		
+		private void reduceLongs(MinMaxReduction<U> result, long start, long end) {
+			
+			long[] block = new long[BLOCK];
+			
+			long lo = Long.MAX_VALUE, hi = Long.MIN_VALUE;
+			
+			long loIndex = -1, hiIndex = -1;
+			
+			for (long i = start; i < end; i += BLOCK) {
+				
+				int n = (int) Math.min(BLOCK, end - i);
+				
+				kernel.readLongs(i, 1, n, block, 0);
+				
+				for (int k = 0; k < n; k++) {
+					
+					long v = block[k];
+					
+					if (v < lo) {
+						
+						lo = v;
+						
+						loIndex = i + k;
+					}
+					
+					if (v > hi) {
+						
+						hi = v;
+						
+						hiIndex = i + k;
+					}
+				}
+			}
+			
+			result.counted += end - start;
+			
+			found(result, loIndex, hiIndex);
+		}
+		
+		private void found(MinMaxReduction<U> result, long loIndex, long hiIndex) {
+			
+			if (loIndex < 0)
+				return;
+			
+			data.get(loIndex, result.min);
+			
+			data.get(hiIndex, result.max);
+			
+			result.found = true;
+		}
+		
+		// where a value that is known to be in a block first appears
+		
+		private static int indexOf(double[] block, int n, double value) {
+			
+			for (int k = 0; k < n; k++) {
+				
+				if (block[k] == value)
+					return k;
+			}
+			
+			return 0;
+		}
+	}
+}
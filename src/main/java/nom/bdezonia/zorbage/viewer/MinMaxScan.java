@@ -0,0 +1,319 @@
+/*
+ * zorbage-viewer: utility app for loading and viewing various image data formats
+ *
+ * Copyright (c) 2020-2022 Barry DeZonia All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 
+ * Neither the name of the <copyright holder> nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+ * BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package nom.bdezonia.zorbage.viewer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import javax.swing.SwingUtilities;
+
+import nom.bdezonia.zorbage.algebra.Algebra;
+import nom.bdezonia.zorbage.algebra.NaN;
+import nom.bdezonia.zorbage.algebra.Ordered;
+import nom.bdezonia.zorbage.data.DimensionedDataSource;
+import nom.bdezonia.zorbage.datasource.IndexedDataSource;
+
+/**
+ * Finds the smallest and largest values of a data source without keeping a
+ * viewer from opening. A quick estimate is taken from a few samples of a few
+ * evenly spaced planes so the first frame can be drawn right away. The exact
+ * bounds are then found in the background by a {@link MinMaxReduction} and
+ * reported back on the Swing event thread. The exact scan can instead build a
+ * {@link PlaneStatsIndex}, which finds the bounds on the way.
+ * <p>
+ * NaNs are skipped. A data source with no other values has bounds of zero.
+ * 
+ * @author Barry DeZonia
+ *
+ * @param <U> An ordered type.
+ */
+public class MinMaxScan<U> {
+
+	// the estimate reads this many values from each of this many planes
+	
+	private static final int SAMPLE_PLANES = 16;
+	private static final int SAMPLE_VALUES = 16384;
+	
+	private final Algebra<?,U> alg;
+	private final Ordered<U> ordered;
+	private final NaN<U> nans;
+	private final IndexedDataSource<U> data;
+	private final Object lock;
+	private final AtomicLong generation = new AtomicLong();
+	private volatile boolean running = false;
+	private volatile DimensionedDataSource<U> indexed = null;
+	private volatile boolean saveIndex = false;
+	private volatile PlaneStatsIndex planeStats = null;
+	
+	/**
+	 * Called when an exact scan finishes.
+	 */
+	public interface Listener<U> {
+		
+		/**
+		 * Called on the Swing event thread with the exact bounds. Not called if the
+		 * scan was cancelled.
+		 */
+		void finished(U min, U max);
+	}
+	
+	/**
+	 * 
+	 * @param alg The algebra of the values. It must be Ordered.
+	 * @param data The values to scan.
+	 * @param lock The object that guards data if it can only be read by one
+	 *   thread at a time.
+	 */
+	@SuppressWarnings("unchecked")
+	public MinMaxScan(Algebra<?,U> alg, IndexedDataSource<U> data, Object lock) {
+		
+		this.alg = alg;
+		
+		this.ordered = (Ordered<U>) alg;
+		
+		this.nans = (alg instanceof NaN) ? (NaN<U>) alg : null;
+		
+		this.data = data;
+		
+		this.lock = lock;
+	}
+	
+	/**
+	 * Estimate the bounds from evenly spaced values of up to 16 evenly spaced
+	 * planes. The estimate lies within the exact bounds.
+	 * 
+	 * @param planeSize The number of values in a plane.
+	 * @param min Set to the estimated min.
+	 * @param max Set to the estimated max.
+	 */
+	public void estimate(long planeSize, U min, U max) {
+		
+		long size = data.size();
+		
+		planeSize = Math.max(1, Math.min(planeSize, size));
+		
+		long planes = size / planeSize;
+		
+		long sampledPlanes = Math.min(SAMPLE_PLANES, planes);
+		
+		long step = Math.max(1, planeSize / SAMPLE_VALUES);
+		
+		U value = alg.construct();
+		
+		boolean found = false;
+		
+		for (long p = 0; p < sampledPlanes; p++) {
+			
+			long start = (p * planes / sampledPlanes) * planeSize;
+			
+			if (data.accessWithOneThread()) {
+				
+				synchronized (lock) {
+					
+					found = scan(start, start + planeSize, step, value, min, max, found);
+				}
+			}
+			else
+				found = scan(start, start + planeSize, step, value, min, max, found);
+		}
+		
+		if (!found) {
+			
+			alg.zero().call(min);
+			
+			alg.zero().call(max);
+		}
+	}
+	
+	/**
+	 * Start an exact scan in the background. A scan that is already running is
+	 * cancelled.
+	 */
+	public void start(Listener<U> listener) {
+		
+		final long id = generation.incrementAndGet();
+		
+		running = true;
+		
+		Thread t = new Thread(new Runnable() {
+			
+			@Override
+			public void run() {
+				
+				U min = alg.construct();
+				
+				U max = alg.construct();
+				
+				boolean finished = exact(id, min, max);
+				
+				SwingUtilities.invokeLater(new Runnable() {
+					
+					@Override
+					public void run() {
+						
+						if (generation.get() != id)
+							return;
+						
+						running = false;
+						
+						if (finished)
+							listener.finished(min, max);
+					}
+				});
+			}
+		}, "zorbage-viewer-minmax");
+		
+		t.setDaemon(true);
+		
+		t.start();
+	}
+	
+	/**
+	 * Stop a running scan. Its listener is not called.
+	 */
+	public void cancel() {
+		
+		generation.incrementAndGet();
+		
+		running = false;
+	}
+	
+	/**
+	 * Make later exact scans build a per plane index of the data.
+	 * 
+	 * @param dataset The indexable data set whose raw data is scanned. Its type
+	 *   must support GetAsDouble.
+	 * @param save Whether to save the index in a sidecar file.
+	 */
+	public void indexPlanes(DimensionedDataSource<U> dataset, boolean save) {
+		
+		indexed = dataset;
+		
+		saveIndex = save;
+	}
+	
+	/**
+	 * The index built by the last exact scan that finished or null if it did
+	 * not build one.
+	 */
+	public PlaneStatsIndex planeStats() {
+		
+		return planeStats;
+	}
+	
+	/**
+	 * Returns true while an exact scan is in progress.
+	 */
+	public boolean isRunning() {
+		
+		return running;
+	}
+	
+	// reduce the whole data source in parallel unless cancelled
+	
+	private boolean exact(long id, U min, U max) {
+		
+		BooleanSupplier cancelled = new BooleanSupplier() {
+			
+			@Override
+			public boolean getAsBoolean() {
+				
+				return generation.get() != id;
+			}
+		};
+		
+		DimensionedDataSource<U> dataset = indexed;
+		
+		if (dataset != null) {
+			
+			BooleanSupplier save = new BooleanSupplier() {
+				
+				@Override
+				public boolean getAsBoolean() {
+					
+					return saveIndex && indexed == dataset;
+				}
+			};
+			
+			PlaneStatsIndex index = PlaneStatsIndex.build(alg, dataset, save, cancelled);
+			
+			if (index == null)
+				return false;
+			
+			index.bounds(alg, data, lock, min, max);
+			
+			planeStats = index;
+			
+			return true;
+		}
+		
+		MinMaxReduction<U> bounds = MinMaxReduction.compute(alg, data, lock, cancelled);
+		
+		if (bounds == null)
+			return false;
+		
+		alg.assign().call(bounds.min(), min);
+		
+		alg.assign().call(bounds.max(), max);
+		
+		return true;
+	}
+	
+	// widen min and max to hold the values from start to end (exclusive) that
+	// are step apart. found says if min and max hold a value yet. returns the
+	// new value of found.
+	
+	private boolean scan(long start, long end, long step, U value, U min, U max, boolean found) {
+		
+		for (long i = start; i < end; i += step) {
+			
+			data.get(i, value);
+			
+			if (nans != null && nans.isNaN().call(value))
+				continue;
+			
+			if (!found) {
+				
+				alg.assign().call(value, min);
+				
+				alg.assign().call(value, max);
+				
+				found = true;
+			}
+			else if (ordered.isLess().call(value, min))
+				alg.assign().call(value, min);
+			else if (ordered.isGreater().call(value, max))
+				alg.assign().call(value, max);
+		}
+		
+		return found;
+	}
+}
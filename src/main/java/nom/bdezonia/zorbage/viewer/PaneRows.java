@@ -0,0 +1,272 @@
+/*
+ * zorbage-viewer: utility app for loading and viewing various image data formats
+ *
+ * Copyright (c) 2020-2022 Barry DeZonia All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 
+ * Neither the name of the <copyright holder> nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+ * BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package nom.bdezonia.zorbage.viewer;
+
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+import nom.bdezonia.zorbage.datasource.IndexedDataSource;
+import nom.bdezonia.zorbage.storage.StorageConstruction;
+
+/**
+ * The screen side of drawing a plane into a pane of argb pixels. Both the real
+ * and the color renderers clip a rectangle of the pane to the part that shows
+ * the plane, paint the rest black, and spread each model pixel across the
+ * scaleNumer x scaleNumer block of screen pixels it covers when zoomed in.
+ * They differ only in how a row of model pixels becomes a row of colors.
+ * <p>
+ * Data that is slow to read can be drawn progressively: a few coarse passes
+ * that each sample one model pixel per block of screen pixels are put on
+ * screen before the full resolution pass. Whether they are drawn can be set
+ * with the system property {@value #PROGRESSIVE_PROPERTY}: auto (the default)
+ * draws them for slow data sources only, always and never do what they say.
+ * <p>
+ * All methods only touch the pixels they are given so they can be called from
+ * several render bands at once.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class PaneRows {
+
+	public static final String PROGRESSIVE_PROPERTY = "zorbage.viewer.progressive";
+	
+	// the block sizes of the coarse passes, coarsest first
+	
+	private static final int[] COARSE_STEPS = {8, 4, 2};
+	
+	private static final int[] NO_STEPS = new int[0];
+	
+	private static final String PROGRESSIVE = progressive();
+	
+	/**
+	 * Computes the color of one model pixel for a coarse pass.
+	 */
+	public interface Sampler {
+		
+		/**
+		 * The argb color of the model pixel at (mx, my).
+		 */
+		int argb(long mx, long my);
+	}
+	
+	private PaneRows() { }
+	
+	/**
+	 * The block sizes of the coarse passes to draw before the full resolution
+	 * pass of a frame, coarsest first. Empty if the frame should be drawn in one
+	 * pass. A pass is left out when the view is zoomed in so far that it would
+	 * read as many model pixels as the full pass.
+	 * 
+	 * @param raw The data source being drawn.
+	 * @param slowType True if the values are colored through BigDecimal math.
+	 * @param scaleNumer The screen pixels per model pixel.
+	 */
+	public static int[] coarseSteps(IndexedDataSource<?> raw, boolean slowType, int scaleNumer) {
+		
+		boolean slow;
+		
+		if (PROGRESSIVE.equals("always"))
+			slow = true;
+		else if (PROGRESSIVE.equals("never"))
+			slow = false;
+		else
+			slow = slowType ||
+					raw.storageType() == StorageConstruction.MEM_VIRTUAL ||
+					raw.accessWithOneThread();
+		
+		if (!slow)
+			return NO_STEPS;
+		
+		int count = 0;
+		
+		while (count < COARSE_STEPS.length && COARSE_STEPS[count] > scaleNumer)
+			count++;
+		
+		return Arrays.copyOf(COARSE_STEPS, count);
+	}
+	
+	/**
+	 * Draw a rectangle of the pane at a coarse resolution. The model pixel under
+	 * the top left pixel of each step x step block colors the whole block. The
+	 * rectangle must only show the plane.
+	 */
+	public static void drawCoarse(int[] arrayInt, ViewTransform xform, int step,
+			int x0, int x1, int y0, int y1, Sampler sampler, BooleanSupplier cancelled)
+	{
+		int paneWidth = xform.paneWidth();
+		
+		for (int y = y0; y < y1; y += step) {
+			
+			// give up as soon as a newer frame is wanted
+			
+			if (cancelled.getAsBoolean())
+				return;
+			
+			long my = xform.pixelToModelY(y);
+			
+			int rowStart = y * paneWidth;
+			
+			for (int x = x0; x < x1; x += step) {
+				
+				int color = sampler.argb(xform.pixelToModelX(x), my);
+				
+				Arrays.fill(arrayInt, rowStart + x, rowStart + Math.min(x1, x + step), color);
+			}
+			
+			int blockEnd = Math.min(y1, y + step);
+			
+			for (int by = y + 1; by < blockEnd; by++)
+				System.arraycopy(arrayInt, rowStart + x0, arrayInt, by * paneWidth + x0, x1 - x0);
+		}
+	}
+	
+	/**
+	 * Paint the pixels of a rectangle that do not show the plane black.
+	 * 
+	 * @return The columns from [0] to [1] (exclusive) of the rows from [2] to
+	 *   [3] (exclusive) of the rectangle that show the plane, or null if none do.
+	 */
+	public static int[] clip(int[] arrayInt, ViewTransform xform, long planeWidth, long planeHeight,
+			int x0, int x1, int y0, int y1)
+	{
+		int[] bounds = xform.dataBounds(planeWidth, planeHeight);
+		
+		int dx0 = Math.max(x0, Math.min(x1, bounds[0]));
+		int dx1 = Math.max(dx0, Math.min(x1, bounds[1]));
+		int dy0 = Math.max(y0, Math.min(y1, bounds[2]));
+		int dy1 = Math.max(dy0, Math.min(y1, bounds[3]));
+		
+		int paneWidth = xform.paneWidth();
+		
+		fillBlack(arrayInt, paneWidth, x0, x1, y0, dy0);
+		
+		fillBlack(arrayInt, paneWidth, x0, x1, dy1, y1);
+		
+		fillBlack(arrayInt, paneWidth, x0, dx0, dy0, dy1);
+		
+		fillBlack(arrayInt, paneWidth, dx1, x1, dy0, dy1);
+		
+		if (dx0 == dx1 || dy0 == dy1)
+			return null;
+		
+		return new int[] {dx0, dx1, dy0, dy1};
+	}
+	
+	/**
+	 * Fill the pixels from x0 to x1 of the rows from y0 to y1 with black. A
+	 * block of whole rows is filled with a single call.
+	 */
+	public static void fillBlack(int[] arrayInt, int paneWidth, int x0, int x1, int y0, int y1) {
+		
+		if (x0 >= x1 || y0 >= y1)
+			return;
+		
+		if (x0 == 0 && x1 == paneWidth) {
+			
+			Arrays.fill(arrayInt, y0 * paneWidth, y1 * paneWidth, DisplayMapping.BLACK);
+			
+			return;
+		}
+		
+		for (int y = y0; y < y1; y++)
+			Arrays.fill(arrayInt, y * paneWidth + x0, y * paneWidth + x1, DisplayMapping.BLACK);
+	}
+	
+	/**
+	 * When zoomed in a screen row that is not the first of its model row shows
+	 * the same pixels as the row above it. Copy them.
+	 * 
+	 * @param y0 The first row being drawn. It has no drawn row above it.
+	 * @return True if row y was copied and needs no further drawing.
+	 */
+	public static boolean copyRepeatedRow(int[] arrayInt, int paneWidth, int scaleNumer,
+			int x0, int x1, int y0, int y)
+	{
+		if (y == y0 || y % scaleNumer == 0)
+			return false;
+		
+		int rowStart = y * paneWidth;
+		
+		System.arraycopy(arrayInt, rowStart - paneWidth + x0, arrayInt, rowStart + x0, x1 - x0);
+		
+		return true;
+	}
+	
+	/**
+	 * Put a row of model colors on screen. Each model pixel fills the run of
+	 * screen columns it covers. At zoom 1 the colors are copied in one call.
+	 * 
+	 * @param colors The colors of the model columns from firstMx on.
+	 * @param firstMx The model column of colors[0].
+	 * @param scaleNumer The screen pixels per model pixel.
+	 * @param y The screen row.
+	 * @param x0 The first screen column to draw.
+	 * @param x1 The screen column after the last one to draw.
+	 */
+	public static void expandRow(int[] colors, long firstMx, int[] arrayInt, ViewTransform xform,
+			int scaleNumer, int y, int x0, int x1)
+	{
+		int rowStart = y * xform.paneWidth();
+		
+		if (scaleNumer == 1) {
+			
+			System.arraycopy(colors, (int) (xform.pixelToModelX(x0) - firstMx), arrayInt, rowStart + x0, x1 - x0);
+			
+			return;
+		}
+		
+		int x = x0;
+		
+		while (x < x1) {
+			
+			int runEnd = Math.min(x1, (x / scaleNumer + 1) * scaleNumer);
+			
+			int color = colors[(int) (xform.pixelToModelX(x) - firstMx)];
+			
+			Arrays.fill(arrayInt, rowStart + x, rowStart + runEnd, color);
+			
+			x = runEnd;
+		}
+	}
+	
+	private static String progressive() {
+		
+		String value = System.getProperty(PROGRESSIVE_PROPERTY, "auto");
+		
+		if (value.equals("auto") || value.equals("always") || value.equals("never"))
+			return value;
+		
+		System.out.println("Ignoring bad value for " + PROGRESSIVE_PROPERTY + ": " + value);
+		
+		return "auto";
+	}
+}
@@ -0,0 +1,338 @@
+/*
+ * zorbage-viewer: utility app for loading and viewing various image data formats
+ *
+ * Copyright (c) 2020-2022 Barry DeZonia All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 
+ * Neither the name of the <copyright holder> nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+ * BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package nom.bdezonia.zorbage.viewer;
+
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import nom.bdezonia.zorbage.dataview.PlaneView;
+
+/**
+ * Reads the planes a viewer is about to show into primitive arrays while the
+ * current plane is on screen. When the viewer steps or animates along one of
+ * the extra axes the next few planes in the direction of travel are copied on
+ * a background thread. A frame of a copied plane is then drawn from memory
+ * rather than from the data source, which can be slow when it is backed by
+ * files.
+ * 
+ * Copies are kept in a ring of slots so the most recent planes, including the
+ * ones just passed, stay available. The ring's size follows from a memory
+ * budget that defaults to 128 MB per viewer and can be set with the system
+ * property zorbage.viewer.prefetch.mb.
+ * 
+ * Data sources that only allow one thread at a time are read a row at a time
+ * while holding the data source's lock. A viewer that draws such a source
+ * must hold the same lock while it reads.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public abstract class PlanePrefetcher<U> {
+
+	public static final String BUDGET_PROPERTY = "zorbage.viewer.prefetch.mb";
+	
+	/** The most planes that are read ahead of the current one. */
+	public static final int MAX_LOOK_AHEAD = 8;
+	
+	private static final long BUDGET = budget();
+	
+	private final ThreadPoolExecutor executor;
+	private final AtomicLong generation = new AtomicLong();
+	private List<?>[] keys = new List<?>[0];
+	private Object[] copies = new Object[0];
+	private int next = 0;
+	private long slotBytes = 0;
+	private int lastAxis = -1;
+	private long lastPosition = 0;
+	private int direction = 1;
+	
+	protected PlanePrefetcher() {
+		
+		this.executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+			
+					@Override
+					public Thread newThread(Runnable r) {
+						
+						Thread t = new Thread(r, "zorbage-viewer-prefetch");
+						
+						t.setDaemon(true);
+						
+						return t;
+					}
+				});
+		
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+	
+	/**
+	 * The number of bytes one pixel of a copy occupies.
+	 */
+	protected abstract int bytesPerPixel();
+	
+	/**
+	 * Make an array to copy a plane of size pixels into.
+	 */
+	protected abstract Object newPixels(int size);
+	
+	/**
+	 * Copy one row of the plane into pixels starting at y * plane.d0().
+	 */
+	protected abstract void copyRow(PlaneView<U> plane, long y, Object pixels);
+	
+	/**
+	 * Tells whether the plane's data is already in memory in a form that is as
+	 * fast to draw from as a copy. Such planes are not read ahead.
+	 */
+	protected boolean inMemory(PlaneView<U> plane) {
+		
+		return false;
+	}
+	
+	/**
+	 * Find the copy of the plane at its current position.
+	 * 
+	 * @return The pixels in row order or null if the plane has not been copied.
+	 */
+	public synchronized Object plane(PlaneView<U> plane) {
+		
+		if (copies.length == 0)
+			return null;
+		
+		List<Object> key = TileCache.key(plane);
+		
+		for (int i = 0; i < copies.length; i++) {
+			
+			if (key.equals(keys[i]))
+				return copies[i];
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Tell the prefetcher that the viewer has just moved the plane along one of
+	 * its extra axes. Starts reading the next planes in the direction of the
+	 * last move. Any reading started by an earlier move is abandoned.
+	 * 
+	 * @param plane The plane of the viewer, already at its new position.
+	 * @param extraPos Which of the plane's positions changed.
+	 */
+	public synchronized void moved(PlaneView<U> plane, int extraPos) {
+		
+		long position = plane.getPositionValue(extraPos);
+		
+		if (extraPos == lastAxis && position != lastPosition)
+			direction = (position > lastPosition) ? 1 : -1;
+		else if (extraPos != lastAxis)
+			direction = 1;
+		
+		lastAxis = extraPos;
+		
+		lastPosition = position;
+		
+		long gen = generation.incrementAndGet();
+		
+		// a plane in a primitive array is read as fast as a copy of it would be
+		
+		if (inMemory(plane))
+			return;
+		
+		int lookAhead = allocate(plane);
+		
+		if (lookAhead == 0)
+			return;
+		
+		long size = plane.getDataSourceAxisSize(extraPos);
+		
+		final PlaneView<U> source = RenderPool.duplicate(plane);
+		
+		final int step = direction;
+		
+		final int count = (int) Math.min(lookAhead, (step > 0) ? size - 1 - position : position);
+		
+		executor.submit(new Runnable() {
+			
+			@Override
+			public void run() {
+				
+				prefetch(source, extraPos, step, count, gen);
+			}
+		});
+	}
+	
+	/**
+	 * Discard all copies and stop any reading in progress. Call this when the
+	 * data has been changed in place.
+	 */
+	public synchronized void clear() {
+		
+		generation.incrementAndGet();
+		
+		keys = new List<?>[0];
+		
+		copies = new Object[0];
+		
+		next = 0;
+		
+		slotBytes = 0;
+	}
+	
+	// size the ring for planes like this one. returns how far ahead to read.
+	
+	private int allocate(PlaneView<U> plane) {
+		
+		long pixels = plane.d0() * plane.d1();
+		
+		long bytes = pixels * bytesPerPixel();
+		
+		if (pixels > Integer.MAX_VALUE || bytes > BUDGET) {
+			
+			clear();
+			
+			return 0;
+		}
+		
+		if (bytes != slotBytes) {
+			
+			// keep the planes just passed as well as the ones ahead
+			
+			int slots = (int) Math.min(2 * MAX_LOOK_AHEAD, BUDGET / Math.max(1, bytes));
+			
+			keys = new List<?>[slots];
+			
+			copies = new Object[slots];
+			
+			next = 0;
+			
+			slotBytes = bytes;
+		}
+		
+		return Math.max(1, Math.min(MAX_LOOK_AHEAD, copies.length / 2));
+	}
+	
+	private void prefetch(PlaneView<U> source, int extraPos, int step, int count, long gen) {
+		
+		BooleanSupplier cancelled = new BooleanSupplier() {
+			
+			@Override
+			public boolean getAsBoolean() {
+
+				return generation.get() != gen;
+			}
+		};
+		
+		long position = source.getPositionValue(extraPos);
+		
+		for (int i = 1; i <= count; i++) {
+			
+			if (cancelled.getAsBoolean())
+				return;
+			
+			source.setPositionValue(extraPos, position + i * step);
+			
+			if (plane(source) != null)
+				continue;
+			
+			Object pixels = copyPlane(source, cancelled);
+			
+			synchronized (this) {
+				
+				// a partly read plane is never kept
+				
+				if (cancelled.getAsBoolean())
+					return;
+				
+				keys[next] = TileCache.key(source);
+				
+				copies[next] = pixels;
+				
+				next = (next + 1) % copies.length;
+			}
+		}
+	}
+	
+	private Object copyPlane(PlaneView<U> plane, BooleanSupplier cancelled) {
+		
+		long height = plane.d1();
+		
+		Object pixels = newPixels((int) (plane.d0() * height));
+		
+		Object lock = plane.getDataSource();
+		
+		boolean oneThread = plane.getDataSource().rawData().accessWithOneThread();
+		
+		for (long y = 0; y < height; y++) {
+			
+			if (cancelled.getAsBoolean())
+				return pixels;
+			
+			if (oneThread) {
+				
+				synchronized (lock) {
+					
+					copyRow(plane, y, pixels);
+				}
+			}
+			else
+				copyRow(plane, y, pixels);
+		}
+		
+		return pixels;
+	}
+	
+	private static long budget() {
+		
+		long megabytes = 128;
+		
+		String prop = System.getProperty(BUDGET_PROPERTY);
+		
+		if (prop != null) {
+			
+			try {
+				
+				megabytes = Long.parseLong(prop.trim());
+				
+			} catch (NumberFormatException e) {
+				
+				System.out.println("Ignoring bad value for " + BUDGET_PROPERTY + ": " + prop);
+			}
+		}
+		
+		return Math.max(0, megabytes) * 1024 * 1024;
+	}
+}
@@ -0,0 +1,321 @@
+/*
+ * zorbage-viewer: utility app for loading and viewing various image data formats
+ *
+ * Copyright (c) 2020-2022 Barry DeZonia All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 
+ * Neither the name of the <copyright holder> nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+ * BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package nom.bdezonia.zorbage.viewer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+
+import nom.bdezonia.zorbage.dataview.PlaneView;
+
+/**
+ * A lazily built multi-resolution copy of the plane a viewer is showing. Level
+ * n of the pyramid is the plane reduced by 2^n in each direction and is held
+ * in a primitive array. When zoomed out a viewer draws from the level closest
+ * to its zoom factor instead of rereading the full resolution plane.
+ * 
+ * Levels are built on a background thread, finest first, and are thrown away
+ * when the viewer moves to another plane. The finest levels are skipped when
+ * they would not fit in the memory budget. The budget defaults to 256 MB per
+ * pyramid and can be set with the system property zorbage.viewer.pyramid.mb.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public abstract class PlanePyramid<U> {
+
+	public static final String BUDGET_PROPERTY = "zorbage.viewer.pyramid.mb";
+	
+	private static final long BUDGET = budget();
+	
+	/**
+	 * One reduced copy of the plane.
+	 */
+	public static final class Level {
+		
+		/** The plane is reduced by 2^shift in each direction. */
+		public final int shift;
+		public final int width;
+		public final int height;
+		/** The pixels in row order. The array type is up to the subclass. */
+		public final Object pixels;
+		
+		Level(int shift, int width, int height, Object pixels) {
+			this.shift = shift;
+			this.width = width;
+			this.height = height;
+			this.pixels = pixels;
+		}
+	}
+	
+	private final IntConsumer onLevelBuilt;
+	private final ThreadPoolExecutor executor;
+	private final AtomicLong generation = new AtomicLong();
+	private List<Object> key = null;
+	private Level[] levels = new Level[0];
+	
+	/**
+	 * 
+	 * @param onLevelBuilt Called from the build thread with the shift of each
+	 *   level as it becomes available.
+	 */
+	protected PlanePyramid(IntConsumer onLevelBuilt) {
+		
+		this.onLevelBuilt = onLevelBuilt;
+		
+		this.executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+			
+					@Override
+					public Thread newThread(Runnable r) {
+						
+						Thread t = new Thread(r, "zorbage-viewer-pyramid");
+						
+						t.setDaemon(true);
+						
+						t.setPriority(Thread.MIN_PRIORITY);
+						
+						return t;
+					}
+				});
+		
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+	
+	/**
+	 * The number of bytes one pixel of a level occupies.
+	 */
+	protected abstract int bytesPerPixel();
+	
+	/**
+	 * Reduce the full resolution plane by 2^shift into a new pixel array.
+	 * Returns early if cancelled becomes true.
+	 */
+	protected abstract Object reducePlane(PlaneView<U> plane, int shift, int width, int height, BooleanSupplier cancelled);
+	
+	/**
+	 * Reduce a level by 2 into a new pixel array. Returns early if cancelled
+	 * becomes true.
+	 */
+	protected abstract Object reduceLevel(Level finer, int width, int height, BooleanSupplier cancelled);
+	
+	/**
+	 * Find the coarsest built level that is still no coarser than the zoom factor.
+	 * 
+	 * @param plane The plane being drawn.
+	 * @param scaleDenom The zoom out factor of the view.
+	 * @return The level or null if nothing usable has been built for this plane.
+	 */
+	public synchronized Level level(PlaneView<U> plane, int scaleDenom) {
+		
+		if (!keyOf(plane).equals(key))
+			return null;
+		
+		Level best = null;
+		
+		for (Level level : levels) {
+			
+			if ((1L << level.shift) <= scaleDenom)
+				best = level;
+		}
+		
+		return best;
+	}
+	
+	/**
+	 * Start building the pyramid for a plane in the background unless it is built
+	 * or being built already. Any pyramid of another plane is discarded.
+	 */
+	public synchronized void build(PlaneView<U> plane) {
+		
+		List<Object> newKey = keyOf(plane);
+		
+		if (newKey.equals(key))
+			return;
+		
+		clear();
+		
+		key = newKey;
+		
+		// the build thread would compete with the render thread for the data
+		
+		if (plane.getDataSource().rawData().accessWithOneThread())
+			return;
+		
+		final long gen = generation.get();
+		
+		final PlaneView<U> source = RenderPool.duplicate(plane);
+		
+		executor.submit(new Runnable() {
+			
+			@Override
+			public void run() {
+				
+				buildLevels(source, gen);
+			}
+		});
+	}
+	
+	/**
+	 * Discard all levels and stop any build in progress. Call this when the
+	 * data of the plane has been changed in place.
+	 */
+	public synchronized void clear() {
+		
+		generation.incrementAndGet();
+		
+		key = null;
+		
+		levels = new Level[0];
+	}
+
+	private void buildLevels(PlaneView<U> plane, final long gen) {
+		
+		BooleanSupplier cancelled = new BooleanSupplier() {
+			
+			@Override
+			public boolean getAsBoolean() {
+
+				return generation.get() != gen;
+			}
+		};
+		
+		long planeWidth = plane.d0();
+		
+		long planeHeight = plane.d1();
+		
+		// skip the levels that won't fit. the coarser levels add up to a third
+		// of the first one.
+		
+		int shift = 1;
+		
+		while (shift < 62) {
+			
+			long pixels = levelSize(planeWidth, shift) * levelSize(planeHeight, shift);
+			
+			if (pixels <= Integer.MAX_VALUE && pixels * bytesPerPixel() * 4 <= BUDGET * 3)
+				break;
+			
+			shift++;
+		}
+
+		Level finer = null;
+		
+		while (!cancelled.getAsBoolean()) {
+			
+			int width = (int) levelSize(planeWidth, shift);
+			
+			int height = (int) levelSize(planeHeight, shift);
+			
+			Object pixels;
+			
+			if (finer == null)
+				pixels = reducePlane(plane, shift, width, height, cancelled);
+			else
+				pixels = reduceLevel(finer, width, height, cancelled);
+			
+			Level level = new Level(shift, width, height, pixels);
+			
+			synchronized (this) {
+				
+				if (cancelled.getAsBoolean())
+					return;
+				
+				Level[] more = Arrays.copyOf(levels, levels.length + 1);
+				
+				more[levels.length] = level;
+				
+				levels = more;
+			}
+			
+			onLevelBuilt.accept(shift);
+			
+			if (width == 1 && height == 1)
+				return;
+			
+			finer = level;
+			
+			shift++;
+		}
+	}
+	
+	private static long levelSize(long planeSize, int shift) {
+		
+		return (planeSize + (1L << shift) - 1) >> shift;
+	}
+	
+	private static List<Object> keyOf(PlaneView<?> plane) {
+		
+		List<Object> key = new ArrayList<>();
+		
+		key.add(plane.getDataSource());
+		
+		key.add(plane.axisNumber0());
+		
+		key.add(plane.axisNumber1());
+		
+		for (int i = 0; i < plane.getPositionsCount(); i++) {
+			
+			key.add(plane.getPositionValue(i));
+		}
+		
+		return key;
+	}
+	
+	private static long budget() {
+		
+		long megabytes = 256;
+		
+		String prop = System.getProperty(BUDGET_PROPERTY);
+		
+		if (prop != null) {
+			
+			try {
+				
+				megabytes = Long.parseLong(prop.trim());
+				
+			} catch (NumberFormatException e) {
+				
+				System.out.println("Ignoring bad value for " + BUDGET_PROPERTY + ": " + prop);
+			}
+		}
+		
+		return Math.max(0, megabytes) * 1024 * 1024;
+	}
+}
@@ -0,0 +1,414 @@
+/*
+ * zorbage-viewer: utility app for loading and viewing various image data formats
+ *
+ * Copyright (c) 2020-2022 Barry DeZonia All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 
+ * Neither the name of the <copyright holder> nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+ * BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package nom.bdezonia.zorbage.viewer;
+
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+import nom.bdezonia.zorbage.algebra.Algebra;
+import nom.bdezonia.zorbage.algebra.GetAsDouble;
+import nom.bdezonia.zorbage.data.DimensionedDataSource;
+import nom.bdezonia.zorbage.datasource.IndexedDataSource;
+import nom.bdezonia.zorbage.dataview.PlaneView;
+import nom.bdezonia.zorbage.type.color.ArgbMember;
+import nom.bdezonia.zorbage.type.color.RgbMember;
+import nom.bdezonia.zorbage.type.color.RgbUtils;
+
+/**
+ * Reads runs of a row of a plane into primitive arrays. The renderers and the
+ * code that copies planes read whole row segments through a reader rather than
+ * one value at a time through the plane view.
+ * <p>
+ * There are four ways a row is read, fastest first:
+ * <ul>
+ * <li>If the plane has been copied to a primitive array, such as by a
+ *   prefetcher, the run is copied straight out of the array.</li>
+ * <li>If the data source is backed by a primitive array of a common scalar
+ *   type the run is read out of that array by a PrimitiveKernel, stepping by
+ *   the stride of the plane's first axis.</li>
+ * <li>If the plane's axes are the first two axes of the data source, the run
+ *   is a stretch of consecutive elements of the raw data and is read by index.</li>
+ * <li>Otherwise each value is read through the plane view.</li>
+ * </ul>
+ * A reader keeps scratch state so each thread should use its own reader.
+ * 
+ * @author Barry DeZonia
+ *
+ * @param <U> The type of the plane's values.
+ */
+public class PlaneRowReader<U> {
+
+	/** A good length for the scratch arrays of callers that read long rows in pieces. */
+	public static final int CHUNK = 4096;
+	
+	private final PlaneView<U> plane;
+	private final IndexedDataSource<U> raw;
+	private final U value;
+	private final boolean contiguous;
+	private final PrimitiveKernel kernel;
+	private final long[] strides;
+	private final long strideX;
+	private final long strideY;
+	private final int[] positionAxes;
+	private double[] doubleCopy = null;
+	private int[] intCopy = null;
+	
+	/**
+	 * 
+	 * @param alg The algebra of the plane's values.
+	 * @param plane The plane to read. The reader follows the plane's position.
+	 */
+	public PlaneRowReader(Algebra<?,U> alg, PlaneView<U> plane) {
+		
+		this.plane = plane;
+		
+		DimensionedDataSource<U> data = plane.getDataSource();
+		
+		this.raw = data.rawData();
+		
+		this.value = alg.construct();
+		
+		int numD = data.numDimensions();
+		
+		// model coords run fastest along the first axis of the data source
+		
+		this.strides = new long[numD + 1];
+		
+		strides[0] = 1;
+		
+		for (int i = 0; i < numD; i++) {
+			
+			strides[i+1] = strides[i] * data.dimension(i);
+		}
+		
+		this.contiguous = plane.axisNumber0() == 0 && (numD == 1 || plane.axisNumber1() == 1);
+		
+		// a one dimensional source has a single row
+		
+		this.strideX = strides[plane.axisNumber0()];
+		
+		this.strideY = (plane.axisNumber1() < numD) ? strides[plane.axisNumber1()] : 0;
+		
+		this.kernel = PrimitiveKernel.of(raw, value);
+		
+		this.positionAxes = new int[plane.getPositionsCount()];
+		
+		for (int i = 0; i < positionAxes.length; i++) {
+			
+			positionAxes[i] = plane.getDataSourceAxisNumber(i);
+		}
+	}
+	
+	/**
+	 * Read from a copy of the plane at its current position instead of the data
+	 * source. The copy must hold the plane's values in row order.
+	 * 
+	 * @param pixels A double[] or int[] copy or null to read from the data source.
+	 */
+	public void useCopy(Object pixels) {
+		
+		doubleCopy = (pixels instanceof double[]) ? (double[]) pixels : null;
+		
+		intCopy = (pixels instanceof int[]) ? (int[]) pixels : null;
+	}
+	
+	/**
+	 * Tells whether the rows of the plane are runs of consecutive raw elements.
+	 */
+	public boolean isContiguous() {
+		
+		return contiguous;
+	}
+	
+	/**
+	 * Read one value of the plane.
+	 */
+	public void get(long x, long y, U dest) {
+		
+		if (contiguous)
+			raw.get(index(x, y), dest);
+		else
+			plane.get(x, y, dest);
+	}
+	
+	/**
+	 * Read count values of row y starting at column x as doubles.
+	 * 
+	 * @param conv Turns a value into a double. Not used when reading from a copy
+	 *   or a primitive array.
+	 */
+	public void readDoubles(long y, long x, int count, double[] dest, int off, ToDoubleFunction<U> conv) {
+		
+		if (doubleCopy != null) {
+			
+			System.arraycopy(doubleCopy, copyIndex(x, y), dest, off, count);
+			
+			return;
+		}
+		
+		if (intCopy != null) {
+			
+			int start = copyIndex(x, y);
+			
+			for (int i = 0; i < count; i++) {
+				
+				dest[off + i] = intCopy[start + i];
+			}
+			
+			return;
+		}
+		
+		if (kernel != null) {
+			
+			kernel.readDoubles(index(x, y), strideX, count, dest, off);
+			
+			return;
+		}
+		
+		if (contiguous) {
+			
+			long index = index(x, y);
+			
+			for (int i = 0; i < count; i++) {
+				
+				raw.get(index + i, value);
+				
+				dest[off + i] = conv.applyAsDouble(value);
+			}
+		}
+		else {
+			
+			for (int i = 0; i < count; i++) {
+				
+				plane.get(x + i, y, value);
+				
+				dest[off + i] = conv.applyAsDouble(value);
+			}
+		}
+	}
+	
+	/**
+	 * Read count values of row y starting at column x as ints.
+	 * 
+	 * @param conv Turns a value into an int. Not used when reading from a copy
+	 *   or a primitive array.
+	 */
+	public void readInts(long y, long x, int count, int[] dest, int off, ToIntFunction<U> conv) {
+		
+		if (intCopy != null) {
+			
+			System.arraycopy(intCopy, copyIndex(x, y), dest, off, count);
+			
+			return;
+		}
+		
+		if (doubleCopy != null) {
+			
+			int start = copyIndex(x, y);
+			
+			for (int i = 0; i < count; i++) {
+				
+				dest[off + i] = (int) doubleCopy[start + i];
+			}
+			
+			return;
+		}
+		
+		if (kernel != null) {
+			
+			kernel.readInts(index(x, y), strideX, count, dest, off);
+			
+			return;
+		}
+		
+		if (contiguous) {
+			
+			long index = index(x, y);
+			
+			for (int i = 0; i < count; i++) {
+				
+				raw.get(index + i, value);
+				
+				dest[off + i] = conv.applyAsInt(value);
+			}
+		}
+		else {
+			
+			for (int i = 0; i < count; i++) {
+				
+				plane.get(x + i, y, value);
+				
+				dest[off + i] = conv.applyAsInt(value);
+			}
+		}
+	}
+	
+	/**
+	 * Read count values of row y starting at column x as longs.
+	 * 
+	 * @param conv Turns a value into a long. Not used when reading from a copy
+	 *   or a primitive array.
+	 */
+	public void readLongs(long y, long x, int count, long[] dest, int off, ToLongFunction<U> conv) {
+		
+		if (intCopy != null || doubleCopy != null) {
+			
+			int start = copyIndex(x, y);
+			
+			for (int i = 0; i < count; i++) {
+				
+				dest[off + i] = (intCopy != null) ? intCopy[start + i] : (long) doubleCopy[start + i];
+			}
+			
+			return;
+		}
+		
+		if (kernel != null) {
+			
+			kernel.readLongs(index(x, y), strideX, count, dest, off);
+			
+			return;
+		}
+		
+		if (contiguous) {
+			
+			long index = index(x, y);
+			
+			for (int i = 0; i < count; i++) {
+				
+				raw.get(index + i, value);
+				
+				dest[off + i] = conv.applyAsLong(value);
+			}
+		}
+		else {
+			
+			for (int i = 0; i < count; i++) {
+				
+				plane.get(x + i, y, value);
+				
+				dest[off + i] = conv.applyAsLong(value);
+			}
+		}
+	}
+	
+	/**
+	 * Copy count values of row y starting at column x into consecutive elements
+	 * of another data source of the same type.
+	 */
+	public void readValues(long y, long x, long count, IndexedDataSource<U> dest, long destIndex) {
+		
+		if (contiguous) {
+			
+			long index = index(x, y);
+			
+			for (long i = 0; i < count; i++) {
+				
+				raw.get(index + i, value);
+				
+				dest.set(destIndex + i, value);
+			}
+		}
+		else {
+			
+			for (long i = 0; i < count; i++) {
+				
+				plane.get(x + i, y, value);
+				
+				dest.set(destIndex + i, value);
+			}
+		}
+	}
+	
+	/**
+	 * Turns real values that support GetAsDouble into doubles.
+	 */
+	public static <U> ToDoubleFunction<U> asDouble() {
+		
+		return new ToDoubleFunction<U>() {
+			
+			@Override
+			public double applyAsDouble(U v) {
+				
+				return ((GetAsDouble) v).getAsDouble();
+			}
+		};
+	}
+	
+	/**
+	 * Turns rgb and argb colors into packed argb ints. Rgb colors are opaque.
+	 */
+	public static <U> ToIntFunction<U> asArgb() {
+		
+		return new ToIntFunction<U>() {
+			
+			@Override
+			public int applyAsInt(U v) {
+				
+				if (v instanceof ArgbMember) {
+					
+					ArgbMember argb = (ArgbMember) v;
+					
+					return RgbUtils.argb(argb.a(), argb.r(), argb.g(), argb.b());
+				}
+				
+				if (v instanceof RgbMember) {
+					
+					RgbMember rgb = (RgbMember) v;
+					
+					return RgbUtils.argb(255, rgb.r(), rgb.g(), rgb.b());
+				}
+				
+				throw new IllegalArgumentException("Unknown color type "+v.getClass().getSimpleName());
+			}
+		};
+	}
+	
+	// the raw index of a point of the plane at its current position
+	
+	private long index(long x, long y) {
+		
+		long index = x * strideX + y * strideY;
+		
+		for (int i = 0; i < positionAxes.length; i++) {
+			
+			index += plane.getPositionValue(i) * strides[positionAxes[i]];
+		}
+		
+		return index;
+	}
+	
+	private int copyIndex(long x, long y) {
+		
+		return (int) (y * plane.d0() + x);
+	}
+}
@@ -0,0 +1,805 @@
+/*
+ * zorbage-viewer: utility app for loading and viewing various image data formats
+ *
+ * Copyright (c) 2020-2022 Barry DeZonia All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 
+ * Neither the name of the <copyright holder> nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+ * BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package nom.bdezonia.zorbage.viewer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+import java.util.function.ToDoubleFunction;
+
+import nom.bdezonia.zorbage.algebra.Algebra;
+import nom.bdezonia.zorbage.data.DimensionedDataSource;
+import nom.bdezonia.zorbage.datasource.IndexedDataSource;
+import nom.bdezonia.zorbage.dataview.PlaneView;
+
+/**
+ * A summary of every plane of a data source: its min, max, mean, NaN count
+ * and a coarse histogram. The planes are the runs of consecutive raw values
+ * that span the first two axes.
+ * <p>
+ * When the data came from a file the summary is saved in a small binary
+ * sidecar file. The sidecar records the path, size and modification time of
+ * the file and the name of the data set and is only used while they still
+ * match. Reopening the file maps
+ * the sidecar into memory so the data range and per plane contrast are known
+ * without reading the data.
+ * <p>
+ * Sidecars go in the directory named by the zorbage.viewer.stats.dir system
+ * property. It defaults to .zorbage-viewer/stats in the user's home directory.
+ * An empty value turns sidecars off.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class PlaneStatsIndex {
+
+	public static final String DIR_PROPERTY = "zorbage.viewer.stats.dir";
+	
+	/** The number of bins in the histogram of a plane. */
+	public static final int BINS = 256;
+	
+	private static final int MAGIC = 0x5A565053; // ZVPS
+	private static final int VERSION = 2;
+	private static final int HEADER_BYTES = 64;
+	
+	// minPos, maxPos, min, max, mean, nans, histLo, histHi, bin counts
+	
+	private static final int RECORD_BYTES = 8 * 8 + 4 * BINS;
+	
+	// the values read at a time
+	
+	private static final int BLOCK = 4096;
+	
+	// planes this small are kept in memory between the two passes over them
+	
+	private static final int KEEP_LIMIT = 1 << 20;
+	
+	private final ByteBuffer buffer;
+	private final long planeSize;
+	private final int planes;
+	
+	private PlaneStatsIndex(ByteBuffer buffer, long planeSize, int planes) {
+		
+		this.buffer = buffer;
+		
+		this.planeSize = planeSize;
+		
+		this.planes = planes;
+	}
+	
+	/**
+	 * Returns true if the planes of a data source are small and few enough to
+	 * be indexed.
+	 */
+	public static boolean indexable(DimensionedDataSource<?> data) {
+		
+		long planeSize = planeSize(data);
+		
+		if (planeSize == 0 || planeSize > Integer.MAX_VALUE)
+			return false;
+		
+		long planes = data.numElements() / planeSize;
+		
+		return HEADER_BYTES + planes * RECORD_BYTES <= Integer.MAX_VALUE;
+	}
+	
+	/**
+	 * Map the sidecar of a data source into memory.
+	 * 
+	 * @return The index or null if there is no sidecar that matches the data.
+	 */
+	public static PlaneStatsIndex open(Algebra<?,?> alg, DimensionedDataSource<?> data) {
+		
+		File file = dataFile(data);
+		
+		File sidecar = sidecar(file, data);
+		
+		if (sidecar == null || !sidecar.isFile() || !indexable(data))
+			return null;
+		
+		long planeSize = planeSize(data);
+		
+		int planes = (int) (data.numElements() / planeSize);
+		
+		long expected = HEADER_BYTES + ((long) planes) * RECORD_BYTES;
+		
+		try (RandomAccessFile raf = new RandomAccessFile(sidecar, "r")) {
+			
+			FileChannel channel = raf.getChannel();
+			
+			if (channel.size() != expected)
+				return null;
+			
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			
+			channel.read(header, 0);
+			
+			header.flip();
+			
+			ByteBuffer key = ByteBuffer.allocate(HEADER_BYTES);
+			
+			writeHeader(key, alg, data, file);
+			
+			if (!header.equals(key))
+				return null;
+			
+			// the mapping stays valid after the channel is closed
+			
+			return new PlaneStatsIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, expected), planeSize, planes);
+			
+		} catch (IOException e) {
+			
+			return null;
+		}
+	}
+	
+	/**
+	 * Calculate the index of a data source of a type that supports GetAsDouble.
+	 * 
+	 * @param alg The algebra of the values.
+	 * @param data The values. It must be indexable.
+	 * @param save Asked once the index is built whether to write a sidecar.
+	 *   Data that has been changed since it was read from its file must not be
+	 *   saved.
+	 * @param cancelled Polled now and then to give up early.
+	 * @return The index or null if cancelled.
+	 */
+	public static <U> PlaneStatsIndex build(Algebra<?,U> alg, DimensionedDataSource<U> data,
+			BooleanSupplier save, BooleanSupplier cancelled)
+	{
+		long planeSize = planeSize(data);
+		
+		int planes = (int) (data.numElements() / planeSize);
+		
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + planes * RECORD_BYTES);
+		
+		File file = dataFile(data);
+		
+		writeHeader(buffer, alg, data, file);
+		
+		IndexedDataSource<U> raw = data.rawData();
+		
+		PlaneStatsIndex index = new PlaneStatsIndex(buffer, planeSize, planes);
+		
+		if (raw.accessWithOneThread()) {
+			
+			Summarizer<U> summarizer = new Summarizer<>(alg, raw, data, buffer, planeSize);
+			
+			for (int p = 0; p < planes; p++) {
+				
+				if (cancelled.getAsBoolean())
+					return null;
+				
+				summarizer.summarize(p);
+			}
+		}
+		else {
+			
+			RenderPool.invokeInBackground(new Task<>(alg, raw, buffer, planeSize, 0, planes, cancelled));
+			
+			if (cancelled.getAsBoolean())
+				return null;
+		}
+		
+		// a build that is cancelled after this point read only values that were
+		// all there before the cancel
+		
+		if (!cancelled.getAsBoolean() && save.getAsBoolean())
+			index.save(sidecar(file, data));
+		
+		return index;
+	}
+	
+	/**
+	 * Read the smallest and largest values that are not NaNs of indexed data.
+	 * Both are zero if the data is all NaNs.
+	 * 
+	 * @param lock The object that guards raw if it can only be read by one
+	 *   thread at a time.
+	 */
+	public <U> void bounds(Algebra<?,U> alg, IndexedDataSource<U> raw, Object lock, U min, U max) {
+		
+		long minPos = minPosition();
+		
+		long maxPos = maxPosition();
+		
+		if (minPos < 0 || maxPos < 0) {
+			
+			alg.zero().call(min);
+			
+			alg.zero().call(max);
+		}
+		else if (raw.accessWithOneThread()) {
+			
+			synchronized (lock) {
+				
+				raw.get(minPos, min);
+				
+				raw.get(maxPos, max);
+			}
+		}
+		else {
+			
+			raw.get(minPos, min);
+			
+			raw.get(maxPos, max);
+		}
+	}
+	
+	/**
+	 * The plane of the index that a view shows.
+	 * 
+	 * @return The plane number or -1 if the view does not show indexed planes.
+	 */
+	public static long planeOf(PlaneView<?> plane) {
+		
+		DimensionedDataSource<?> data = plane.getDataSource();
+		
+		int numD = data.numDimensions();
+		
+		if (plane.axisNumber0() != 0 || (numD > 1 && plane.axisNumber1() != 1))
+			return -1;
+		
+		long number = 0;
+		
+		long stride = 1;
+		
+		for (int i = 0; i < plane.getPositionsCount(); i++) {
+			
+			number += plane.getPositionValue(i) * stride;
+			
+			stride *= plane.getDataSourceAxisSize(i);
+		}
+		
+		return number;
+	}
+	
+	/**
+	 * The number of planes.
+	 */
+	public int planes() {
+		
+		return planes;
+	}
+	
+	/**
+	 * The smallest value of a plane that is not a NaN. NaN if there is none.
+	 */
+	public double min(long plane) {
+		
+		return buffer.getDouble(record(plane) + 16);
+	}
+	
+	/**
+	 * The largest value of a plane that is not a NaN. NaN if there is none.
+	 */
+	public double max(long plane) {
+		
+		return buffer.getDouble(record(plane) + 24);
+	}
+	
+	/**
+	 * The mean of the finite values of a plane. NaN if there are none.
+	 */
+	public double mean(long plane) {
+		
+		return buffer.getDouble(record(plane) + 32);
+	}
+	
+	/**
+	 * The number of NaNs in a plane.
+	 */
+	public long nans(long plane) {
+		
+		return buffer.getLong(record(plane) + 40);
+	}
+	
+	/**
+	 * The number of finite values of a plane in a bin of its histogram. The bins
+	 * evenly divide the range of the finite values of the plane.
+	 */
+	public int count(long plane, int bin) {
+		
+		return buffer.getInt(record(plane) + 64 + 4 * bin);
+	}
+	
+	/**
+	 * The raw index of the smallest value that is not a NaN or -1 if the data is
+	 * all NaNs.
+	 */
+	public long minPosition() {
+		
+		long best = -1;
+		
+		double bestValue = 0;
+		
+		for (int p = 0; p < planes; p++) {
+			
+			long pos = buffer.getLong(record(p));
+			
+			if (pos >= 0 && (best < 0 || min(p) < bestValue)) {
+				
+				best = pos;
+				
+				bestValue = min(p);
+			}
+		}
+		
+		return best;
+	}
+	
+	/**
+	 * The raw index of the largest value that is not a NaN or -1 if the data is
+	 * all NaNs.
+	 */
+	public long maxPosition() {
+		
+		long best = -1;
+		
+		double bestValue = 0;
+		
+		for (int p = 0; p < planes; p++) {
+			
+			long pos = buffer.getLong(record(p) + 8);
+			
+			if (pos >= 0 && (best < 0 || max(p) > bestValue)) {
+				
+				best = pos;
+				
+				bestValue = max(p);
+			}
+		}
+		
+		return best;
+	}
+	
+	/**
+	 * The range that holds all but a fraction of the finite values of a plane at
+	 * each end, to the resolution of its histogram.
+	 * 
+	 * @return {low, high} or null if the plane has no finite values.
+	 */
+	public double[] range(long plane, double tailFraction) {
+		
+		int rec = record(plane);
+		
+		double lo = buffer.getDouble(rec + 48);
+		
+		double hi = buffer.getDouble(rec + 56);
+		
+		long total = 0;
+		
+		for (int b = 0; b < BINS; b++)
+			total += count(plane, b);
+		
+		if (total == 0)
+			return null;
+		
+		long skip = (long) (total * tailFraction);
+		
+		int first = 0;
+		
+		for (long seen = count(plane, 0); seen <= skip && first < BINS - 1; seen += count(plane, first))
+			first++;
+		
+		int last = BINS - 1;
+		
+		for (long seen = count(plane, last); seen <= skip && last > first; seen += count(plane, last))
+			last--;
+		
+		double width = (hi - lo) / BINS;
+		
+		double low = (first == 0) ? lo : lo + first * width;
+		
+		double high = (last == BINS - 1) ? hi : lo + (last + 1) * width;
+		
+		return new double[] {low, high};
+	}
+	
+	private int record(long plane) {
+		
+		return HEADER_BYTES + ((int) plane) * RECORD_BYTES;
+	}
+	
+	private void save(File sidecar) {
+		
+		if (sidecar == null)
+			return;
+		
+		File dir = sidecar.getParentFile();
+		
+		try {
+			
+			Files.createDirectories(dir.toPath());
+			
+			File tmp = File.createTempFile("planes", ".tmp", dir);
+			
+			try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+				
+				raf.getChannel().write(buffer.duplicate().clear(), 0);
+			}
+			
+			// readers never see a partly written sidecar
+			
+			Files.move(tmp.toPath(), sidecar.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			
+		} catch (IOException | UnsupportedOperationException e) {
+			
+			System.out.println("Could not save plane stats to " + sidecar + ": " + e.getMessage());
+		}
+	}
+	
+	private static long planeSize(DimensionedDataSource<?> data) {
+		
+		int numD = data.numDimensions();
+		
+		if (numD == 0)
+			return 0;
+		
+		return (numD == 1) ? data.dimension(0) : data.dimension(0) * data.dimension(1);
+	}
+	
+	// the file the data came from or null if it did not come from one file
+	
+	private static File dataFile(DimensionedDataSource<?> data) {
+		
+		String source = data.getSource();
+		
+		if (source == null || source.length() == 0)
+			return null;
+		
+		File file = new File(source);
+		
+		if (!file.isFile())
+			return null;
+		
+		try {
+			
+			return file.getCanonicalFile();
+			
+		} catch (IOException e) {
+			
+			return file.getAbsoluteFile();
+		}
+	}
+	
+	// the sidecar of a data file or null if there is none
+	
+	private static File sidecar(File dataFile, DimensionedDataSource<?> data) {
+		
+		if (dataFile == null)
+			return null;
+		
+		String dir = System.getProperty(DIR_PROPERTY,
+				System.getProperty("user.home") + File.separator + ".zorbage-viewer" + File.separator + "stats");
+		
+		if (dir.trim().length() == 0)
+			return null;
+		
+		return new File(dir, String.format("%016x.planes", sourceHash(dataFile, data)));
+	}
+	
+	// FNV-1a of the path and the name of the data set. one file can hold many
+	// data sets of the same type and shape (NetCDF and HDF5 variables, GDAL
+	// subdatasets, etc) that the readers tell apart by name.
+	
+	private static long sourceHash(File file, DimensionedDataSource<?> data) {
+		
+		String path = file.getPath() + '\0' + data.getName();
+		
+		long hash = 0xcbf29ce484222325L;
+		
+		for (int i = 0; i < path.length(); i++) {
+			
+			hash ^= path.charAt(i);
+			
+			hash *= 0x100000001b3L;
+		}
+		
+		return hash;
+	}
+	
+	// the header says which data set, version of the file and layout the index is of
+	
+	private static void writeHeader(ByteBuffer buffer, Algebra<?,?> alg, DimensionedDataSource<?> data, File file) {
+		
+		buffer.putInt(0, MAGIC);
+		
+		buffer.putInt(4, VERSION);
+		
+		buffer.putLong(8, (file == null) ? 0 : sourceHash(file, data));
+		
+		buffer.putLong(16, (file == null) ? 0 : file.length());
+		
+		buffer.putLong(24, (file == null) ? 0 : file.lastModified());
+		
+		buffer.putLong(32, data.numElements());
+		
+		buffer.putLong(40, planeSize(data));
+		
+		buffer.putInt(48, alg.typeDescription().hashCode());
+		
+		// a view of the file with its axes in another order has other planes
+		
+		long dims = 17;
+		
+		for (int i = 0; i < data.numDimensions(); i++)
+			dims = dims * 31 + data.dimension(i);
+		
+		buffer.putLong(52, dims);
+		
+		buffer.putInt(60, String.valueOf(data.getName()).hashCode());
+	}
+	
+	@SuppressWarnings("serial")
+	private static class Task<U> extends RecursiveAction {
+		
+		private final Algebra<?,U> alg;
+		private final IndexedDataSource<U> raw;
+		private final ByteBuffer buffer;
+		private final long planeSize;
+		private final int first;
+		private final int last;
+		private final BooleanSupplier cancelled;
+		
+		Task(Algebra<?,U> alg, IndexedDataSource<U> raw, ByteBuffer buffer, long planeSize,
+				int first, int last, BooleanSupplier cancelled)
+		{
+			this.alg = alg;
+			
+			this.raw = raw;
+			
+			this.buffer = buffer;
+			
+			this.planeSize = planeSize;
+			
+			this.first = first;
+			
+			this.last = last;
+			
+			this.cancelled = cancelled;
+		}
+		
+		@Override
+		protected void compute() {
+			
+			// a task per plane unless the planes are tiny
+			
+			if ((last - first) * planeSize <= BLOCK * 16L || last - first == 1) {
+				
+				Summarizer<U> summarizer = new Summarizer<>(alg, raw, null, buffer, planeSize);
+				
+				for (int p = first; p < last && !cancelled.getAsBoolean(); p++)
+					summarizer.summarize(p);
+				
+				return;
+			}
+			
+			int mid = first + (last - first) / 2;
+			
+			invokeAll(new Task<>(alg, raw, buffer, planeSize, first, mid, cancelled),
+					new Task<>(alg, raw, buffer, planeSize, mid, last, cancelled));
+		}
+	}
+	
+	// fills in the records of planes
+	
+	private static class Summarizer<U> {
+		
+		private final IndexedDataSource<U> raw;
+		private final Object lock;
+		private final ByteBuffer buffer;
+		private final long planeSize;
+		private final PrimitiveKernel kernel;
+		private final ToDoubleFunction<U> conv = PlaneRowReader.asDouble();
+		private final U value;
+		private final double[] block = new double[BLOCK];
+		private final double[] kept;
+		private final int[] counts = new int[BINS];
+		
+		// lock is null if the data can be read by many threads at once
+		
+		Summarizer(Algebra<?,U> alg, IndexedDataSource<U> raw, Object lock, ByteBuffer buffer, long planeSize) {
+			
+			this.raw = raw;
+			
+			this.lock = lock;
+			
+			this.buffer = buffer;
+			
+			this.planeSize = planeSize;
+			
+			this.value = alg.construct();
+			
+			this.kernel = PrimitiveKernel.of(raw, value);
+			
+			this.kept = (planeSize <= KEEP_LIMIT) ? new double[(int) planeSize] : null;
+		}
+		
+		void summarize(int plane) {
+			
+			long start = plane * planeSize;
+			
+			long minPos = -1;
+			long maxPos = -1;
+			double min = Double.NaN;
+			double max = Double.NaN;
+			double lo = Double.POSITIVE_INFINITY;
+			double hi = Double.NEGATIVE_INFINITY;
+			long nans = 0;
+			long finite = 0;
+			double sum = 0;
+			double sumError = 0;
+			
+			for (long off = 0; off < planeSize; off += BLOCK) {
+				
+				int n = (int) Math.min(BLOCK, planeSize - off);
+				
+				double[] values = read(start + off, n);
+				
+				for (int i = 0; i < n; i++) {
+					
+					double v = values[i];
+					
+					if (v != v) {
+						nans++;
+						continue;
+					}
+					
+					if (minPos < 0 || v < min) {
+						min = v;
+						minPos = start + off + i;
+					}
+					
+					if (maxPos < 0 || v > max) {
+						max = v;
+						maxPos = start + off + i;
+					}
+					
+					if (v == Double.POSITIVE_INFINITY || v == Double.NEGATIVE_INFINITY)
+						continue;
+					
+					if (v < lo) lo = v;
+					
+					if (v > hi) hi = v;
+					
+					finite++;
+					
+					// Kahan summation
+					
+					double y = v - sumError;
+					
+					double t = sum + y;
+					
+					sumError = (t - sum) - y;
+					
+					sum = t;
+				}
+				
+				if (kept != null)
+					System.arraycopy(values, 0, kept, (int) off, n);
+			}
+			
+			Arrays.fill(counts, 0);
+			
+			if (finite == 0) {
+				
+				lo = hi = Double.NaN;
+			}
+			else {
+				
+				// halved so that the widest double ranges do not overflow
+				
+				double scale = (hi > lo) ? (BINS * 0.5) / ((hi * 0.5) - (lo * 0.5)) : 0;
+				
+				for (long off = 0; off < planeSize; off += BLOCK) {
+					
+					int n = (int) Math.min(BLOCK, planeSize - off);
+					
+					double[] values = block;
+					
+					if (kept != null)
+						System.arraycopy(kept, (int) off, values, 0, n);
+					else
+						values = read(start + off, n);
+					
+					for (int i = 0; i < n; i++) {
+						
+						double v = values[i];
+						
+						// also skips NaNs
+						
+						if (!(v >= lo && v <= hi))
+							continue;
+						
+						int bin = (int) ((v - lo) * scale);
+						
+						if (bin >= BINS) bin = BINS - 1;
+						
+						counts[bin]++;
+					}
+				}
+			}
+			
+			int rec = HEADER_BYTES + plane * RECORD_BYTES;
+			
+			buffer.putLong(rec, minPos);
+			buffer.putLong(rec + 8, maxPos);
+			buffer.putDouble(rec + 16, min);
+			buffer.putDouble(rec + 24, max);
+			buffer.putDouble(rec + 32, (finite == 0) ? Double.NaN : sum / finite);
+			buffer.putLong(rec + 40, nans);
+			buffer.putDouble(rec + 48, lo);
+			buffer.putDouble(rec + 56, hi);
+			
+			for (int b = 0; b < BINS; b++)
+				buffer.putInt(rec + 64 + 4 * b, counts[b]);
+		}
+		
+		private double[] read(long index, int n) {
+			
+			if (kernel != null) {
+				
+				kernel.readDoubles(index, 1, n, block, 0);
+			}
+			else if (lock != null) {
+				
+				// let other readers have the data between blocks
+				
+				synchronized (lock) {
+					
+					readValues(index, n);
+				}
+			}
+			else
+				readValues(index, n);
+			
+			return block;
+		}
+		
+		private void readValues(long index, int n) {
+			
+			for (int i = 0; i < n; i++) {
+				
+				raw.get(index + i, value);
+				
+				block[i] = conv.applyAsDouble(value);
+			}
+		}
+	}
+}
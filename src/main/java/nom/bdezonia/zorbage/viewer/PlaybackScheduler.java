@@ -0,0 +1,423 @@
+/*
+ * zorbage-viewer: utility app for loading and viewing various image data formats
+ *
+ * Copyright (c) 2020-2022 Barry DeZonia All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 
+ * Neither the name of the <copyright holder> nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+ * BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package nom.bdezonia.zorbage.viewer;
+
+import java.awt.Dialog;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.swing.BoxLayout;
+import javax.swing.ButtonGroup;
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JRadioButton;
+import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+
+/**
+ * Plays the planes along an axis at a steady frame rate. Each frame is due at a
+ * fixed time after playback started. When a frame takes too long to draw the
+ * frames whose time has already passed are skipped rather than played late, so
+ * playback keeps to the same speed no matter how fast the data can be drawn.
+ * Playback can stop at the last frame, loop back to the first or ping pong back
+ * and forth.
+ * 
+ * The achieved frame rate and the number of skipped frames are reported while
+ * playing.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class PlaybackScheduler {
+
+	public enum Mode { ONCE, LOOP, PING_PONG }
+	
+	/**
+	 * The viewer side of playback.
+	 */
+	public interface Player {
+		
+		/**
+		 * Move the viewer to a frame and start drawing it. Called on the event thread.
+		 * 
+		 * @param frame The frame number from 0 to frameCount - 1.
+		 * @return A future that completes when the frame is on screen.
+		 */
+		Future<?> show(long frame);
+		
+		/**
+		 * Report how playback is going. Called on the event thread.
+		 * 
+		 * @param fps The frame rate achieved over the last several frames.
+		 * @param dropped The number of frames skipped so far.
+		 * @param playing False once playback has ended.
+		 */
+		void progress(double fps, long dropped, boolean playing);
+	}
+	
+	// how many recent frames the achieved frame rate is measured over
+	
+	private static final int FPS_WINDOW = 16;
+	
+	private static final long REPORT_NANOS = 250_000_000L;
+	
+	private volatile double targetFps = 10;
+	private volatile Mode mode = Mode.ONCE;
+	private volatile boolean stopRequested = false;
+	private Thread thread = null;
+	
+	public double getTargetFps() {
+		
+		return targetFps;
+	}
+	
+	/**
+	 * Set the frame rate to play at. Takes effect the next time playback starts.
+	 */
+	public void setTargetFps(double fps) {
+		
+		if (!(fps > 0) || Double.isInfinite(fps))
+			throw new IllegalArgumentException("frame rate must be a positive number: " + fps);
+		
+		targetFps = fps;
+	}
+	
+	public Mode getMode() {
+		
+		return mode;
+	}
+	
+	/**
+	 * Set what happens at the last frame. Takes effect the next time playback starts.
+	 */
+	public void setMode(Mode mode) {
+		
+		this.mode = mode;
+	}
+	
+	public synchronized boolean isPlaying() {
+		
+		return thread != null;
+	}
+	
+	/**
+	 * Start playing unless playback is already running.
+	 * 
+	 * @param frameCount The number of frames to play.
+	 * @param player The viewer that shows the frames.
+	 * @return False if playback was already running.
+	 */
+	public synchronized boolean start(long frameCount, Player player) {
+		
+		if (thread != null || frameCount < 1)
+			return false;
+		
+		stopRequested = false;
+		
+		final double fps = targetFps;
+		
+		final Mode m = mode;
+		
+		thread = new Thread(new Runnable() {
+			
+			@Override
+			public void run() {
+				
+				try {
+				
+					play(frameCount, fps, m, player);
+					
+				} finally {
+					
+					synchronized (PlaybackScheduler.this) {
+						
+						thread = null;
+					}
+				}
+			}
+		}, "zorbage-viewer-playback");
+		
+		thread.setDaemon(true);
+		
+		thread.start();
+		
+		return true;
+	}
+	
+	/**
+	 * Stop playback after the frame being shown.
+	 */
+	public void stop() {
+		
+		stopRequested = true;
+		
+		LockSupport.unpark(playbackThread());
+	}
+	
+	/**
+	 * Ask the user for the frame rate and mode of playback.
+	 */
+	public void showSettings(JFrame frame) {
+		
+		JDialog dlg = new JDialog(frame, "", Dialog.ModalityType.DOCUMENT_MODAL);
+		dlg.setLocationByPlatform(true);
+		dlg.getContentPane().setLayout(new BoxLayout(dlg.getContentPane(), BoxLayout.Y_AXIS));
+		dlg.add(new JLabel("Frames per second"));
+		JTextField fpsField = new JTextField(10);
+		fpsField.setText("" + targetFps);
+		dlg.add(fpsField);
+		dlg.add(new JLabel("At the last frame"));
+		ButtonGroup bg = new ButtonGroup();
+		JRadioButton once = new JRadioButton("Stop", mode == Mode.ONCE);
+		JRadioButton loop = new JRadioButton("Loop", mode == Mode.LOOP);
+		JRadioButton pingPong = new JRadioButton("Ping pong", mode == Mode.PING_PONG);
+		bg.add(once);
+		bg.add(loop);
+		bg.add(pingPong);
+		dlg.add(once);
+		dlg.add(loop);
+		dlg.add(pingPong);
+		boolean[] cancelled = new boolean[] {true};
+		JButton ok = new JButton("Ok");
+		ok.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				
+				cancelled[0] = false;
+				
+				dlg.setVisible(false);
+			}
+		});
+		JButton cancel = new JButton("Cancel");
+		cancel.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				
+				dlg.setVisible(false);
+			}
+		});
+		dlg.add(ok);
+		dlg.add(cancel);
+		dlg.pack();
+		dlg.setVisible(true);
+		if (cancelled[0])
+			return;
+		try {
+			
+			setTargetFps(Double.parseDouble(fpsField.getText().trim()));
+			
+		} catch (IllegalArgumentException e) {
+			
+			System.out.println("Ignoring bad frame rate: " + fpsField.getText());
+		}
+		if (loop.isSelected())
+			setMode(Mode.LOOP);
+		else if (pingPong.isSelected())
+			setMode(Mode.PING_PONG);
+		else
+			setMode(Mode.ONCE);
+	}
+	
+	private synchronized Thread playbackThread() {
+		
+		return thread;
+	}
+	
+	private void play(long frameCount, double fps, Mode m, Player player) {
+		
+		long period = Math.max(1, (long) (1_000_000_000L / fps));
+		
+		long start = System.nanoTime();
+		
+		long[] shownTimes = new long[FPS_WINDOW];
+		
+		long shownCount = 0;
+		
+		long dropped = 0;
+		
+		long lastReport = start;
+		
+		long lastFrame = -1;
+		
+		long tick = 0;
+		
+		while (!stopRequested) {
+			
+			// skip the frames whose time has already passed
+			
+			long due = (System.nanoTime() - start) / period;
+			
+			if (due > tick) {
+				
+				dropped += due - tick;
+				
+				tick = due;
+			}
+			
+			long frame = frameAt(tick, frameCount, m);
+			
+			if (frame < 0) {
+				
+				// a one time play always ends on its last frame
+				
+				if (lastFrame == frameCount - 1)
+					break;
+				
+				frame = frameCount - 1;
+			}
+			
+			if (!show(player, frame))
+				break;
+			
+			lastFrame = frame;
+			
+			long now = System.nanoTime();
+			
+			shownTimes[(int) (shownCount % FPS_WINDOW)] = now;
+			
+			shownCount++;
+			
+			if (now - lastReport >= REPORT_NANOS) {
+				
+				report(player, achievedFps(shownTimes, shownCount), dropped, true);
+				
+				lastReport = now;
+			}
+			
+			if (m == Mode.ONCE && frame == frameCount - 1)
+				break;
+			
+			tick++;
+			
+			// wait for the next frame's time
+			
+			long wait;
+			
+			while (!stopRequested && (wait = start + tick * period - System.nanoTime()) > 0)
+				LockSupport.parkNanos(wait);
+		}
+		
+		report(player, achievedFps(shownTimes, shownCount), dropped, false);
+	}
+	
+	// the frame to show at a tick or -1 once a one time play has run past its end
+	
+	private static long frameAt(long tick, long frameCount, Mode m) {
+		
+		if (m == Mode.LOOP)
+			return tick % frameCount;
+		
+		if (m == Mode.PING_PONG) {
+			
+			if (frameCount == 1)
+				return 0;
+			
+			long cycle = 2 * (frameCount - 1);
+			
+			long t = tick % cycle;
+			
+			return (t < frameCount) ? t : cycle - t;
+		}
+		
+		return (tick < frameCount) ? tick : -1;
+	}
+	
+	private static double achievedFps(long[] shownTimes, long shownCount) {
+		
+		int n = (int) Math.min(shownCount, FPS_WINDOW);
+		
+		if (n < 2)
+			return 0;
+		
+		long newest = shownTimes[(int) ((shownCount - 1) % FPS_WINDOW)];
+		
+		long oldest = shownTimes[(int) ((shownCount - n) % FPS_WINDOW)];
+		
+		if (newest == oldest)
+			return 0;
+		
+		return (n - 1) * 1e9 / (newest - oldest);
+	}
+	
+	// move the viewer on the event thread then wait for the frame to be published.
+	// returns false if playback should end.
+	
+	private boolean show(Player player, long frame) {
+		
+		Future<?>[] drawn = new Future<?>[1];
+		
+		try {
+			
+			SwingUtilities.invokeAndWait(new Runnable() {
+				
+				@Override
+				public void run() {
+					
+					drawn[0] = player.show(frame);
+				}
+			});
+			
+			drawn[0].get();
+			
+			return true;
+			
+		} catch (InterruptedException e) {
+			
+			Thread.currentThread().interrupt();
+			
+			return false;
+			
+		} catch (InvocationTargetException | ExecutionException e) {
+			
+			e.getCause().printStackTrace();
+			
+			return false;
+		}
+	}
+	
+	private void report(Player player, double fps, long dropped, boolean playing) {
+		
+		SwingUtilities.invokeLater(new Runnable() {
+			
+			@Override
+			public void run() {
+				
+				player.progress(fps, dropped, playing);
+			}
+		});
+	}
+}
@@ -0,0 +1,279 @@
+/*
+ * zorbage-viewer: utility app for loading and viewing various image data formats
+ *
+ * Copyright (c) 2020-2022 Barry DeZonia All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 
+ * Neither the name of the <copyright holder> nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+ * BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package nom.bdezonia.zorbage.viewer;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.math.BigDecimal;
+import java.text.DecimalFormat;
+import java.text.FieldPosition;
+
+import javax.swing.JLabel;
+import javax.swing.Timer;
+
+import nom.bdezonia.zorbage.data.DimensionedDataSource;
+import nom.bdezonia.zorbage.dataview.PlaneView;
+
+/**
+ * The text that describes the point of a plane under the mouse pointer. Mouse
+ * events arrive much faster than the screen refreshes so the text is brought up
+ * to date at most once per tick of TICK_MILLIS from the latest pointer position.
+ * Nothing is done when the pointer is still over the same model pixel as the
+ * last time the text was made.
+ * <p>
+ * The text is assembled in buffers that are reused from one update to the next.
+ * Coordinate spaces that are linear are projected with the double scale and
+ * offset of the view transform.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public abstract class PointerReadout {
+
+	/** The least time between updates of the text. About once per frame at 60 Hz. */
+	public static final int TICK_MILLIS = 16;
+	
+	private final JLabel label;
+	private final PlaneView<?> plane;
+	private final DecimalFormat df;
+	private final Timer timer;
+	private final StringBuffer sb = new StringBuffer(128);
+	private final FieldPosition fieldPos = new FieldPosition(0);
+	private final long[] modelCoords;
+	private final BigDecimal[] worldCoords;
+	private final long[] shownPositions;
+	private int pointerX = 0;
+	private int pointerY = 0;
+	private ViewTransform shownView = null;
+	private long shownI0 = 0;
+	private long shownI1 = 0;
+	
+	/**
+	 * 
+	 * @param label The label that shows the text.
+	 * @param plane The plane the pointer moves over.
+	 * @param df The format of coordinates and values.
+	 */
+	public PointerReadout(JLabel label, PlaneView<?> plane, DecimalFormat df) {
+		
+		this.label = label;
+		
+		this.plane = plane;
+		
+		this.df = df;
+		
+		int numD = plane.getDataSource().numDimensions();
+		
+		this.modelCoords = new long[numD];
+		
+		this.worldCoords = new BigDecimal[numD];
+		
+		this.shownPositions = new long[plane.getPositionsCount()];
+		
+		this.timer = new Timer(TICK_MILLIS, new ActionListener() {
+			
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				
+				update();
+			}
+		});
+		
+		this.timer.setRepeats(false);
+	}
+	
+	/**
+	 * The transform of the viewport the pointer moves over.
+	 */
+	protected abstract ViewTransform view();
+	
+	/**
+	 * Append the value of the plane at a model point to the text.
+	 */
+	protected abstract void appendValue(long i0, long i1, StringBuffer sb);
+	
+	/**
+	 * Append a number to the text in the readout's format.
+	 */
+	protected void appendNumber(BigDecimal v, StringBuffer sb) {
+		
+		df.format(v, sb, fieldPos);
+	}
+	
+	/**
+	 * Note where the pointer is. Called on the event thread for every mouse
+	 * event. The text follows on the next tick.
+	 * 
+	 * @param mouseX The x coord of the pointer in the viewport.
+	 * @param mouseY The y coord of the pointer in the viewport.
+	 */
+	public void pointerMoved(int mouseX, int mouseY) {
+		
+		pointerX = mouseX;
+		
+		pointerY = mouseY;
+		
+		if (!timer.isRunning())
+			timer.start();
+	}
+	
+	/**
+	 * Forget the text that is shown. Call this when the plane's values have
+	 * been changed in place. The value under the pointer is read again on the
+	 * next tick rather than when the pointer next moves.
+	 */
+	public void invalidate() {
+		
+		if (shownView == null)
+			return;
+		
+		shownView = null;
+		
+		if (!timer.isRunning())
+			timer.start();
+	}
+	
+	private void update() {
+		
+		ViewTransform view = view();
+		
+		// model "Y" runs bottom to top but mouse coords run top to bottom
+		
+		long i0 = view.pixelToModelX(pointerX);
+
+		long i1 = view.pixelToModelY(view.paneHeight() - pointerY - 1);
+		
+		if (i0 < 0 || i0 >= plane.d0() || i1 < 0 || i1 >= plane.d1())
+			return;
+		
+		if (view == shownView && i0 == shownI0 && i1 == shownI1 && samePositions())
+			return;
+		
+		shownView = view;
+		
+		shownI0 = i0;
+		
+		shownI1 = i1;
+		
+		for (int i = 0; i < shownPositions.length; i++) {
+			
+			shownPositions[i] = plane.getPositionValue(i);
+		}
+		
+		DimensionedDataSource<?> dataSource = plane.getDataSource();
+		
+		int numD = dataSource.numDimensions();
+		
+		int axisNumber0 = plane.axisNumber0();
+		
+		int axisNumber1 = plane.axisNumber1();
+		
+		boolean linear = view.isLinear();
+		
+		if (!linear)
+			view.project(i0, i1, modelCoords, worldCoords);
+		
+		sb.setLength(0);
+		
+		sb.append(dataSource.getAxisType(axisNumber0));
+		sb.append(" = ");
+		sb.append(i0);
+		
+		// only display calibrated values if they are not == 1.0 * uncalibrated values
+		
+		if (axisNumber0 < numD) {
+			
+			if (linear)
+				appendWorld(view.linearWorldX(i0), i0, dataSource.getAxisUnit(axisNumber0));
+			else
+				appendWorld(worldCoords[axisNumber0], i0, dataSource.getAxisUnit(axisNumber0));
+		}
+		
+		if (axisNumber1 < numD) {
+			
+			sb.append(", ");
+			sb.append(dataSource.getAxisType(axisNumber1));
+			sb.append(" = ");
+			sb.append(i1);
+			
+			if (linear)
+				appendWorld(view.linearWorldY(i1), i1, dataSource.getAxisUnit(axisNumber1));
+			else
+				appendWorld(worldCoords[axisNumber1], i1, dataSource.getAxisUnit(axisNumber1));
+		}
+		
+		sb.append(", value = ");
+		
+		appendValue(i0, i1, sb);
+		
+		sb.append(" ");
+		sb.append(dataSource.getValueUnit());
+		
+		label.setText(sb.toString());
+	}
+	
+	private void appendWorld(double world, long model, String unit) {
+		
+		if (Math.abs(world - model) <= 0.000001)
+			return;
+		
+		sb.append(" (");
+		df.format(world, sb, fieldPos);
+		sb.append(" ");
+		sb.append(unit);
+		sb.append(")");
+	}
+	
+	private void appendWorld(BigDecimal world, long model, String unit) {
+		
+		if (Math.abs(world.doubleValue() - model) <= 0.000001)
+			return;
+		
+		sb.append(" (");
+		df.format(world, sb, fieldPos);
+		sb.append(" ");
+		sb.append(unit);
+		sb.append(")");
+	}
+	
+	// true if the plane is still at the position of the last update
+	
+	private boolean samePositions() {
+		
+		for (int i = 0; i < shownPositions.length; i++) {
+			
+			if (shownPositions[i] != plane.getPositionValue(i))
+				return false;
+		}
+		
+		return true;
+	}
+}
@@ -0,0 +1,637 @@
+/*
+ * zorbage-viewer: utility app for loading and viewing various image data formats
+ *
+ * Copyright (c) 2020-2022 Barry DeZonia All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 
+ * Neither the name of the <copyright holder> nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+ * BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package nom.bdezonia.zorbage.viewer;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import nom.bdezonia.zorbage.algebra.Allocatable;
+import nom.bdezonia.zorbage.datasource.IndexedDataSource;
+import nom.bdezonia.zorbage.storage.Storage;
+import nom.bdezonia.zorbage.storage.StorageConstruction;
+import nom.bdezonia.zorbage.type.color.ArgbMember;
+import nom.bdezonia.zorbage.type.color.RgbMember;
+import nom.bdezonia.zorbage.type.integer.int16.SignedInt16Member;
+import nom.bdezonia.zorbage.type.integer.int16.UnsignedInt16Member;
+import nom.bdezonia.zorbage.type.integer.int32.SignedInt32Member;
+import nom.bdezonia.zorbage.type.integer.int8.SignedInt8Member;
+import nom.bdezonia.zorbage.type.integer.int8.UnsignedInt8Member;
+import nom.bdezonia.zorbage.type.real.float32.Float32Member;
+import nom.bdezonia.zorbage.type.real.float64.Float64Member;
+
+/**
+ * Reads the primitive array behind a data source that was allocated in array
+ * storage. Data sources of the common scalar types keep one array element per
+ * value, so a run of values along any axis is a run of array elements a fixed
+ * stride apart. A kernel reads such runs straight out of the array without
+ * making a value object per element.
+ * <p>
+ * There is a kernel for each of uint8, int8, uint16, int16, int32, float32 and
+ * float64. Color data sources keep the bytes of each color next to each other
+ * in one byte array. Their kernels read every value as a packed argb int.
+ * Other types, and storage that is not a single primitive array, have no
+ * kernel and are read the generic way.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public abstract class PrimitiveKernel {
+
+	// the backing array of each data source that has been looked at, or NONE
+	
+	private static final Object NONE = new Object();
+	
+	private static final Map<IndexedDataSource<?>,Object> ARRAYS =
+			Collections.synchronizedMap(new WeakHashMap<IndexedDataSource<?>,Object>());
+	
+	// where the storage of each color type puts each channel, or NONE
+	
+	private static final Map<Class<?>,Object> CHANNELS =
+			Collections.synchronizedMap(new HashMap<Class<?>,Object>());
+	
+	private PrimitiveKernel() { }
+	
+	/**
+	 * Find the kernel of a data source.
+	 * 
+	 * @param raw The data source.
+	 * @param sample A value of the data source's type.
+	 * @return The kernel or null if the data source is not backed by a
+	 *   primitive array of a supported type.
+	 */
+	public static PrimitiveKernel of(IndexedDataSource<?> raw, Object sample) {
+		
+		Object array = backingArray(raw);
+		
+		if (array == null)
+			return null;
+		
+		long length = Array.getLength(array);
+		
+		if (array instanceof byte[]) {
+			
+			if (sample instanceof ArgbMember && length == 4 * raw.size()) {
+				
+				int[] offsets = channelOffsets(raw, sample);
+				
+				return (offsets == null) ? null : new Argb8((byte[]) array, offsets);
+			}
+			
+			if (sample instanceof RgbMember && length == 3 * raw.size()) {
+				
+				int[] offsets = channelOffsets(raw, sample);
+				
+				return (offsets == null) ? null : new Rgb8((byte[]) array, offsets);
+			}
+		}
+		
+		if (length != raw.size())
+			return null;
+		
+		if (array instanceof byte[]) {
+			
+			if (sample instanceof UnsignedInt8Member)
+				return new Uint8((byte[]) array);
+			
+			if (sample instanceof SignedInt8Member)
+				return new Int8((byte[]) array);
+		}
+		else if (array instanceof short[]) {
+			
+			if (sample instanceof UnsignedInt16Member)
+				return new Uint16((short[]) array);
+			
+			if (sample instanceof SignedInt16Member)
+				return new Int16((short[]) array);
+		}
+		else if (array instanceof int[]) {
+			
+			if (sample instanceof SignedInt32Member)
+				return new Int32((int[]) array);
+		}
+		else if (array instanceof float[]) {
+			
+			if (sample instanceof Float32Member)
+				return new Float32((float[]) array);
+		}
+		else if (array instanceof double[]) {
+			
+			if (sample instanceof Float64Member)
+				return new Float64((double[]) array);
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Returns true if the values are floating point and can be NaNs or infinities.
+	 */
+	public boolean isFloatingPoint() {
+		
+		return false;
+	}
+	
+	/**
+	 * Read count values starting at array index and step elements apart as doubles.
+	 */
+	public abstract void readDoubles(long index, long step, int count, double[] dest, int off);
+	
+	/**
+	 * Read count values starting at array index and step elements apart as ints.
+	 * Floating point values are truncated.
+	 */
+	public abstract void readInts(long index, long step, int count, int[] dest, int off);
+	
+	/**
+	 * Read count values starting at array index and step elements apart as longs.
+	 * Floating point values are truncated.
+	 */
+	public abstract void readLongs(long index, long step, int count, long[] dest, int off);
+	
+	// zorbage does not promise the byte order of its color storage. it is found
+	// once per color type by storing a color whose channels are 1, 2, 3 (and 4)
+	// in a fresh data source and seeing where each channel's byte lands. returns
+	// the byte offset of each of a (argb only), r, g and b or null if the data
+	// source is not stored that way.
+	
+	private static int[] channelOffsets(IndexedDataSource<?> raw, Object sample) {
+		
+		Object probe = CHANNELS.get(sample.getClass());
+		
+		if (probe == null) {
+			
+			probe = probeChannels(sample);
+			
+			CHANNELS.put(sample.getClass(), (probe == null) ? NONE : probe);
+		}
+		
+		if (probe == NONE)
+			return null;
+		
+		Object[] found = (Object[]) probe;
+		
+		// other storage may lay the channels out some other way
+		
+		return (found[0] == raw.getClass()) ? (int[]) found[1] : null;
+	}
+	
+	@SuppressWarnings({"rawtypes","unchecked"})
+	private static Object[] probeChannels(Object sample) {
+		
+		int channels;
+		
+		Object color = ((Allocatable) sample).allocate();
+		
+		if (color instanceof ArgbMember) {
+			
+			ArgbMember c = (ArgbMember) color;
+			
+			c.setA(1);
+			c.setR(2);
+			c.setG(3);
+			c.setB(4);
+			
+			channels = 4;
+		}
+		else {
+			
+			RgbMember c = (RgbMember) color;
+			
+			c.setR(1);
+			c.setG(2);
+			c.setB(3);
+			
+			channels = 3;
+		}
+		
+		try {
+			
+			IndexedDataSource storage = Storage.allocate((Allocatable) color, 1);
+			
+			storage.set(0, color);
+			
+			Object array = findArray(storage);
+			
+			if (!(array instanceof byte[]) || ((byte[]) array).length != channels)
+				return null;
+			
+			byte[] bytes = (byte[]) array;
+			
+			int[] offsets = new int[channels];
+			
+			Arrays.fill(offsets, -1);
+			
+			for (int i = 0; i < channels; i++) {
+				
+				int channel = bytes[i] - 1;
+				
+				if (channel < 0 || channel >= channels || offsets[channel] >= 0)
+					return null;
+				
+				offsets[channel] = i;
+			}
+			
+			return new Object[] {storage.getClass(), offsets};
+			
+		} catch (RuntimeException e) {
+			
+			return null;
+		}
+	}
+	
+	// the zorbage array storage classes whose single primitive array field holds
+	// the values. zorbage has no public accessor for the array so it is found by
+	// reflection. only these classes are trusted so that a change to any other
+	// storage can never be misread. if zorbage reworks them the array is not
+	// found and the data is read the generic way.
+	
+	private static final String[] ARRAY_STORAGE = {
+			"nom.bdezonia.zorbage.storage.array.ArrayStorageSignedInt8",
+			"nom.bdezonia.zorbage.storage.array.ArrayStorageSignedInt16",
+			"nom.bdezonia.zorbage.storage.array.ArrayStorageSignedInt32",
+			"nom.bdezonia.zorbage.storage.array.ArrayStorageFloat32",
+			"nom.bdezonia.zorbage.storage.array.ArrayStorageFloat64"
+	};
+	
+	// the data source's only primitive array field
+	
+	private static Object backingArray(IndexedDataSource<?> raw) {
+		
+		Object array = ARRAYS.get(raw);
+		
+		if (array == null) {
+			
+			array = findArray(raw);
+			
+			ARRAYS.put(raw, (array == null) ? NONE : array);
+		}
+		
+		return (array == NONE) ? null : array;
+	}
+	
+	private static Object findArray(IndexedDataSource<?> raw) {
+		
+		if (raw.storageType() != StorageConstruction.MEM_ARRAY || raw.accessWithOneThread())
+			return null;
+		
+		if (!Arrays.asList(ARRAY_STORAGE).contains(raw.getClass().getName()))
+			return null;
+		
+		Object found = null;
+		
+		try {
+			
+			for (Class<?> c = raw.getClass(); c != null && c != Object.class; c = c.getSuperclass()) {
+				
+				for (Field f : c.getDeclaredFields()) {
+					
+					Class<?> type = f.getType();
+					
+					if (Modifier.isStatic(f.getModifiers()) || !type.isArray() ||
+							!type.getComponentType().isPrimitive())
+						continue;
+					
+					// more than one candidate: don't guess
+					
+					if (found != null)
+						return null;
+					
+					f.setAccessible(true);
+					
+					found = f.get(raw);
+				}
+			}
+			
+		} catch (IllegalAccessException | RuntimeException e) {
+			
+			return null;
+		}
+		
+		return found;
+	}
+	
+	private static final class Uint8 extends PrimitiveKernel {
+		
+		private final byte[] a;
+		
+		Uint8(byte[] a) { this.a = a; }
+		
+		@Override
+		public void readDoubles(long index, long step, int count, double[] dest, int off) {
+			int p = (int) index, s = (int) step;
+			for (int i = 0; i < count; i++, p += s)
+				dest[off + i] = a[p] & 0xff;
+		}
+		
+		@Override
+		public void readInts(long index, long step, int count, int[] dest, int off) {
+			int p = (int) index, s = (int) step;
+			for (int i = 0; i < count; i++, p += s)
+				dest[off + i] = a[p] & 0xff;
+		}
+		
+		@Override
+		public void readLongs(long index, long step, int count, long[] dest, int off) {
+			int p = (int) index, s = (int) step;
+			for (int i = 0; i < count; i++, p += s)
+				dest[off + i] = a[p] & 0xff;
+		}
+	}
+	
+	private static final class Int8 extends PrimitiveKernel {
+		
+		private final byte[] a;
+		
+		Int8(byte[] a) { this.a = a; }
+		
+		@Override
+		public void readDoubles(long index, long step, int count, double[] dest, int off) {
+			int p = (int) index, s = (int) step;
+			for (int i = 0; i < count; i++, p += s)
+				dest[off + i] = a[p];
+		}
+		
+		@Override
+		public void readInts(long index, long step, int count, int[] dest, int off) {
+			int p = (int) index, s = (int) step;
+			for (int i = 0; i < count; i++, p += s)
+				dest[off + i] = a[p];
+		}
+		
+		@Override
+		public void readLongs(long index, long step, int count, long[] dest, int off) {
+			int p = (int) index, s = (int) step;
+			for (int i = 0; i < count; i++, p += s)
+				dest[off + i] = a[p];
+		}
+	}
+	
+	private static final class Uint16 extends PrimitiveKernel {
+		
+		private final short[] a;
+		
+		Uint16(short[] a) { this.a = a; }
+		
+		@Override
+		public void readDoubles(long index, long step, int count, double[] dest, int off) {
+			int p = (int) index, s = (int) step;
+			for (int i = 0; i < count; i++, p += s)
+				dest[off + i] = a[p] & 0xffff;
+		}
+		
+		@Override
+		public void readInts(long index, long step, int count, int[] dest, int off) {
+			int p = (int) index, s = (int) step;
+			for (int i = 0; i < count; i++, p += s)
+				dest[off + i] = a[p] & 0xffff;
+		}
+		
+		@Override
+		public void readLongs(long index, long step, int count, long[] dest, int off) {
+			int p = (int) index, s = (int) step;
+			for (int i = 0; i < count; i++, p += s)
+				dest[off + i] = a[p] & 0xffff;
+		}
+	}
+	
+	private static final class Int16 extends PrimitiveKernel {
+		
+		private final short[] a;
+		
+		Int16(short[] a) { this.a = a; }
+		
+		@Override
+		public void readDoubles(long index, long step, int count, double[] dest, int off) {
+			int p = (int) index, s = (int) step;
+			for (int i = 0; i < count; i++, p += s)
+				dest[off + i] = a[p];
+		}
+		
+		@Override
+		public void readInts(long index, long step, int count, int[] dest, int off) {
+			int p = (int) index, s = (int) step;
+			for (int i = 0; i < count; i++, p += s)
+				dest[off + i] = a[p];
+		}
+		
+		@Override
+		public void readLongs(long index, long step, int count, long[] dest, int off) {
+			int p = (int) index, s = (int) step;
+			for (int i = 0; i < count; i++, p += s)
+				dest[off + i] = a[p];
+		}
+	}
+	
+	private static final class Int32 extends PrimitiveKernel {
+		
+		private final int[] a;
+		
+		Int32(int[] a) { this.a = a; }
+		
+		@Override
+		public void readDoubles(long index, long step, int count, double[] dest, int off) {
+			int p = (int) index, s = (int) step;
+			for (int i = 0; i < count; i++, p += s)
+				dest[off + i] = a[p];
+		}
+		
+		@Override
+		public void readInts(long index, long step, int count, int[] dest, int off) {
+			if (step == 1) {
+				System.arraycopy(a, (int) index, dest, off, count);
+				return;
+			}
+			int p = (int) index, s = (int) step;
+			for (int i = 0; i < count; i++, p += s)
+				dest[off + i] = a[p];
+		}
+		
+		@Override
+		public void readLongs(long index, long step, int count, long[] dest, int off) {
+			int p = (int) index, s = (int) step;
+			for (int i = 0; i < count; i++, p += s)
+				dest[off + i] = a[p];
+		}
+	}
+	
+	private static final class Float32 extends PrimitiveKernel {
+		
+		private final float[] a;
+		
+		Float32(float[] a) { this.a = a; }
+		
+		@Override
+		public boolean isFloatingPoint() {
+			return true;
+		}
+		
+		@Override
+		public void readDoubles(long index, long step, int count, double[] dest, int off) {
+			int p = (int) index, s = (int) step;
+			for (int i = 0; i < count; i++, p += s)
+				dest[off + i] = a[p];
+		}
+		
+		@Override
+		public void readInts(long index, long step, int count, int[] dest, int off) {
+			int p = (int) index, s = (int) step;
+			for (int i = 0; i < count; i++, p += s)
+				dest[off + i] = (int) a[p];
+		}
+		
+		@Override
+		public void readLongs(long index, long step, int count, long[] dest, int off) {
+			int p = (int) index, s = (int) step;
+			for (int i = 0; i < count; i++, p += s)
+				dest[off + i] = (long) a[p];
+		}
+	}
+	
+	private static final class Float64 extends PrimitiveKernel {
+		
+		private final double[] a;
+		
+		Float64(double[] a) { this.a = a; }
+		
+		@Override
+		public boolean isFloatingPoint() {
+			return true;
+		}
+		
+		@Override
+		public void readDoubles(long index, long step, int count, double[] dest, int off) {
+			if (step == 1) {
+				System.arraycopy(a, (int) index, dest, off, count);
+				return;
+			}
+			int p = (int) index, s = (int) step;
+			for (int i = 0; i < count; i++, p += s)
+				dest[off + i] = a[p];
+		}
+		
+		@Override
+		public void readInts(long index, long step, int count, int[] dest, int off) {
+			int p = (int) index, s = (int) step;
+			for (int i = 0; i < count; i++, p += s)
+				dest[off + i] = (int) a[p];
+		}
+		
+		@Override
+		public void readLongs(long index, long step, int count, long[] dest, int off) {
+			int p = (int) index, s = (int) step;
+			for (int i = 0; i < count; i++, p += s)
+				dest[off + i] = (long) a[p];
+		}
+	}
+	
+	// a byte each of alpha, red, green and blue per value at the probed offsets
+	
+	private static final class Argb8 extends PrimitiveKernel {
+		
+		private final byte[] a;
+		private final int oa, or, og, ob;
+		
+		Argb8(byte[] a, int[] offsets) {
+			this.a = a;
+			oa = offsets[0]; or = offsets[1]; og = offsets[2]; ob = offsets[3];
+		}
+		
+		@Override
+		public void readDoubles(long index, long step, int count, double[] dest, int off) {
+			int p = (int) index * 4, s = (int) step * 4;
+			for (int i = 0; i < count; i++, p += s)
+				dest[off + i] = argb(p);
+		}
+		
+		@Override
+		public void readInts(long index, long step, int count, int[] dest, int off) {
+			int p = (int) index * 4, s = (int) step * 4;
+			for (int i = 0; i < count; i++, p += s)
+				dest[off + i] = argb(p);
+		}
+		
+		@Override
+		public void readLongs(long index, long step, int count, long[] dest, int off) {
+			int p = (int) index * 4, s = (int) step * 4;
+			for (int i = 0; i < count; i++, p += s)
+				dest[off + i] = argb(p);
+		}
+		
+		private int argb(int p) {
+			return ((a[p+oa] & 0xff) << 24) | ((a[p+or] & 0xff) << 16) | ((a[p+og] & 0xff) << 8) | (a[p+ob] & 0xff);
+		}
+	}
+	
+	// a byte each of red, green and blue per value at the probed offsets. colors
+	// are opaque.
+	
+	private static final class Rgb8 extends PrimitiveKernel {
+		
+		private final byte[] a;
+		private final int or, og, ob;
+		
+		Rgb8(byte[] a, int[] offsets) {
+			this.a = a;
+			or = offsets[0]; og = offsets[1]; ob = offsets[2];
+		}
+		
+		@Override
+		public void readDoubles(long index, long step, int count, double[] dest, int off) {
+			int p = (int) index * 3, s = (int) step * 3;
+			for (int i = 0; i < count; i++, p += s)
+				dest[off + i] = argb(p);
+		}
+		
+		@Override
+		public void readInts(long index, long step, int count, int[] dest, int off) {
+			int p = (int) index * 3, s = (int) step * 3;
+			for (int i = 0; i < count; i++, p += s)
+				dest[off + i] = argb(p);
+		}
+		
+		@Override
+		public void readLongs(long index, long step, int count, long[] dest, int off) {
+			int p = (int) index * 3, s = (int) step * 3;
+			for (int i = 0; i < count; i++, p += s)
+				dest[off + i] = argb(p);
+		}
+		
+		private int argb(int p) {
+			return 0xff000000 | ((a[p+or] & 0xff) << 16) | ((a[p+og] & 0xff) << 8) | (a[p+ob] & 0xff);
+		}
+	}
+}
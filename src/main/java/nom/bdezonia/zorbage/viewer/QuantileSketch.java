@@ -0,0 +1,594 @@
+/*
+ * zorbage-viewer: utility app for loading and viewing various image data formats
+ *
+ * Copyright (c) 2020-2022 Barry DeZonia All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 
+ * Neither the name of the <copyright holder> nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+ * BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package nom.bdezonia.zorbage.viewer;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.ToDoubleFunction;
+
+import nom.bdezonia.zorbage.algebra.Algebra;
+import nom.bdezonia.zorbage.datasource.IndexedDataSource;
+
+/**
+ * A KLL quantile sketch of a stream of doubles. It keeps a few thousand of the
+ * values, each standing in for a power of two of the values seen, and finds
+ * any quantile to within about a tenth of a percent of rank. Sketches of
+ * separate parts of the data can be merged, so they are built in parallel.
+ * <p>
+ * NaNs are not sketched. Infinities are.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class QuantileSketch {
+
+	public static final String SAMPLE_PROPERTY = "zorbage.viewer.sketch.samples";
+	
+	// rank error is roughly 1.7% * 200 / K
+	
+	private static final int K = 4096;
+	
+	private static final int MIN_WIDTH = 8;
+	
+	// the values read at a time
+	
+	private static final int BLOCK = 4096;
+	
+	private static final long DEFAULT_SAMPLES = 1L << 26;
+	
+	private final SplittableRandom random;
+	
+	// level h holds values that each stand for 2^h values
+	
+	private double[][] levels = new double[][] {new double[K]};
+	private int[] sizes = new int[1];
+	private int[] capacities = new int[] {K};
+	private int retained = 0;
+	private int capacity = K;
+	private long count = 0;
+	private double min = Double.NaN;
+	private double max = Double.NaN;
+	
+	/**
+	 * 
+	 * @param seed Seeds the coin flips of the compactions. Sketches built the
+	 *   same way from the same seeds come out the same.
+	 */
+	public QuantileSketch(long seed) {
+		
+		this.random = new SplittableRandom(seed);
+	}
+	
+	/**
+	 * The most values that {@link #build} reads before it samples instead. Set
+	 * by the zorbage.viewer.sketch.samples system property. Zero means never
+	 * sample.
+	 */
+	public static long sampleLimit() {
+		
+		String prop = System.getProperty(SAMPLE_PROPERTY);
+		
+		if (prop != null) {
+			
+			try {
+				
+				long v = Long.parseLong(prop.trim());
+				
+				if (v >= 0)
+					return v;
+				
+			} catch (NumberFormatException e) {
+				
+				// fall through
+			}
+			
+			System.out.println("Ignoring bad value for " + SAMPLE_PROPERTY + ": " + prop);
+		}
+		
+		return DEFAULT_SAMPLES;
+	}
+	
+	/**
+	 * Sketch a data source of a type that supports GetAsDouble in parallel. If
+	 * there are more values than sampleLimit() whole blocks of values are read
+	 * from evenly spaced spots instead of every value.
+	 * 
+	 * @param lock The object that guards raw if it can only be read by one
+	 *   thread at a time.
+	 * @param cancelled Polled now and then to give up early.
+	 * @return The sketch or null if cancelled.
+	 */
+	public static <U> QuantileSketch build(Algebra<?,U> alg, IndexedDataSource<U> raw, Object lock,
+			BooleanSupplier cancelled)
+	{
+		long size = raw.size();
+		
+		long limit = sampleLimit();
+		
+		long blocks = (size + BLOCK - 1) / BLOCK;
+		
+		boolean sampled = limit > 0 && size > limit;
+		
+		if (sampled)
+			blocks = Math.max(1, limit / BLOCK);
+		
+		Reader<U> template = new Reader<>(alg, raw, lock, size, blocks, sampled);
+		
+		QuantileSketch sketch;
+		
+		if (raw.accessWithOneThread()) {
+			
+			sketch = template.sketch(0, blocks, cancelled);
+		}
+		else {
+			
+			long grain = Math.max(16, blocks / (RenderPool.parallelism() * 8L));
+			
+			sketch = RenderPool.invokeInBackground(new Task<>(template, 0, blocks, grain, cancelled));
+		}
+		
+		return cancelled.getAsBoolean() ? null : sketch;
+	}
+	
+	/**
+	 * Add a value.
+	 */
+	public void add(double v) {
+		
+		if (v != v)
+			return;
+		
+		if (count == 0 || v < min) min = v;
+		
+		if (count == 0 || v > max) max = v;
+		
+		count++;
+		
+		push(0, v);
+		
+		if (retained >= capacity)
+			compress();
+	}
+	
+	/**
+	 * Add the values of another sketch to this one.
+	 */
+	public void merge(QuantileSketch other) {
+		
+		if (other.count == 0)
+			return;
+		
+		if (count == 0 || other.min < min) min = other.min;
+		
+		if (count == 0 || other.max > max) max = other.max;
+		
+		count += other.count;
+		
+		for (int h = 0; h < other.sizes.length; h++) {
+			
+			for (int i = 0; i < other.sizes[h]; i++)
+				push(h, other.levels[h][i]);
+		}
+		
+		compress();
+	}
+	
+	/**
+	 * The number of values sketched.
+	 */
+	public long count() {
+		
+		return count;
+	}
+	
+	/**
+	 * The value that a fraction of the sketched values are below. q = 0 and q = 1
+	 * give the exact min and max. NaN if the sketch is empty.
+	 */
+	public double quantile(double q) {
+		
+		if (count == 0)
+			return Double.NaN;
+		
+		if (q <= 0)
+			return min;
+		
+		if (q >= 1)
+			return max;
+		
+		// walk the sorted levels together from the smallest value up
+		
+		double[][] sorted = new double[sizes.length][];
+		
+		int[] next = new int[sizes.length];
+		
+		for (int h = 0; h < sizes.length; h++) {
+			
+			sorted[h] = Arrays.copyOf(levels[h], sizes[h]);
+			
+			Arrays.sort(sorted[h]);
+		}
+		
+		double target = q * count;
+		
+		long seen = 0;
+		
+		while (true) {
+			
+			int smallest = -1;
+			
+			for (int h = 0; h < sorted.length; h++) {
+				
+				if (next[h] < sorted[h].length &&
+						(smallest < 0 || sorted[h][next[h]] < sorted[smallest][next[smallest]]))
+					smallest = h;
+			}
+			
+			if (smallest < 0)
+				break;
+			
+			double v = sorted[smallest][next[smallest]++];
+			
+			seen += 1L << smallest;
+			
+			if (seen >= target)
+				return v;
+		}
+		
+		return max;
+	}
+	
+	/**
+	 * A sketch of the values of this one after each was passed through a
+	 * function. The rank error stays the same when the function never
+	 * decreases or never increases. Values that map to NaN are dropped.
+	 * Returns null when the function is not monotonic over the kept values
+	 * since the sketch would then no longer describe the new values.
+	 */
+	public QuantileSketch map(DoubleUnaryOperator f) {
+		
+		// map each distinct kept value once, in order, so the direction of
+		// the function can be checked
+		
+		double[] from = new double[retained + 2];
+		
+		int distinct = 0;
+		
+		for (int h = 0; h < sizes.length; h++) {
+			
+			for (int i = 0; i < sizes[h]; i++)
+				from[distinct++] = levels[h][i];
+		}
+		
+		from[distinct++] = min;
+		
+		from[distinct++] = max;
+		
+		Arrays.sort(from, 0, distinct);
+		
+		int n = 0;
+		
+		for (int i = 0; i < distinct; i++) {
+			
+			if (n == 0 || Double.compare(from[i], from[n-1]) != 0)
+				from[n++] = from[i];
+		}
+		
+		from = Arrays.copyOf(from, n);
+		
+		double[] to = new double[n];
+		
+		int direction = 0;
+		
+		double last = Double.NaN;
+		
+		for (int i = 0; i < n; i++) {
+			
+			double v = f.applyAsDouble(from[i]);
+			
+			to[i] = v;
+			
+			if (v != v)
+				continue;
+			
+			if (last == last) {
+				
+				int d = Double.compare(v, last);
+				
+				if (d != 0) {
+					
+					if (direction != 0 && d != direction)
+						return null;
+					
+					direction = d;
+				}
+			}
+			
+			last = v;
+		}
+		
+		QuantileSketch result = new QuantileSketch(random.nextLong());
+		
+		result.levels = new double[levels.length][];
+		
+		result.sizes = new int[sizes.length];
+		
+		result.capacities = capacities.clone();
+		
+		result.capacity = capacity;
+		
+		for (int h = 0; h < sizes.length; h++) {
+			
+			double[] mapped = new double[levels[h].length];
+			
+			int kept = 0;
+			
+			for (int i = 0; i < sizes[h]; i++) {
+				
+				double v = to[Arrays.binarySearch(from, levels[h][i])];
+				
+				if (v != v)
+					continue;
+				
+				if (result.count == 0 || v < result.min) result.min = v;
+				
+				if (result.count == 0 || v > result.max) result.max = v;
+				
+				result.count += 1L << h;
+				
+				mapped[kept++] = v;
+			}
+			
+			result.levels[h] = mapped;
+			
+			result.sizes[h] = kept;
+			
+			result.retained += kept;
+		}
+		
+		// the exact extremes stay exact for monotonic functions
+		
+		if (result.count > 0) {
+			
+			for (double v : new double[] {to[0], to[n-1]}) {
+				
+				if (v < result.min) result.min = v;
+				
+				if (v > result.max) result.max = v;
+			}
+		}
+		
+		return result;
+	}
+	
+	private void push(int h, double v) {
+		
+		if (h == sizes.length)
+			addLevel();
+		
+		if (sizes[h] == levels[h].length)
+			levels[h] = Arrays.copyOf(levels[h], sizes[h] * 2);
+		
+		levels[h][sizes[h]++] = v;
+		
+		retained++;
+	}
+	
+	// the top level is the widest. each level down is 2/3 as wide.
+	
+	private void addLevel() {
+		
+		int height = sizes.length + 1;
+		
+		levels = Arrays.copyOf(levels, height);
+		
+		levels[height - 1] = new double[MIN_WIDTH];
+		
+		sizes = Arrays.copyOf(sizes, height);
+		
+		capacities = new int[height];
+		
+		capacity = 0;
+		
+		for (int h = 0; h < height; h++) {
+			
+			capacities[h] = Math.max(MIN_WIDTH, (int) Math.ceil(K * Math.pow(2.0 / 3, height - 1 - h)));
+			
+			capacity += capacities[h];
+		}
+	}
+	
+	private void compress() {
+		
+		while (retained >= capacity) {
+			
+			int h = 0;
+			
+			while (sizes[h] < capacities[h])
+				h++;
+			
+			compact(h);
+		}
+	}
+	
+	// sort a level and promote every other value to the next level up with
+	// twice the weight. an odd one out stays behind.
+	
+	private void compact(int h) {
+		
+		double[] level = levels[h];
+		
+		int size = sizes[h];
+		
+		Arrays.sort(level, 0, size);
+		
+		int start = size % 2;
+		
+		int offset = random.nextBoolean() ? 1 : 0;
+		
+		sizes[h] = start;
+		
+		retained -= size - start;
+		
+		for (int i = start + offset; i < size; i += 2)
+			push(h + 1, levels[h][i]);
+	}
+	
+	// reads blocks of values into sketches
+	
+	private static class Reader<U> {
+		
+		private final Algebra<?,U> alg;
+		private final IndexedDataSource<U> raw;
+		private final Object lock;
+		private final long size;
+		private final long blocks;
+		private final boolean sampled;
+		private final PrimitiveKernel kernel;
+		
+		Reader(Algebra<?,U> alg, IndexedDataSource<U> raw, Object lock, long size, long blocks, boolean sampled) {
+			
+			this.alg = alg;
+			
+			this.raw = raw;
+			
+			this.lock = lock;
+			
+			this.size = size;
+			
+			this.blocks = blocks;
+			
+			this.sampled = sampled;
+			
+			this.kernel = PrimitiveKernel.of(raw, alg.construct());
+		}
+		
+		QuantileSketch sketch(long first, long last, BooleanSupplier cancelled) {
+			
+			QuantileSketch sketch = new QuantileSketch(first);
+			
+			ToDoubleFunction<U> conv = PlaneRowReader.asDouble();
+			
+			U value = alg.construct();
+			
+			double[] block = new double[BLOCK];
+			
+			boolean oneThread = raw.accessWithOneThread();
+			
+			for (long b = first; b < last && !cancelled.getAsBoolean(); b++) {
+				
+				// sampled blocks are spread evenly over the data
+				
+				long start = sampled ? b * (size / blocks) : b * BLOCK;
+				
+				int n = (int) Math.min(BLOCK, size - start);
+				
+				if (kernel != null)
+					kernel.readDoubles(start, 1, n, block, 0);
+				else if (oneThread) {
+					
+					// let other readers have the data between blocks
+					
+					synchronized (lock) {
+						
+						for (int i = 0; i < n; i++) {
+							
+							raw.get(start + i, value);
+							
+							block[i] = conv.applyAsDouble(value);
+						}
+					}
+				}
+				else {
+					
+					for (int i = 0; i < n; i++) {
+						
+						raw.get(start + i, value);
+						
+						block[i] = conv.applyAsDouble(value);
+					}
+				}
+				
+				for (int i = 0; i < n; i++)
+					sketch.add(block[i]);
+			}
+			
+			return sketch;
+		}
+	}
+	
+	@SuppressWarnings("serial")
+	private static class Task<U> extends RecursiveTask<QuantileSketch> {
+		
+		private final Reader<U> reader;
+		private final long first;
+		private final long last;
+		private final long grain;
+		private final BooleanSupplier cancelled;
+		
+		Task(Reader<U> reader, long first, long last, long grain, BooleanSupplier cancelled) {
+			
+			this.reader = reader;
+			
+			this.first = first;
+			
+			this.last = last;
+			
+			this.grain = grain;
+			
+			this.cancelled = cancelled;
+		}
+		
+		@Override
+		protected QuantileSketch compute() {
+			
+			if (last - first <= grain)
+				return reader.sketch(first, last, cancelled);
+			
+			long mid = first + (last - first) / 2;
+			
+			Task<U> left = new Task<>(reader, first, mid, grain, cancelled);
+			
+			left.fork();
+			
+			QuantileSketch right = new Task<>(reader, mid, last, grain, cancelled).compute();
+			
+			QuantileSketch result = left.join();
+			
+			result.merge(right);
+			
+			return result;
+		}
+	}
+}
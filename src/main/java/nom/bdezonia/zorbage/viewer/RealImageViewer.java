@@ -42,19 +42,30 @@ import java.awt.Image;
 import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
 import java.math.BigDecimal;
-import java.math.BigInteger;
 import java.math.MathContext;
 import java.net.URL;
 import java.text.DecimalFormat;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.IntConsumer;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
 
 import javax.swing.Box;
 import javax.swing.BoxLayout;
@@ -68,11 +79,13 @@ import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JRadioButton;
-import javax.swing.JScrollPane;
 import javax.swing.JSeparator;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
 import javax.swing.SwingWorker;
+import javax.swing.Timer;
 
 import nom.bdezonia.zorbage.algebra.Addition;
 import nom.bdezonia.zorbage.algebra.Algebra;
@@ -80,6 +93,7 @@ import nom.bdezonia.zorbage.algebra.Allocatable;
 import nom.bdezonia.zorbage.algebra.Bounded;
 import nom.bdezonia.zorbage.algebra.Exponential;
 import nom.bdezonia.zorbage.algebra.G;
+import nom.bdezonia.zorbage.algebra.GetAsDouble;
 import nom.bdezonia.zorbage.algebra.HighPrecRepresentation;
 import nom.bdezonia.zorbage.algebra.Hyperbolic;
 import nom.bdezonia.zorbage.algebra.Infinite;
@@ -100,7 +114,6 @@ import nom.bdezonia.zorbage.algorithm.FFT2D;
 import nom.bdezonia.zorbage.algorithm.MakeColorDatasource;
 import nom.bdezonia.zorbage.algorithm.MeanAndStdDev;
 import nom.bdezonia.zorbage.algorithm.Median;
-import nom.bdezonia.zorbage.algorithm.MinMaxElement;
 import nom.bdezonia.zorbage.algorithm.NdSplit;
 import nom.bdezonia.zorbage.algorithm.SwapQuadrants;
 import nom.bdezonia.zorbage.algorithm.Transform2;
@@ -111,7 +124,6 @@ import nom.bdezonia.zorbage.data.DimensionedStorage;
 import nom.bdezonia.zorbage.datasource.IndexedDataSource;
 import nom.bdezonia.zorbage.datasource.ReadOnlyHighPrecisionDataSource;
 import nom.bdezonia.zorbage.dataview.PlaneView;
-import nom.bdezonia.zorbage.dataview.TwoDView;
 import nom.bdezonia.zorbage.misc.BigDecimalUtils;
 import nom.bdezonia.zorbage.misc.DataSourceUtils;
 import nom.bdezonia.zorbage.procedure.Procedure2;
@@ -120,6 +132,9 @@ import nom.bdezonia.zorbage.tuple.Tuple2;
 import nom.bdezonia.zorbage.type.color.ArgbAlgebra;
 import nom.bdezonia.zorbage.type.color.ArgbMember;
 import nom.bdezonia.zorbage.type.color.RgbUtils;
+import nom.bdezonia.zorbage.type.integer.int16.SignedInt16Member;
+import nom.bdezonia.zorbage.type.integer.int16.UnsignedInt16Member;
+import nom.bdezonia.zorbage.type.integer.int8.SignedInt8Member;
 import nom.bdezonia.zorbage.type.integer.int8.UnsignedInt8Member;
 import nom.bdezonia.zorbage.type.real.float128.Float128Algebra;
 import nom.bdezonia.zorbage.type.real.float128.Float128Member;
@@ -148,10 +163,22 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 	
 	private static MathContext roundContext = new MathContext(6);
 	
+	// the small integer types that get colored through a direct lookup table
+	
+	private static final int NOT_SMALL_INT = 0;
+	private static final int UINT8 = 1;
+	private static final int INT8 = 2;
+	private static final int UINT16 = 3;
+	private static final int INT16 = 4;
+	
 	private final T alg;
 	private final PlaneView<U> planeData;
 	private final PanZoomView pz;
-	private final BufferedImage argbData;
+	private final ImagePane imagePane;
+	private final RenderService<PanZoomView> renderService;
+	private final PointerReadout pointerReadout;
+	private final RealPyramid<U> pyramid;
+	private final RealPrefetcher<U> prefetcher;
 	private int[] colorTable = LutUtils.DEFAULT_COLOR_TABLE;
 	private boolean preferDataRange = true;
 	private final U min;
@@ -165,17 +192,41 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 	private NaN<U> nanTester = null;
 	private Infinite<U> infTester = null;
 	private Ordered<U> signumTester = null;
+	private final boolean primitiveValues;
+	private final int smallIntType;
+	private DisplayMapping displayMapping = null;
+	private RowReducer.Filter zoomOutFilter = RowReducer.Filter.MEAN;
 	private final Font font = new Font("Verdana", Font.PLAIN, 18);
-	private AtomicBoolean animatingRightNow = new AtomicBoolean();
-	private AtomicBoolean pleaseQuitAnimating = new AtomicBoolean();
+	private final PlaybackScheduler playback = new PlaybackScheduler();
+	private final JLabel playbackLabel;
+	private final FrameCache frameCache = new FrameCache();
+	private final JProgressBar frameCacheBar;
 	private HighPrecisionMember dispMin = null;
 	private HighPrecisionMember dispMax = null;
 	private final JLabel ctrXLabel;
 	private final JLabel ctrYLabel;
 	private final JLabel constructionLabel;
+	private final JLabel minLabel;
+	private final JLabel maxLabel;
+	private final JLabel dispMinLabel;
+	private final JLabel dispMaxLabel;
+	private final MinMaxScan<U> minMaxScan;
+	private boolean dataRangeExact = true;
+	private StatsDialog statsDialog = null;
+	private PlaneStatsIndex planeStats = null;
+	private final JCheckBox planeContrastBox;
+	private boolean planeContrast = false;
+	private long contrastPlane = -1;
+	private QuantileSketch sketch = null;
+	private final AtomicLong sketchGeneration = new AtomicLong();
+	private final JCheckBox autoRangeBox;
+	private boolean autoRange = false;
 	private final DecimalFormat df = new DecimalFormat("0.00000");
 	private static final int MIN_MAX_CHAR_COUNT = 15;
 	private static final int DISP_MIN_MAX_CHAR_COUNT = MIN_MAX_CHAR_COUNT - 5;
+	private static final double PLANE_CONTRAST_TAIL = 0.005;
+	private static final double AUTO_RANGE_LOW = 0.005;
+	private static final double AUTO_RANGE_HIGH = 0.995;
 
 	/**
 	 * Make an interactive graphical viewer for a real data source.
@@ -221,6 +272,28 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 		else {
 			throw new IllegalArgumentException("Weird error: very strange real number type that is not ordered!");
 		}
+		
+		this.minMaxScan = new MinMaxScan<>(alg, dataSource.rawData(), dataSource);
+		
+		// Types whose whole range fits in a double can be colored with primitive
+		// math. The wider types (highprec, float128, unbounded ints, etc.) must
+		// go through the slower BigDecimal code.
+		
+		U tmp = alg.construct();
+		
+		this.primitiveValues = (alg instanceof Bounded) && (tmp instanceof GetAsDouble) &&
+				!(tmp instanceof HighPrecisionMember) && !(tmp instanceof Float128Member);
+		
+		if (tmp instanceof UnsignedInt8Member)
+			this.smallIntType = UINT8;
+		else if (tmp instanceof SignedInt8Member)
+			this.smallIntType = INT8;
+		else if (tmp instanceof UnsignedInt16Member)
+			this.smallIntType = UINT16;
+		else if (tmp instanceof SignedInt16Member)
+			this.smallIntType = INT16;
+		else
+			this.smallIntType = NOT_SMALL_INT;
 
 		String name = dataSource.getName();
 		
@@ -242,7 +315,65 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 		
 		frame.setLayout(new BorderLayout());
 		
-		argbData = new BufferedImage(pz.paneWidth, pz.paneHeight, BufferedImage.TYPE_INT_ARGB);
+		frame.addWindowListener(new WindowAdapter() {
+			
+			@Override
+			public void windowClosing(WindowEvent e) {
+				
+				playback.stop();
+				
+				frameCache.invalidate();
+				
+				// the shared cache would otherwise keep the data reachable
+				
+				TileCache.shared().invalidate(planeData.getDataSource());
+				
+				minMaxScan.cancel();
+				
+				sketchGeneration.incrementAndGet();
+				
+				if (statsDialog != null)
+					statsDialog.close();
+			}
+		});
+		
+		imagePane = new ImagePane(pz.paneWidth, pz.paneHeight);
+		
+		renderService = new RenderService<>(imagePane, pz.paneWidth, pz.paneHeight);
+		
+		// zoomed out views of big planes draw from a reduced copy of the plane
+		
+		if (primitiveValues) {
+			
+			pyramid = new RealPyramid<U>(alg, new IntConsumer() {
+				
+				@Override
+				public void accept(int shift) {
+
+					SwingUtilities.invokeLater(new Runnable() {
+						
+						@Override
+						public void run() {
+							
+							// redraw if the new level is usable at the current zoom
+							
+							if (pz.scaleDenom >= (1 << shift))
+								pz.draw();
+						}
+					});
+				}
+			});
+			
+			// stepping and animating through planes draws from copies read ahead of time
+			
+			prefetcher = new RealPrefetcher<U>(alg);
+		}
+		else {
+			
+			pyramid = null;
+			
+			prefetcher = null;
+		}
 		
 		positionLabels = new JLabel[planeData.getPositionsCount()];
 		for (int i = 0; i < positionLabels.length; i++) {
@@ -250,10 +381,10 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 			positionLabels[i].setFont(font);
 		}
 
-		JLabel dispMinLabel = new JLabel("Display Min: ");
+		dispMinLabel = new JLabel("Display Min: ");
 		dispMinLabel.setFont(font);
 		
-		JLabel dispMaxLabel = new JLabel("Display Max: ");
+		dispMaxLabel = new JLabel("Display Max: ");
 		dispMaxLabel.setFont(font);
 
 		JLabel scaleLabel = new JLabel("Scale: 1X");
@@ -265,6 +396,14 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 		ctrYLabel = new JLabel("Zoom center d1:");
 		ctrYLabel.setFont(font);
 
+		playbackLabel = new JLabel("Playback:");
+		playbackLabel.setFont(font);
+
+		frameCacheBar = new JProgressBar(0, 100);
+		frameCacheBar.setStringPainted(true);
+		frameCacheBar.setString("Frame cache: empty");
+		frameCacheBar.setFont(font);
+
 		setZoomCenterLabels();
 		
 		JLabel sourceLabel = new JLabel("Source: "+source);
@@ -297,9 +436,24 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 		headerPanel.add(headerPanelRight, BorderLayout.EAST);
 
 		JPanel graphicsPanel = new JPanel();
-		JLabel image = new JLabel(new ImageIcon(argbData));
-		JScrollPane scrollPane = new JScrollPane(image);
-		graphicsPanel.add(scrollPane, BorderLayout.CENTER);
+		graphicsPanel.setLayout(new BorderLayout());
+		graphicsPanel.add(imagePane, BorderLayout.CENTER);
+		
+		// the view follows the size of the window
+		
+		imagePane.addComponentListener(new ComponentAdapter() {
+			
+			@Override
+			public void componentResized(ComponentEvent e) {
+				
+				if (pz.resize(imagePane.getWidth(), imagePane.getHeight())) {
+					
+					setZoomCenterLabels();
+					
+					pz.draw();
+				}
+			}
+		});
 
 		JPanel buttonPanel = new JPanel();
 		JButton metadata = new JButton("Metadata ...");
@@ -310,6 +464,8 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 		JButton grabPlane = new JButton("Grab Plane");
 		JButton incZoom = new JButton("Zoom In");
 		JButton decZoom = new JButton("Zoom Out");
+		JButton zoomFilter = new JButton("Zoom Out Filter ...");
+		JButton playbackSettings = new JButton("Playback ...");
 		JButton panLeft = new JButton("Pan Left");
 		JButton panRight = new JButton("Pan Right");
 		JButton panUp = new JButton("Pan Up");
@@ -329,6 +485,8 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 		resetLut.setMinimumSize(size);
 		incZoom.setMinimumSize(size);
 		decZoom.setMinimumSize(size);
+		zoomFilter.setMinimumSize(size);
+		playbackSettings.setMinimumSize(size);
 		panLeft.setMinimumSize(size);
 		panRight.setMinimumSize(size);
 		panUp.setMinimumSize(size);
@@ -350,6 +508,8 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 		resetLut.setMaximumSize(size);
 		incZoom.setMaximumSize(size);
 		decZoom.setMaximumSize(size);
+		zoomFilter.setMaximumSize(size);
+		playbackSettings.setMaximumSize(size);
 		panLeft.setMaximumSize(size);
 		panRight.setMaximumSize(size);
 		panUp.setMaximumSize(size);
@@ -372,6 +532,8 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 		vertBox.add(resetLut);
 		vertBox.add(incZoom);
 		vertBox.add(decZoom);
+		vertBox.add(zoomFilter);
+		vertBox.add(playbackSettings);
 		vertBox.add(panLeft);
 		vertBox.add(panRight);
 		vertBox.add(panUp);
@@ -531,7 +693,8 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 					}
 					// make sure only two dims were chosen
 					if (i0 != -1 && i1 != -1 && iOthers == -1)
-						new RealImageViewer<>(alg, dataSource, i0, i1, dataMin, dataMax);
+						new RealImageViewer<>(alg, dataSource, i0, i1,
+								dataRangeExact ? dataMin : null, dataRangeExact ? dataMax : null);
 					//else
 					//	System.out.println("" + i0 + " " + i1 + " " + iOthers);
 				}
@@ -591,6 +754,93 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 				}
 			}
 		});
+		playbackSettings.addActionListener(new ActionListener() {
+			
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				
+				playback.showSettings(frame);
+			}
+		});
+		zoomFilter.addActionListener(new ActionListener() {
+
+			boolean cancelled = false;
+			RowReducer.Filter choice = null;
+			
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				JDialog dlg = new JDialog(frame, "", Dialog.ModalityType.DOCUMENT_MODAL);
+				dlg.setLocationByPlatform(true);
+				dlg.getContentPane().setLayout(new BoxLayout(dlg.getContentPane(), BoxLayout.Y_AXIS));
+				dlg.add(new JLabel("Choose how zoomed out pixels combine their data"));
+				choice = zoomOutFilter;
+				ButtonGroup bg = new ButtonGroup();
+				JRadioButton mean = new JRadioButton("Mean", choice == RowReducer.Filter.MEAN);
+				JRadioButton min = new JRadioButton("Min", choice == RowReducer.Filter.MIN);
+				JRadioButton max = new JRadioButton("Max", choice == RowReducer.Filter.MAX);
+				bg.add(mean);
+				bg.add(min);
+				bg.add(max);
+				dlg.add(mean);
+				dlg.add(min);
+				dlg.add(max);
+				mean.addActionListener(new ActionListener() {
+					
+					@Override
+					public void actionPerformed(ActionEvent e) {
+						choice = RowReducer.Filter.MEAN;
+					}
+				});
+				min.addActionListener(new ActionListener() {
+					
+					@Override
+					public void actionPerformed(ActionEvent e) {
+						choice = RowReducer.Filter.MIN;
+					}
+				});
+				max.addActionListener(new ActionListener() {
+					
+					@Override
+					public void actionPerformed(ActionEvent e) {
+						choice = RowReducer.Filter.MAX;
+					}
+				});
+				
+				JButton ok = new JButton("Ok");
+				ok.addActionListener(new ActionListener() {
+					@Override
+					public void actionPerformed(ActionEvent e) {
+					
+						cancelled = false;
+						
+						dlg.setVisible(false);
+					}
+				});
+				JButton cancel = new JButton("Cancel");
+				cancel.addActionListener(new ActionListener() {
+					@Override
+					public void actionPerformed(ActionEvent e) {
+						
+						cancelled = true;
+						
+						dlg.setVisible(false);
+					}
+				});
+				dlg.add(ok);
+				dlg.add(cancel);
+				dlg.pack();
+				dlg.setVisible(true);
+				if (!cancelled && choice != zoomOutFilter) {
+					
+					zoomOutFilter = choice;
+					
+					if (pyramid != null)
+						pyramid.setFilter(choice);
+					
+					pz.draw();
+				}
+			}
+		});
 		panLeft.addActionListener(new ActionListener() {
 			
 			@Override
@@ -756,6 +1006,12 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 				}
 				else {
 					
+					// a range chosen by hand replaces any automatic one
+					
+					setAutoRange(false);
+					
+					setPlaneContrast(false);
+					
 					minStr = minField.getText();
 					maxStr = maxField.getText();
 				}
@@ -775,6 +1031,8 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 					
 					dispMax = G.HP.construct(maxStr);
 				}
+				
+				updateDisplayMapping();
 
 				String dispMinStr = effectiveMinToStr();
 				
@@ -1338,11 +1596,12 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 					
 						U tmp = a.construct();
 
-						U min = a.construct();
-
-						U max = a.construct();
+						MinMaxReduction<U> bounds =
+								MinMaxReduction.compute(a, planeData.getDataSource().rawData(), planeData.getDataSource());
 						
-						MinMaxElement.compute(a, planeData.getDataSource().rawData(), min, max);
+						U min = bounds.min();
+
+						U max = bounds.max();
 
 						xform = new Procedure2<U,U>() {
 							
@@ -1556,8 +1815,52 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 				
 				if (xform != null) {
 					
+					// stop any scan before the values change. a scan that read some of
+					// the old values must not finish and the plane index of the new
+					// values must never be saved since the file still has the old ones.
+					
+					boolean rescan = minMaxScan.isRunning() || planeStats != null;
+					
+					minMaxScan.cancel();
+					
+					if (primitiveValues && PlaneStatsIndex.indexable(planeData.getDataSource()))
+						minMaxScan.indexPlanes(planeData.getDataSource(), false);
+					
 					Transform2.compute(alg, xform, planeData.getDataSource().rawData(), planeData.getDataSource().rawData());
 					
+					if (pyramid != null)
+						pyramid.clear();
+					
+					if (prefetcher != null)
+						prefetcher.clear();
+					
+					frameCache.invalidate();
+					
+					showFrameCacheEmpty();
+					
+					TileCache.shared().invalidate(planeData.getDataSource());
+					
+					renderService.invalidate();
+					
+					pointerReadout.invalidate();
+					
+					// keep the sketch in step with the data. a sketch still being
+					// built has read some of the old values.
+					
+					if (sketch != null)
+						sketch = transformSketch(sketch, xform);
+					else
+						sketchGeneration.incrementAndGet();
+					
+					applyAutoRange();
+					
+					if (rescan) {
+						
+						usePlaneStats(null);
+						
+						scanDataRange();
+					}
+					
 					pz.draw();
 				}
 			}
@@ -1568,18 +1871,13 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 			@Override
 			public void actionPerformed(ActionEvent arg0) {
 
-				U mean = alg.construct();
-				
-				U median = alg.construct();
+				if (statsDialog != null)
+					statsDialog.close();
 				
-				U stddev = alg.construct();
-				
-				collectStats(alg, planeData.getDataSource().rawData(), mean, median, stddev);
-
-				System.out.println("===============================");
-				System.out.println("mean   = "+mean);
-				System.out.println("median = "+median);
-				System.out.println("stddev = "+stddev);
+				if (primitiveValues)
+					calculateStats();
+				else
+					calculateHighPrecStats();
 			}
 		});
 		
@@ -1595,6 +1893,7 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 			JButton incrementButton = new JButton(">");
 			JButton endButton = new JButton(">>");
 			JButton animButton = new JButton("Animate");
+			JButton cachedButton = new JButton("Animate (cached)");
 			JButton stopButton = new JButton("Stop");
 			JButton chooseButton = new JButton("Choose ...");
 			int axisPos = i;
@@ -1612,6 +1911,7 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 			miniPanel.add(incrementButton);
 			miniPanel.add(endButton);
 			miniPanel.add(animButton);
+			miniPanel.add(cachedButton);
 			miniPanel.add(stopButton);
 			miniPanel.add(chooseButton);
 			miniPanel.add(jax);
@@ -1622,13 +1922,18 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 			homeButton.addActionListener(new Home(i));
 			endButton.addActionListener(new End(i));
 			animButton.addActionListener(new Animator(i));
+			cachedButton.addActionListener(new CachedAnimator(i));
 			stopButton.addActionListener(new ActionListener() {
 				
 				@Override
 				public void actionPerformed(ActionEvent e) {
 				
-					if (animatingRightNow.get())
-						pleaseQuitAnimating.set(true);
+					playback.stop();
+					
+					// don't start a cached animation whose frames are still being drawn
+					
+					if (frameCache.cancelFill())
+						showFrameCacheEmpty();
 				}
 			});
 			chooseButton.addActionListener(new ActionListener() {
@@ -1692,6 +1997,9 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 							
 							planeData.setPositionValue(axisPos, idx-1);
 							
+							if (prefetcher != null)
+								prefetcher.moved(planeData, axisPos);
+							
 							CoordinateSpace space = planeData.getDataSource().getCoordinateSpace();
 							
 							BigDecimal[] currCoords = new BigDecimal[space.numDimensions()];
@@ -1714,122 +2022,76 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 		readout.setOpaque(true);
 		readout.setText("");
 		readout.setFont(font);
-		scrollPane.addMouseMotionListener(new MouseMotionListener() {
-
+		DragPanner dragPanner = new DragPanner();
+		
+		imagePane.addMouseListener(dragPanner);
+		
+		// the readout of the point under the mouse
+		
+		pointerReadout = new PointerReadout(readout, planeData, df) {
+			
 			HighPrecisionMember hpVal = G.HP.construct();
-			long[] modelCoords = new long[dataSource.numDimensions()];
-			BigDecimal[] realWorldCoords = new BigDecimal[dataSource.numDimensions()]; 
 			U value = alg.construct();
-					
+			
 			@Override
-			public void mouseMoved(MouseEvent e) {
-				
-				String alternateValue = null;
-				
-				// model X and mouse X move in the same direction
+			protected ViewTransform view() {
 				
-				int pixelX = e.getX();
-
-				// This weird math is because model "Y" runs bottom to
-				// top but mouse coords run top to bottom.
-				
-				int pixelY = pz.paneHeight - e.getY() - 1;
+				return pz.transform();
+			}
+			
+			@Override
+			protected void appendValue(long i0, long i1, StringBuffer sb) {
 				
-				long i0 = pz.pixelToModel(pixelX, pz.getVirtualOriginX());
-
-				long i1 = pz.pixelToModel(pixelY, pz.getVirtualOriginY());
+				planeData.get(i0, i1, value);
 				
-				if (i0 >= 0 && i0 < planeData.d0() && i1 >= 0 && i1 < planeData.d1()) {
+				if ((nanTester != null) && nanTester.isNaN().call(value)) {
 				
-					planeData.getModelCoords(i0, i1, modelCoords);
-					
-					dataSource.getCoordinateSpace().project(modelCoords, realWorldCoords);
-					
-					planeData.get(i0, i1, value);
-					
-					if ((nanTester != null) && nanTester.isNaN().call(value)) {
-					
-						alternateValue = "nan";
-					}
-					else if ((infTester != null) && infTester.isInfinite().call(value)) {
-						
-						if (signumTester.signum().call(value) <= 0)
-							alternateValue = "-Inf";
-						else
-							alternateValue = "+Inf";
-					}
-					else {
-						
-						alternateValue = null;
-						
-						HighPrecRepresentation rep = (HighPrecRepresentation) value;
-						
-						rep.toHighPrec(hpVal);
-					}
-
-					int axisNumber0 = planeData.axisNumber0();
-					
-					int axisNumber1 = planeData.axisNumber1();
-					
-					StringBuilder sb = new StringBuilder();
-					sb.append(dataSource.getAxisType(axisNumber0));
-					sb.append(" = ");
-					sb.append(i0);
-
-					// only display calibrated values if they are not == 1.0 * uncalibrated values
-					
-					if (axisNumber0 < dataSource.numDimensions()) {
-						
-						if (realWorldCoords[axisNumber0].subtract(BigDecimal.valueOf(modelCoords[axisNumber0])).abs().compareTo(BigDecimal.valueOf(0.000001)) > 0) {
-						
-							sb.append(" (");
-							sb.append(df.format(realWorldCoords[axisNumber0]));
-							sb.append(" ");
-							sb.append(dataSource.getAxisUnit(axisNumber0));
-							sb.append(")");
-						}
-					}
+					sb.append("nan");
+				}
+				else if ((infTester != null) && infTester.isInfinite().call(value)) {
 					
-					if (axisNumber1 < dataSource.numDimensions()) {
-						
-						sb.append(", ");
-						sb.append(dataSource.getAxisType(axisNumber1));
-						sb.append(" = ");
-						sb.append(i1);
-					}
+					if (signumTester.signum().call(value) <= 0)
+						sb.append("-Inf");
+					else
+						sb.append("+Inf");
+				}
+				else {
 					
-					// only display calibrated values if they are not == 1.0 * uncalibrated values
-					if (axisNumber1 < dataSource.numDimensions()) {
+					HighPrecRepresentation rep = (HighPrecRepresentation) value;
 					
-						if (realWorldCoords[axisNumber1].subtract(BigDecimal.valueOf(modelCoords[axisNumber1])).abs().compareTo(BigDecimal.valueOf(0.000001)) > 0) {
-						
-							sb.append(" (");
-							sb.append(df.format(realWorldCoords[axisNumber1]));
-							sb.append(" ");
-							sb.append(dataSource.getAxisUnit(axisNumber1));
-							sb.append(")");
-						}
-					}
-					sb.append(", value = ");
-					if (alternateValue != null)
-						sb.append(alternateValue);
-					else
-						sb.append(df.format(hpVal.v()));
-					sb.append(" ");
-					sb.append(dataSource.getValueUnit());
+					rep.toHighPrec(hpVal);
 					
-					readout.setText(sb.toString());
+					appendNumber(hpVal.v(), sb);
 				}
 			}
+		};
+		
+		imagePane.addMouseMotionListener(new MouseMotionListener() {
+			
+			@Override
+			public void mouseMoved(MouseEvent e) {
+				
+				pointerReadout.pointerMoved(e.getX(), e.getY());
+			}
 			
 			@Override
 			public void mouseDragged(MouseEvent e) {
+				
+				dragPanner.mouseDragged(e);
 			}
 		});
 		
 		JCheckBox check = new JCheckBox("Use data range");
 		check.setSelected(preferDataRange);
 		check.setFont(font);
+		planeContrastBox = new JCheckBox("Per plane contrast");
+		planeContrastBox.setSelected(planeContrast);
+		planeContrastBox.setEnabled(false);
+		planeContrastBox.setFont(font);
+		autoRangeBox = new JCheckBox("Auto (0.5%\u201399.5%)");
+		autoRangeBox.setSelected(autoRange);
+		autoRangeBox.setEnabled(primitiveValues);
+		autoRangeBox.setFont(font);
 
 		JPanel miscPanel = new JPanel();
 		BoxLayout miscBoxLayout = new BoxLayout(miscPanel, BoxLayout.Y_AXIS);
@@ -1854,12 +2116,16 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 		miscPanel.add(scaleLabel);
 		miscPanel.add(ctrXLabel);
 		miscPanel.add(ctrYLabel);
+		miscPanel.add(playbackLabel);
+		miscPanel.add(frameCacheBar);
 		miscPanel.add(new JSeparator());
 		miscPanel.add(check);
+		miscPanel.add(planeContrastBox);
+		miscPanel.add(autoRangeBox);
 		miscPanel.add(new JSeparator());
-		JLabel minLabel = new JLabel("Min: ");
+		minLabel = new JLabel("Min: ");
 		minLabel.setFont(font);
-		JLabel maxLabel = new JLabel("Max: ");
+		maxLabel = new JLabel("Max: ");
 		maxLabel.setFont(font);
 		miscPanel.add(minLabel);
 		miscPanel.add(maxLabel);
@@ -1874,35 +2140,37 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 		
 				preferDataRange = !preferDataRange;
 				
-				setMinMax();
-				
-				String minStr = min.toString();
-				
-				String maxStr = max.toString();
-				
-				String dispMinStr = effectiveMinToStr();
-				
-				String dispMaxStr = effectiveMaxToStr();
-				
-				if (minStr.length() > MIN_MAX_CHAR_COUNT)
-					minStr = minStr.substring(0,MIN_MAX_CHAR_COUNT) + "...";
-				
-				if (maxStr.length() > MIN_MAX_CHAR_COUNT)
-					maxStr = maxStr.substring(0,MIN_MAX_CHAR_COUNT) + "...";
+				showRange();
 				
-				if (dispMinStr.length() > DISP_MIN_MAX_CHAR_COUNT)
-					dispMinStr = dispMinStr.substring(0,DISP_MIN_MAX_CHAR_COUNT) + "...";
+				pz.draw();
 				
-				if (dispMaxStr.length() > DISP_MIN_MAX_CHAR_COUNT)
-					dispMaxStr = dispMaxStr.substring(0,DISP_MIN_MAX_CHAR_COUNT) + "...";
+				frame.repaint();
+			}
+		});
+		planeContrastBox.addActionListener(new ActionListener() {
+			
+			@Override
+			public void actionPerformed(ActionEvent e) {
+		
+				if (planeContrastBox.isSelected())
+					setAutoRange(false);
 				
-				minLabel.setText("Min: " + minStr);
+				setPlaneContrast(planeContrastBox.isSelected());
 				
-				maxLabel.setText("Max: " + maxStr);
+				pz.draw();
 				
-				dispMinLabel.setText("Disp Min: " + dispMinStr);
+				frame.repaint();
+			}
+		});
+		autoRangeBox.addActionListener(new ActionListener() {
+			
+			@Override
+			public void actionPerformed(ActionEvent e) {
+		
+				if (autoRangeBox.isSelected())
+					setPlaneContrast(false);
 				
-				dispMaxLabel.setText("Disp Max: " + dispMaxStr);
+				setAutoRange(autoRangeBox.isSelected());
 				
 				pz.draw();
 				
@@ -1927,41 +2195,292 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 
 		findMinsAndMaxes(alg, dataMn, dataMx);
 		
-		setMinMax();
+		showRange();
 
-		String minStr = min.toString();
-		
-		String maxStr = max.toString();
-		
-		String dispMinStr = effectiveMinToStr();
-		
-		String dispMaxStr = effectiveMaxToStr();
-		
-		if (minStr.length() > MIN_MAX_CHAR_COUNT)
-			minStr = minStr.substring(0,MIN_MAX_CHAR_COUNT) + "...";
+		pz.draw();
 		
-		if (maxStr.length() > MIN_MAX_CHAR_COUNT)
-			maxStr = maxStr.substring(0,MIN_MAX_CHAR_COUNT) + "...";
+		frame.repaint();
 		
-		if (dispMinStr.length() > DISP_MIN_MAX_CHAR_COUNT)
-			dispMinStr = dispMinStr.substring(0,DISP_MIN_MAX_CHAR_COUNT) + "...";
+		// the first frame is drawn from an estimate of the data range. find the
+		// exact range in the background.
 		
-		if (dispMaxStr.length() > DISP_MIN_MAX_CHAR_COUNT)
-			dispMaxStr = dispMaxStr.substring(0,DISP_MIN_MAX_CHAR_COUNT) + "...";
+		if (!dataRangeExact)
+			scanDataRange();
+	}
+	
+	// find the exact data range in the background and show it when found
+	
+	private void scanDataRange() {
 		
-		minLabel.setText("Min: " + minStr);
+		minMaxScan.start(new MinMaxScan.Listener<U>() {
+			
+			@Override
+			public void finished(U mn, U mx) {
+				
+				alg.assign().call(mn, dataMin);
+				
+				alg.assign().call(mx, dataMax);
+				
+				dataRangeExact = true;
+				
+				usePlaneStats(minMaxScan.planeStats());
+				
+				showRange();
+				
+				pz.draw();
+			}
+		});
+	}
+
+	// start or stop offering per plane contrast from an index of the planes
+	
+	private void usePlaneStats(PlaneStatsIndex index) {
 		
-		maxLabel.setText("Max: " + maxStr);
+		planeStats = index;
 		
-		dispMinLabel.setText("Disp Min: " + dispMinStr);
+		contrastPlane = -1;
 		
-		dispMaxLabel.setText("Disp Max: " + dispMaxStr);
-
-		pz.draw();
+		planeContrastBox.setEnabled(index != null && PlaneStatsIndex.planeOf(planeData) >= 0);
+	}
+	
+	// turn per plane contrast on or off. off returns to the full range.
+	
+	private void setPlaneContrast(boolean on) {
 		
-		frame.repaint();
+		planeContrastBox.setSelected(on);
+		
+		if (on == planeContrast)
+			return;
+		
+		planeContrast = on;
+		
+		contrastPlane = -1;
+		
+		if (!on) {
+			
+			dispMin = null;
+			
+			dispMax = null;
+		}
+		
+		showRange();
+	}
+	
+	// turn the percentile display range on or off. off returns to the full range.
+	
+	private void setAutoRange(boolean on) {
+		
+		autoRangeBox.setSelected(on);
+		
+		if (on == autoRange)
+			return;
+		
+		autoRange = on;
+		
+		if (on)
+			applyAutoRange();
+		else {
+			
+			dispMin = null;
+			
+			dispMax = null;
+			
+			showRange();
+		}
+	}
+	
+	// with auto range on the display range leaves out the most extreme half
+	// percent of the values at each end. the sketch it comes from is built once
+	// in the background and kept.
+	
+	private void applyAutoRange() {
+		
+		if (!autoRange)
+			return;
+		
+		if (sketch == null) {
+			
+			buildSketch();
+			
+			return;
+		}
+		
+		double lo = sketch.quantile(AUTO_RANGE_LOW);
+		
+		double hi = sketch.quantile(AUTO_RANGE_HIGH);
+		
+		if (Double.isNaN(lo) || Double.isNaN(hi) || Double.isInfinite(lo) || Double.isInfinite(hi)) {
+			
+			dispMin = null;
+			
+			dispMax = null;
+		}
+		else {
+			
+			dispMin = G.HP.construct(Double.toString(lo));
+			
+			dispMax = G.HP.construct(Double.toString(hi));
+		}
+		
+		showRange();
+	}
+	
+	// sketch the distribution of the data in the background. a sketch already
+	// being built is abandoned.
+	
+	private void buildSketch() {
+		
+		final long id = sketchGeneration.incrementAndGet();
+		
+		DimensionedDataSource<U> data = planeData.getDataSource();
+		
+		BooleanSupplier cancelled = new BooleanSupplier() {
+			
+			@Override
+			public boolean getAsBoolean() {
+				
+				return sketchGeneration.get() != id;
+			}
+		};
+		
+		Thread t = new Thread(new Runnable() {
+			
+			@Override
+			public void run() {
+				
+				QuantileSketch built = QuantileSketch.build(alg, data.rawData(), data, cancelled);
+				
+				SwingUtilities.invokeLater(new Runnable() {
+					
+					@Override
+					public void run() {
+						
+						if (built == null || cancelled.getAsBoolean())
+							return;
+						
+						sketch = built;
+						
+						applyAutoRange();
+						
+						pz.draw();
+					}
+				});
+			}
+		}, "zorbage-viewer-sketch");
+		
+		t.setDaemon(true);
+		
+		t.start();
+	}
+	
+	// pass the values kept by the sketch through a transform of the data so
+	// the sketch describes the new values without a rescan. returns null if
+	// the values cannot be carried through the transform or the transform
+	// does not keep them in order, so the sketch is built again from the data.
+	
+	private QuantileSketch transformSketch(QuantileSketch original, Procedure2<U,U> xform) {
+		
+		U out = alg.construct();
+		
+		DoubleUnaryOperator f = new DoubleUnaryOperator() {
+			
+			@Override
+			public double applyAsDouble(double v) {
+				
+				// integer types need integer literals
+				
+				String literal = (v == Math.rint(v) && Math.abs(v) < 0x1p53) ?
+						Long.toString((long) v) : Double.toString(v);
+				
+				xform.call(alg.construct(literal), out);
+				
+				return ((GetAsDouble) out).getAsDouble();
+			}
+		};
+		
+		try {
+			
+			return original.map(f);
+			
+		} catch (RuntimeException e) {
+			
+			return null;
+		}
+	}
+	
+	// with per plane contrast on the display range follows the plane shown. the
+	// range leaves out the most extreme values at each end.
+	
+	private void applyPlaneContrast() {
+		
+		if (!planeContrast || planeStats == null)
+			return;
+		
+		long plane = PlaneStatsIndex.planeOf(planeData);
+		
+		if (plane < 0 || plane >= planeStats.planes() || plane == contrastPlane)
+			return;
+		
+		contrastPlane = plane;
+		
+		double[] range = planeStats.range(plane, PLANE_CONTRAST_TAIL);
+		
+		if (range == null) {
+			
+			dispMin = null;
+			
+			dispMax = null;
+		}
+		else {
+			
+			dispMin = G.HP.construct(Double.toString(range[0]));
+			
+			dispMax = G.HP.construct(Double.toString(range[1]));
+		}
+		
+		showRange();
 	}
 
+	// recalc the display range and show it. a data range that is still being
+	// scanned for is marked as an estimate.
+	
+	private void showRange() {
+		
+		setMinMax();
+		
+		updateDisplayMapping();
+		
+		boolean estimated = preferDataRange && !dataRangeExact;
+		
+		String minStr = min.toString();
+		
+		String maxStr = max.toString();
+		
+		String dispMinStr = effectiveMinToStr();
+		
+		String dispMaxStr = effectiveMaxToStr();
+		
+		if (minStr.length() > MIN_MAX_CHAR_COUNT)
+			minStr = minStr.substring(0,MIN_MAX_CHAR_COUNT) + "...";
+		
+		if (maxStr.length() > MIN_MAX_CHAR_COUNT)
+			maxStr = maxStr.substring(0,MIN_MAX_CHAR_COUNT) + "...";
+		
+		if (dispMinStr.length() > DISP_MIN_MAX_CHAR_COUNT)
+			dispMinStr = dispMinStr.substring(0,DISP_MIN_MAX_CHAR_COUNT) + "...";
+		
+		if (dispMaxStr.length() > DISP_MIN_MAX_CHAR_COUNT)
+			dispMaxStr = dispMaxStr.substring(0,DISP_MIN_MAX_CHAR_COUNT) + "...";
+		
+		minLabel.setText((estimated ? "Min (est.): " : "Min: ") + minStr);
+		
+		maxLabel.setText((estimated ? "Max (est.): " : "Max: ") + maxStr);
+		
+		dispMinLabel.setText("Disp Min: " + dispMinStr);
+		
+		dispMaxLabel.setText("Disp Max: " + dispMaxStr);
+	}
+	
 	private BigDecimal actualMin() {
 		
 		HighPrecisionMember tmp = G.HP.construct();
@@ -1996,6 +2515,83 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 		return dispMax.v();
 	}
 	
+	// recalc the primitive mapping of values to colors. must be called whenever
+	// the color table or the display range changes.
+	
+	private void updateDisplayMapping() {
+		
+		if (primitiveValues)
+			displayMapping = calcDisplayMapping();
+		else
+			displayMapping = null;
+	}
+	
+	// calc a primitive mapping of the current display range into the color table
+	
+	private DisplayMapping calcDisplayMapping() {
+		
+		double lo = ((GetAsDouble) min).getAsDouble();
+		
+		double hi = ((GetAsDouble) max).getAsDouble();
+		
+		if (dispMin != null) {
+			
+			double v = dispMin.v().doubleValue();
+			
+			if (v > lo)
+				lo = v;
+		}
+		
+		if (dispMax != null) {
+			
+			double v = dispMax.v().doubleValue();
+			
+			if (v < hi)
+				hi = v;
+		}
+		
+		switch (smallIntType) {
+		
+		case UINT8:
+			return new DisplayMapping(colorTable, lo, hi, 0, 255);
+			
+		case INT8:
+			return new DisplayMapping(colorTable, lo, hi, -128, 127);
+			
+		case UINT16:
+			return new DisplayMapping(colorTable, lo, hi, 0, 65535);
+			
+		case INT16:
+			return new DisplayMapping(colorTable, lo, hi, -32768, 32767);
+			
+		default:
+			return new DisplayMapping(colorTable, lo, hi);
+		}
+	}
+	
+	// get the raw value of one of the small integer types
+	
+	private int smallIntValue(U value) {
+		
+		switch (smallIntType) {
+		
+		case UINT8:
+			return ((UnsignedInt8Member) value).v();
+			
+		case INT8:
+			return ((SignedInt8Member) value).v();
+			
+		case UINT16:
+			return ((UnsignedInt16Member) value).v();
+			
+		case INT16:
+			return ((SignedInt16Member) value).v();
+			
+		default:
+			throw new IllegalArgumentException("not a small integer type");
+		}
+	}
+	
 	private String effectiveMinToStr() {
 		
 		return effectiveMin().toString();
@@ -2015,6 +2611,8 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 		
 		this.colorTable = colorTable;
 		
+		updateDisplayMapping();
+		
 		pz.draw();
 		
 		frame.repaint();
@@ -2034,18 +2632,13 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 		DimensionedDataSource<U> newDs = (DimensionedDataSource<U>)
 				DimensionedStorage.allocate((Allocatable) alg.construct(), new long[] {dimX, dimY});
 		
-		U tmp = alg.construct();
+		// the new plane's rows are consecutive runs of its raw data
 		
-		TwoDView<U> view = new TwoDView<>(newDs);
+		PlaneRowReader<U> reader = new PlaneRowReader<>(alg, planeData);
 		
-		for (int y = 0; y < dimY; y++) {
+		for (long y = 0; y < dimY; y++) {
 			
-			for (int x = 0; x < dimX; x++) {
-			
-				planeData.get(x, y , tmp);
-				
-				view.set(x, y, tmp);
-			}
+			reader.readValues(y, 0, dimX, newDs.rawData(), y * dimX);
 		}
 		
 		DimensionedDataSource<U> origDs = planeData.getDataSource();
@@ -2167,6 +2760,9 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 				
 				planeData.setPositionValue(extraPos, pos);
 				
+				if (prefetcher != null)
+					prefetcher.moved(planeData, extraPos);
+				
 				CoordinateSpace space = planeData.getDataSource().getCoordinateSpace();
 				
 				BigDecimal[] currCoords = new BigDecimal[space.numDimensions()];
@@ -2208,6 +2804,9 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 				
 				planeData.setPositionValue(extraPos, pos);
 				
+				if (prefetcher != null)
+					prefetcher.moved(planeData, extraPos);
+				
 				CoordinateSpace space = planeData.getDataSource().getCoordinateSpace();
 				
 				BigDecimal[] currCoords = new BigDecimal[space.numDimensions()];
@@ -2299,6 +2898,50 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 		}
 	}
 	
+	// pans the view to follow the mouse while a button is held down
+	
+	private class DragPanner extends MouseAdapter {
+		
+		private int lastX;
+		private int lastY;
+		
+		@Override
+		public void mousePressed(MouseEvent e) {
+			
+			lastX = e.getX();
+			
+			lastY = e.getY();
+		}
+		
+		@Override
+		public void mouseDragged(MouseEvent e) {
+			
+			int dx = e.getX() - lastX;
+			
+			int dy = e.getY() - lastY;
+			
+			if (dx == 0 && dy == 0)
+				return;
+			
+			long origX = pz.getVirtualOriginX();
+			
+			long origY = pz.getVirtualOriginY();
+			
+			int[] used = pz.dragBy(dx, dy);
+			
+			lastX += used[0];
+			
+			lastY += used[1];
+			
+			if (pz.getVirtualOriginX() != origX || pz.getVirtualOriginY() != origY) {
+				
+				setZoomCenterLabels();
+				
+				pz.draw();
+			}
+		}
+	}
+	
 	// code to set a slider to its max value and react
 	
 	private class Animator implements ActionListener {
@@ -2313,96 +2956,210 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 		@Override
 		public void actionPerformed(ActionEvent e) {
 			
-			boolean wasAlreadyAnimating = animatingRightNow.getAndSet(true);
+			long maxVal = planeData.getDataSourceAxisSize(extraPos);
 			
-			if (wasAlreadyAnimating) return;
-
-			SwingWorker<Object, Object> worker = new SwingWorker<Object, Object>() {
-
-				@Override
-				protected Object doInBackground() throws Exception {
+			// the scheduler keeps to the chosen frame rate and skips the frames
+			// that could not be drawn in time.
 			
-					long maxVal = planeData.getDataSourceAxisSize(extraPos);
+			playback.start(maxVal, new PlaybackScheduler.Player() {
+				
+				@Override
+				public Future<?> show(long i) {
+					
+					planeData.setPositionValue(extraPos, i);
+					
+					if (prefetcher != null)
+						prefetcher.moved(planeData, extraPos);
 					
-					for (long i = 0; i < maxVal; i++) {
+					CoordinateSpace space = planeData.getDataSource().getCoordinateSpace();
 					
-						if (pleaseQuitAnimating.get()) {
+					BigDecimal[] currCoords = new BigDecimal[space.numDimensions()];
+					
+					getCurrCoords(space, currCoords);
+					
+					int axisPos = planeData.getDataSourceAxisNumber(extraPos);
+					
+					positionLabels[extraPos].setText(""+(i+1)+" / "+maxVal+" ("+currCoords[axisPos].round(roundContext)+")");
+					
+					return pz.draw();
+				}
+				
+				@Override
+				public void progress(double fps, long dropped, boolean playing) {
+					
+					String rate = String.format("%.1f", fps);
+					
+					playbackLabel.setText("Playback: " + rate + " fps, " + dropped + " dropped" + (playing ? "" : " (done)"));
+				}
+			});
+		}
+	}
+	
+	// code to play the planes along an axis from frames that were drawn ahead of
+	// time. the frames are drawn the first time and reused until the view changes.
+	
+	private class CachedAnimator implements ActionListener {
 		
-							pleaseQuitAnimating.getAndSet(false);
-							
-							animatingRightNow.set(false);
-							
-							return true;
-						}
-						
-						planeData.setPositionValue(extraPos, i);
-						
-						CoordinateSpace space = planeData.getDataSource().getCoordinateSpace();
-						
-						BigDecimal[] currCoords = new BigDecimal[space.numDimensions()];
-						
-						getCurrCoords(space, currCoords);
-						
-						int axisPos = planeData.getDataSourceAxisNumber(extraPos);
-						
-						positionLabels[extraPos].setText(""+(i+1)+" / "+maxVal+" ("+currCoords[axisPos].round(roundContext)+")");
-						
-						pz.draw();
-						
-						// paint needed instead of repaint to show immediate animation
-						// But this method has a LOT of flicker. ImageJ1 uses double
-						// buffered drawing to avoid flicker. See ImageCanvas paint()
-						// I think.
-						
-						frame.paint(frame.getGraphics());
-						
-						try {
-
-							Thread.sleep(100);
-							
-						} catch(InterruptedException excep) {
-							;
-						}
-					}
+		private final int extraPos;
+		
+		public CachedAnimator(int extraNum) {
+			
+			extraPos = extraNum;
+		}
+		
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			
+			if (playback.isPlaying())
+				return;
+			
+			long maxVal = planeData.getDataSourceAxisSize(extraPos);
+			
+			PanZoomView frames = new PanZoomView(pz);
+			
+			List<Object> key = frames.frameKey(extraPos);
+			
+			if (frameCache.isReady(key)) {
+				
+				play(key, maxVal);
+				
+				return;
+			}
+			
+			// the frames are already being drawn
+			
+			if (frameCache.holds(key))
+				return;
+			
+			frameCacheBar.setValue(0);
+			
+			frameCacheBar.setString("Frame cache: 0 / " + maxVal);
+			
+			frameCache.fill(extraPos, key, maxVal, frames.paneWidth, frames.paneHeight, new FrameCache.Renderer() {
+				
+				@Override
+				public boolean render(long frame, int[] pixels, BooleanSupplier cancelled) {
+					
+					return frames.renderFrame(extraPos, frame, pixels, cancelled);
+				}
+				
+			}, new FrameCache.Listener() {
+				
+				@Override
+				public void progress(long filled, long total) {
 					
-					pleaseQuitAnimating.getAndSet(false);
+					if (!frameCache.holds(key))
+						return;
 					
-					animatingRightNow.set(false);
+					frameCacheBar.setValue((int) (100 * filled / total));
 					
-					return true;
+					frameCacheBar.setString("Frame cache: " + filled + " / " + total);
+					
+					if (filled == total && frameCache.isReady(key))
+						play(key, maxVal);
 				}
 				
-			};
+				@Override
+				public void failed(String reason) {
+					
+					showFrameCacheEmpty();
+					
+					JOptionPane.showMessageDialog(frame,
+						    "Cannot cache the frames. " + reason,
+						    "WARNING",
+						    JOptionPane.WARNING_MESSAGE);
+				}
+			});
+		}
+		
+		// play the cached frames by copying them to the screen. if the view changes
+		// during playback the cache is dropped and the frames are drawn as usual.
+		
+		private void play(List<Object> key, long maxVal) {
 			
-			worker.execute();
+			playback.start(maxVal, new PlaybackScheduler.Player() {
+				
+				@Override
+				public Future<?> show(long i) {
+					
+					planeData.setPositionValue(extraPos, i);
+					
+					CoordinateSpace space = planeData.getDataSource().getCoordinateSpace();
+					
+					BigDecimal[] currCoords = new BigDecimal[space.numDimensions()];
+					
+					getCurrCoords(space, currCoords);
+					
+					int axisPos = planeData.getDataSourceAxisNumber(extraPos);
+					
+					positionLabels[extraPos].setText(""+(i+1)+" / "+maxVal+" ("+currCoords[axisPos].round(roundContext)+")");
+					
+					if (!frameCache.isReady(key))
+						return pz.draw();
+					
+					return renderService.submit(frameCache.width(), frameCache.height(), new RenderService.Job<PanZoomView>() {
+						
+						@Override
+						public PanZoomView render(int[] pixels, PanZoomView shown, BooleanSupplier cancelled) {
+							
+							// the cache can be dropped after isReady(). then this frame
+							// is not published and the plane is drawn the usual way.
+							
+							if (!frameCache.copyFrame(i, pixels)) {
+								
+								renderService.cancel();
+								
+								SwingUtilities.invokeLater(new Runnable() {
+									
+									@Override
+									public void run() {
+										
+										pz.draw();
+									}
+								});
+							}
+							
+							// the pixels no longer match any snapshot
+							
+							return null;
+						}
+					});
+				}
+				
+				@Override
+				public void progress(double fps, long dropped, boolean playing) {
+					
+					String rate = String.format("%.1f", fps);
+					
+					playbackLabel.setText("Playback: " + rate + " fps, " + dropped + " dropped" + (playing ? "" : " (done)"));
+				}
+			});
 		}
 	}
 	
+	private void showFrameCacheEmpty() {
+		
+		frameCacheBar.setValue(0);
+		
+		frameCacheBar.setString("Frame cache: empty");
+	}
+	
 	private void setZoomCenterLabels() {
 
-		// TODO - take this code and make a viewCoord to modelCoord xform. Use it
-		// in mouse listener and here to DRY code up
-		
 		DimensionedDataSource<?> model = planeData.getDataSource();
 
-		long[] modelCoords = new long[model.numDimensions()];
-		BigDecimal[] realWorldCoords = new BigDecimal[model.numDimensions()];
-
-		int axisNumber0 = planeData.axisNumber0();
 		int axisNumber1 = planeData.axisNumber1();
 
-		long i0 = pz.pixelToModel(pz.paneWidth/2, pz.getVirtualOriginX());
-		long i1 = pz.pixelToModel(pz.paneHeight/2, pz.getVirtualOriginY());
+		ViewTransform view = pz.transform();
 		
-		planeData.getModelCoords(i0, i1, modelCoords);
+		long i0 = view.pixelToModelX(pz.paneWidth/2);
+		long i1 = view.pixelToModelY(pz.paneHeight/2);
 		
-		model.getCoordinateSpace().project(modelCoords, realWorldCoords);
-		
-		ctrXLabel.setText("Zoom Ctr d0: " + df.format(realWorldCoords[axisNumber0]));
+		ctrXLabel.setText("Zoom Ctr d0: " + df.format(view.worldX(i0, i1)));
 		if (axisNumber1 >= model.numDimensions())
 			ctrYLabel.setText("Zoom Ctr d1: 0");
 		else
-			ctrYLabel.setText("Zoom Ctr d1: " + df.format(realWorldCoords[axisNumber1]));
+			ctrYLabel.setText("Zoom Ctr d1: " + df.format(view.worldY(i0, i1)));
 	}
 	
 	// calcs the pixel type's value bounds
@@ -2426,25 +3183,6 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 		}
 	}
 	
-	// calcs the data source's actual value bounds
-	
-	private <V extends Algebra<V,U> & Ordered<U>>
-		void pixelDataBounds(T alg, IndexedDataSource<U> data, U min, U max)
-	{
-		if (alg instanceof Ordered) {
-			
-			@SuppressWarnings("unchecked")
-			V enhancedAlg = (V) alg;
-			
-			MinMaxElement.compute(enhancedAlg, data, min, max);
-		}
-		else {
-			
-			alg.zero().call(min);
-			alg.zero().call(max);
-		}
-	}
-	
 	// calc the display range by either data bounds or type bounds
 	
 	private void setMinMax() {
@@ -2463,9 +3201,30 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 	
 	private void findMinsAndMaxes(T alg, U dataMn, U dataMx) {
 
-		if (dataMn == null || dataMx == null) {
+		DimensionedDataSource<U> data = planeData.getDataSource();
+		
+		// a file that was summarized before needs no scan at all. otherwise the
+		// scan summarizes it for next time.
+		
+		if (primitiveValues && PlaneStatsIndex.indexable(data)) {
+			
+			usePlaneStats(PlaneStatsIndex.open(alg, data));
+			
+			if (planeStats == null)
+				minMaxScan.indexPlanes(data, true);
+		}
+		
+		if ((dataMn == null || dataMx == null) && planeStats != null) {
 			
-			pixelDataBounds(alg, planeData.getDataSource().rawData(), dataMin, dataMax);
+			planeStats.bounds(alg, data.rawData(), data, dataMin, dataMax);
+		}
+		else if (dataMn == null || dataMx == null) {
+			
+			// scanning the whole dataset can take minutes. start from an estimate.
+			
+			minMaxScan.estimate(planeData.d0() * planeData.d1(), dataMin, dataMax);
+			
+			dataRangeExact = false;
 		}
 		else {
 		
@@ -2489,15 +3248,27 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 		private int scaleDenom; // >= 1
 		private long originX;  // model coords
 		private long originY;  // model coords
-		private final int paneWidth; // pixel window coords
-		private final int paneHeight;  // pixel window coords
+		private int paneWidth; // pixel window coords
+		private int paneHeight;  // pixel window coords
 		private long calculatedPaneWidth; // the best guess at model width of paneWidth at curr scale/offset
 		private long calculatedPaneHeight; // the best guess at model height of paneHeight at curr scale/offset
-		private final int maxScale;
+		private int maxScale;
 		NaN<U> nanTester = null;
 		Infinite<U> infTester = null;
 		Ordered<U> signumTester = null;
 		
+		// state captured by a frame snapshot so it can be drawn in the background
+		
+		private PlaneView<U> plane = null;
+		private int[] colors = null;
+		private DisplayMapping mapping = null;
+		private RowReducer.Filter filter = RowReducer.Filter.MEAN;
+		private BigDecimal rangeMin = BigDecimal.ZERO;  // display range of the BigDecimal fallback
+		private BigDecimal rangeSpan = BigDecimal.ONE;
+		private List<Object> drawnKey = null;  // the view state a snapshot was drawn with
+		private ViewTransform xform = null;  // pixel <-> model <-> world coords at the current pan / zoom
+		private double[] planeCopy = null;  // the plane's values if they were read ahead of time
+		
 		public PanZoomView(int paneWidth, int paneHeight) {
 			
 			this.paneWidth = paneWidth;
@@ -2530,6 +3301,56 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 						"this viewer requires the real image to support HighPrecisionRepresentation");
 			}
 		}
+		
+		// make a frozen copy of another view along with the plane position, colors
+		// and display range it should be drawn with. a render thread can draw the
+		// copy while the user keeps changing the original.
+		
+		private PanZoomView(PanZoomView other) {
+			
+			this.paneWidth = other.paneWidth;
+			
+			this.paneHeight = other.paneHeight;
+			
+			this.maxScale = other.maxScale;
+			
+			this.scaleNumer = other.scaleNumer;
+			
+			this.scaleDenom = other.scaleDenom;
+			
+			this.originX = other.originX;
+			
+			this.originY = other.originY;
+			
+			this.xform = other.transform();
+			
+			this.calculatedPaneWidth = other.calculatedPaneWidth;
+			
+			this.calculatedPaneHeight = other.calculatedPaneHeight;
+			
+			this.nanTester = other.nanTester;
+			
+			this.infTester = other.infTester;
+			
+			this.signumTester = other.signumTester;
+			
+			this.plane = RenderPool.duplicate(planeData);
+			
+			if (prefetcher != null)
+				this.planeCopy = (double[]) prefetcher.plane(plane);
+			
+			this.colors = colorTable;
+			
+			if (primitiveValues && displayMapping == null)
+				updateDisplayMapping();
+			
+			this.mapping = displayMapping;
+			
+			this.filter = zoomOutFilter;
+			
+			if (mapping == null)
+				calcBigDecimalRange();
+		}
 
 		private void setInitialNumbers() {
 			
@@ -2581,7 +3402,48 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 			else
 				throw new IllegalArgumentException("weird scale components "+scaleNumer+" "+scaleDenom);
 		}
+		
+		/**
+		 * Change the size of the view to follow the size of its window. The model
+		 * point at the center of the view stays at the center.
+		 * 
+		 * @return True if the size changed.
+		 */
+		public boolean resize(int width, int height) {
+			
+			if (width <= 0 || height <= 0 || (width == paneWidth && height == paneHeight))
+				return false;
+			
+			originX += pixelToModel(paneWidth / 2, 0) - pixelToModel(width / 2, 0);
+			
+			originY += pixelToModel(paneHeight / 2, 0) - pixelToModel(height / 2, 0);
+			
+			this.paneWidth = width;
+			
+			this.paneHeight = height;
+			
+			// the zoom limits follow the size of the window. a view zoomed past
+			// a smaller limit can still zoom back out.
+			
+			this.maxScale = Math.min(width, height);
+			
+			calcPaneSize();
+			
+			return true;
+		}
 
+		/**
+		 * The transform between pixel, model and real world coords at the current
+		 * pan position and zoom level. It is only rebuilt after one of them changes.
+		 */
+		public ViewTransform transform() {
+			
+			if (xform == null || !xform.matches(planeData, paneWidth, paneHeight, scaleNumer, scaleDenom, originX, originY))
+				xform = new ViewTransform(planeData, paneWidth, paneHeight, scaleNumer, scaleDenom, originX, originY);
+			
+			return xform;
+		}
+		
 		public long getVirtualOriginX() {
 			
 			return originX;
@@ -2800,6 +3662,29 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 			return true;
 		}
 		
+		/**
+		 * Pan so the image follows a mouse drag of dx, dy screen pixels. The pan is
+		 * made in whole model pixels and stops at the same limits as the pan buttons.
+		 * 
+		 * @return The screen pixels in x and y that the pan used up. When zoomed in
+		 *   the remainder should be carried into the next drag.
+		 */
+		public int[] dragBy(int dx, int dy) {
+			
+			long modelDx = (scaleDenom > 1) ? ((long) dx) * scaleDenom : dx / scaleNumer;
+			
+			long modelDy = (scaleDenom > 1) ? ((long) dy) * scaleDenom : dy / scaleNumer;
+			
+			originX = Math.max(-(getVirtualWidth()-1), Math.min(planeData.d0()-1, originX - modelDx));
+			
+			originY = Math.max(-(getVirtualHeight()-1), Math.min(planeData.d1()-1, originY - modelDy));
+			
+			if (scaleDenom > 1)
+				return new int[] {dx, dy};
+			
+			return new int[] {(int) (modelDx * scaleNumer), (int) (modelDy * scaleNumer)};
+		}
+		
 		public String effectiveScale() {
 			if (scaleDenom == 1)
 				return "" + scaleNumer + "X";
@@ -2817,152 +3702,940 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 			else if (scaleDenom > 1) {
 				return (((long) pixelNum) * scaleDenom) + modelOffset;
 			}
-			else
-				throw new IllegalArgumentException("back to the drawing board");
+			else
+				throw new IllegalArgumentException("back to the drawing board");
+		}
+		
+		
+		/**
+		 * Queue the current view for drawing on the render thread. Returns right
+		 * away. Any frame still being drawn is abandoned.
+		 * 
+		 * @return A future that completes when the frame is on screen or abandoned.
+		 */
+		public Future<?> draw() {
+
+			Toolkit.getDefaultToolkit().sync();
+			
+			applyPlaneContrast();
+			
+			final PanZoomView snapshot = new PanZoomView(this);
+			
+			// frames drawn ahead of time are of no use once the view changes
+			
+			int cachedAxis = frameCache.axis();
+			
+			if (cachedAxis >= 0 && frameCache.invalidateUnless(snapshot.frameKey(cachedAxis)))
+				showFrameCacheEmpty();
+			
+			return renderService.submit(paneWidth, paneHeight, new RenderService.Job<PanZoomView>() {
+				
+				@Override
+				public PanZoomView render(int[] pixels, PanZoomView shown, BooleanSupplier cancelled) {
+
+					return snapshot.render(pixels, shown, cancelled);
+				}
+			});
+		}
+		
+		// draw a snapshot into a buffer of argb pixels that currently shows another
+		// snapshot. runs on the render thread. returns this snapshot if the frame
+		// was finished and null if it was cancelled.
+		
+		private PanZoomView render(int[] arrayInt, PanZoomView shown, BooleanSupplier cancelled) {
+			
+			// paint the pixels into the plane of data
+			
+			final boolean direct = (mapping != null) && mapping.hasDirectTable();
+			
+			// when zoomed out use the reduced copy of the plane if one is ready
+			
+			final PlanePyramid.Level level =
+					(scaleDenom > 1 && pyramid != null) ? pyramid.level(plane, scaleDenom) : null;
+			
+			// draw bands of rows in parallel when the data allows it
+			
+			boolean oneThread = (level == null) && (planeCopy == null) &&
+					plane.getDataSource().rawData().accessWithOneThread();
+			
+			final int levelShift = (level == null) ? 0 : level.shift;
+			
+			drawnKey = viewKey(levelShift);
+			
+			boolean finished;
+			
+			if (oneThread) {
+				
+				// the prefetcher can be reading the same data on its own thread
+				
+				synchronized (plane.getDataSource()) {
+					
+					finished = drawFrame(arrayInt, shown, level, direct, oneThread, cancelled);
+				}
+			}
+			else
+				finished = drawFrame(arrayInt, shown, level, direct, oneThread, cancelled);
+			
+			if (!finished)
+				return null;
+			
+			outline(arrayInt);
+			
+			// once a big plane is on screen start building its pyramid
+			
+			if (pyramid != null && (plane.d0() > paneWidth || plane.d1() > paneHeight))
+				pyramid.build(plane);
+			
+			return this;
+		}
+		
+		// draw this snapshot at another position along an extra axis. every pixel
+		// is drawn and the tile cache is left alone. returns false if the frame
+		// was cancelled. used to fill the frame cache.
+		
+		private boolean renderFrame(int extraPos, long position, int[] arrayInt, BooleanSupplier cancelled) {
+			
+			plane.setPositionValue(extraPos, position);
+			
+			planeCopy = (prefetcher == null) ? null : (double[]) prefetcher.plane(plane);
+			
+			final boolean direct = (mapping != null) && mapping.hasDirectTable();
+			
+			final PlanePyramid.Level level =
+					(scaleDenom > 1 && pyramid != null) ? pyramid.level(plane, scaleDenom) : null;
+			
+			final boolean oneThread = (level == null) && (planeCopy == null) &&
+					plane.getDataSource().rawData().accessWithOneThread();
+			
+			RenderPool.Band band = new RenderPool.Band() {
+				
+				@Override
+				public void render(int y0, int y1) {
+
+					drawRect(arrayInt, level, direct, 0, paneWidth, y0, y1, cancelled);
+				}
+			};
+			
+			if (oneThread) {
+				
+				synchronized (plane.getDataSource()) {
+					
+					RenderPool.render(paneHeight, oneThread, band);
+				}
+			}
+			else
+				RenderPool.render(paneHeight, oneThread, band);
+			
+			if (cancelled.getAsBoolean())
+				return false;
+			
+			outline(arrayInt);
+			
+			return true;
+		}
+		
+		// paint a yellow outline around the image boundaries
+		
+		private void outline(int[] arrayInt) {
+			
+			long maxX1 = plane.d0()-1;
+			
+			long maxY1 = plane.d1()-1;
+			
+			line(arrayInt, 0, 0, 0, maxY1);
+			
+			line(arrayInt, 0, maxY1, maxX1, maxY1);
+			
+			line(arrayInt, maxX1, maxY1, maxX1, 0);
+			
+			line(arrayInt, maxX1, 0, 0, 0);
+		}
+		
+		// draw the pixels of a frame. returns false if the frame was cancelled.
+		
+		private boolean drawFrame(int[] arrayInt, PanZoomView shown, PlanePyramid.Level level,
+				boolean direct, boolean oneThread, BooleanSupplier cancelled)
+		{
+			// if only the pan origin changed scroll the pixels we already have and
+			// draw just what scrolled into view
+			
+			int[] distance = null;
+			
+			if (shown != null && drawnKey.equals(shown.drawnKey))
+				distance = scrollDistance(shown);
+			
+			if (distance != null) {
+				
+				scroll(arrayInt, distance[0], distance[1]);
+				
+				drawExposed(arrayInt, level, direct, oneThread, distance[0], distance[1]);
+				
+				return true;
+			}
+			
+			// slow data is shown in coarse passes before the full resolution pass.
+			// a frame whose first tile is cached is probably all cached.
+			
+			int[] steps = (level != null || planeCopy != null) ? new int[0] :
+				PaneRows.coarseSteps(plane.getDataSource().rawData(), mapping == null, scaleNumer);
+			
+			int firstRows = Math.min(paneHeight, TileCache.TILE_ROWS);
+			
+			if (steps.length > 0 &&
+					!TileCache.shared().fetch(tileKey(0, firstRows, 0), arrayInt, 0, firstRows * paneWidth))
+			{
+				
+				for (int step : steps) {
+					
+					drawCoarse(arrayInt, direct, oneThread, step, cancelled);
+					
+					if (cancelled.getAsBoolean())
+						return false;
+					
+					outline(arrayInt);
+					
+					renderService.publishPass(cancelled);
+				}
+			}
+			
+			drawTiles(arrayInt, level, direct, oneThread, cancelled);
+			
+			return !cancelled.getAsBoolean();
+		}
+		
+		// draw the whole pane in parallel bands at 1/step resolution. each band
+		// samples through its own reader.
+		
+		private void drawCoarse(int[] arrayInt, boolean direct, boolean oneThread, int step,
+				BooleanSupplier cancelled)
+		{
+			RenderPool.render(paneHeight, step, oneThread, new RenderPool.Band() {
+				
+				@Override
+				public void render(int y0, int y1) {
+					
+					int[] shows = PaneRows.clip(arrayInt, xform, plane.d0(), plane.d1(), 0, paneWidth, y0, y1);
+					
+					if (shows == null)
+						return;
+					
+					PlaneView<U> bandPlane = RenderPool.duplicate(plane);
+					
+					PlaneRowReader<U> reader = new PlaneRowReader<>(alg, bandPlane);
+					
+					U value = alg.construct();
+					
+					HighPrecisionMember sum = G.HP.construct();
+					
+					HighPrecisionMember tmp = G.HP.construct();
+					
+					ToDoubleFunction<U> toDouble = PlaneRowReader.asDouble();
+					
+					ToIntFunction<U> toSmallInt = smallIntReader();
+					
+					double[] doubleValue = new double[1];
+					
+					int[] intValue = new int[1];
+					
+					PaneRows.drawCoarse(arrayInt, xform, step, shows[0], shows[1], shows[2], shows[3],
+							new PaneRows.Sampler()
+					{
+						@Override
+						public int argb(long mx, long my) {
+							
+							if (mapping == null)
+								return modelColor(reader, bandPlane, mx, my, value, sum, tmp);
+							
+							if (direct) {
+								
+								reader.readInts(my, mx, 1, intValue, 0, toSmallInt);
+								
+								return mapping.directArgb(intValue[0]);
+							}
+							
+							reader.readDoubles(my, mx, 1, doubleValue, 0, toDouble);
+							
+							return mapping.argb(doubleValue[0]);
+						}
+					}, cancelled);
+				}
+			});
+		}
+		
+		// everything that decides the colors of a frame except the pan origin
+		
+		private List<Object> viewKey(int levelShift) {
+			
+			if (mapping != null)
+				return TileCache.key(plane, paneWidth, scaleNumer, scaleDenom,
+						mapping, filter, levelShift);
+			else
+				return TileCache.key(plane, paneWidth, scaleNumer, scaleDenom,
+						colors, rangeMin, rangeSpan, filter, levelShift);
+		}
+		
+		// everything that decides the colors of the frames of a walk along an
+		// extra axis. the same at every position along the axis.
+		
+		private List<Object> frameKey(int extraPos) {
+			
+			List<Object> key = viewKey(0);
+			
+			// the positions follow the data source and the two axes
+			
+			key.set(3 + extraPos, -1L);
+			
+			key.add(paneHeight);
+			
+			key.add(originX);
+			
+			key.add(originY);
+			
+			return key;
+		}
+		
+		// the tile cache key of the tile of the given number of rows that starts
+		// at row y. the last tile of a pane is usually short.
+		
+		private List<Object> tileKey(int y, int rows, int levelShift) {
+			
+			List<Object> key = viewKey(levelShift);
+			
+			key.add(originX);
+			
+			key.add(originY);
+			
+			key.add(y);
+			
+			key.add(rows);
+			
+			return key;
+		}
+		
+		// how many screen pixels this view is panned from another view at the same
+		// zoom. null if the views don't overlap, are not a whole pixel apart or are
+		// not panned at all.
+		
+		private int[] scrollDistance(PanZoomView other) {
+			
+			if (scaleNumer != other.scaleNumer || scaleDenom != other.scaleDenom)
+				return null;
+			
+			long dx = originX - other.originX;
+			
+			long dy = originY - other.originY;
+			
+			if (Math.abs(dx) >= paneWidth * (long) scaleDenom || Math.abs(dy) >= paneHeight * (long) scaleDenom)
+				return null;
+			
+			if (dx % scaleDenom != 0 || dy % scaleDenom != 0)
+				return null;
+			
+			long px = dx * scaleNumer / scaleDenom;
+			
+			long py = dy * scaleNumer / scaleDenom;
+			
+			if (Math.abs(px) >= paneWidth || Math.abs(py) >= paneHeight)
+				return null;
+			
+			// a redraw of the same view was asked for because something else changed
+			
+			if (px == 0 && py == 0)
+				return null;
+			
+			return new int[] {(int) px, (int) py};
+		}
+		
+		// move the pixels so that the one at (x+dx, y+dy) ends up at (x, y)
+		
+		private void scroll(int[] arrayInt, int dx, int dy) {
+			
+			int width = paneWidth - Math.abs(dx);
+			
+			int srcX = Math.max(0, dx);
+			
+			int dstX = Math.max(0, -dx);
+			
+			// copy in the order that never overwrites a row before it is read
+			
+			if (dy >= 0) {
+				
+				for (int y = 0; y < paneHeight - dy; y++) {
+					
+					System.arraycopy(arrayInt, (y + dy) * paneWidth + srcX, arrayInt, y * paneWidth + dstX, width);
+				}
+			}
+			else {
+				
+				for (int y = paneHeight - 1; y >= -dy; y--) {
+					
+					System.arraycopy(arrayInt, (y + dy) * paneWidth + srcX, arrayInt, y * paneWidth + dstX, width);
+				}
+			}
+		}
+		
+		// draw the rows and columns that a scroll of dx, dy exposed
+		
+		private void drawExposed(int[] arrayInt, PlanePyramid.Level level, boolean direct, boolean oneThread, int dx, int dy) {
+			
+			int top = Math.min(paneHeight, Math.max(0, -dy));
+			
+			int bottom = Math.max(top, paneHeight - Math.max(0, dy));
+			
+			int left = Math.min(paneWidth, Math.max(0, -dx));
+			
+			int right = Math.max(left, paneWidth - Math.max(0, dx));
+			
+			drawRegion(arrayInt, level, direct, oneThread, 0, paneWidth, 0, top);
+			
+			drawRegion(arrayInt, level, direct, oneThread, 0, paneWidth, bottom, paneHeight);
+			
+			drawRegion(arrayInt, level, direct, oneThread, 0, left, top, bottom);
+			
+			drawRegion(arrayInt, level, direct, oneThread, right, paneWidth, top, bottom);
+		}
+		
+		// draw the whole pane in parallel bands of whole tiles. tiles that have been
+		// drawn before with the same view state come from the tile cache.
+		
+		private void drawTiles(int[] arrayInt, PlanePyramid.Level level, boolean direct, boolean oneThread,
+				BooleanSupplier cancelled)
+		{
+			final TileCache tiles = TileCache.shared();
+			
+			final int levelShift = (level == null) ? 0 : level.shift;
+			
+			RenderPool.render(paneHeight, TileCache.TILE_ROWS, oneThread, new RenderPool.Band() {
+				
+				@Override
+				public void render(int y0, int y1) {
+					
+					for (int ty = y0; ty < y1; ty += TileCache.TILE_ROWS) {
+						
+						int ty1 = Math.min(y1, ty + TileCache.TILE_ROWS);
+						
+						List<Object> key = tileKey(ty, ty1 - ty, levelShift);
+						
+						if (tiles.fetch(key, arrayInt, ty * paneWidth, (ty1 - ty) * paneWidth))
+							continue;
+						
+						drawRect(arrayInt, level, direct, 0, paneWidth, ty, ty1, cancelled);
+						
+						// never cache a partly drawn tile
+						
+						if (cancelled.getAsBoolean())
+							return;
+						
+						tiles.store(key, arrayInt, ty * paneWidth, (ty1 - ty) * paneWidth);
+					}
+				}
+			});
+		}
+		
+		// draw a rectangle of the pane in parallel bands. exposed strips are narrow
+		// so they are always finished rather than left half drawn by a cancel.
+		
+		private void drawRegion(int[] arrayInt, PlanePyramid.Level level, boolean direct, boolean oneThread,
+				int x0, int x1, int y0, int y1)
+		{
+			if (x0 >= x1 || y0 >= y1)
+				return;
+			
+			BooleanSupplier never = new BooleanSupplier() {
+				
+				@Override
+				public boolean getAsBoolean() {
+
+					return false;
+				}
+			};
+			
+			RenderPool.render(y1 - y0, oneThread, new RenderPool.Band() {
+				
+				@Override
+				public void render(int b0, int b1) {
+
+					drawRect(arrayInt, level, direct, x0, x1, y0 + b0, y0 + b1, never);
+				}
+			});
+		}
+		
+		// draw the pixels from x0 to x1 (exclusive) of the rows y0 to y1 (exclusive).
+		// only the part that shows the plane is drawn pixel by pixel. the rest is
+		// filled with black.
+		
+		private void drawRect(int[] arrayInt, PlanePyramid.Level level, boolean direct,
+				int x0, int x1, int y0, int y1, BooleanSupplier cancelled)
+		{
+			int[] shows = PaneRows.clip(arrayInt, xform, plane.d0(), plane.d1(), x0, x1, y0, y1);
+			
+			if (shows == null)
+				return;
+			
+			int dx0 = shows[0], dx1 = shows[1], dy0 = shows[2], dy1 = shows[3];
+			
+			if (level != null)
+				drawLevelRows(arrayInt, level, dx0, dx1, dy0, dy1, cancelled);
+			else if (scaleDenom > 1)
+				drawReducedRows(arrayInt, dx0, dx1, dy0, dy1, cancelled);
+			else
+				drawRows(arrayInt, direct, dx0, dx1, dy0, dy1, cancelled);
+		}
+		
+		// draw the columns from x0 to x1 of the rows from y0 (inclusive) to y1 (exclusive).
+		// this can be called from multiple threads at once so it only touches local
+		// scratch variables. when zoomed in each model pixel covers a scaleNumer x
+		// scaleNumer square of screen pixels. each visible model pixel is read and
+		// colored once and filled across its run of columns. screen rows that show
+		// the same model row as the row above are copied from it.
+		
+		private void drawRows(int[] arrayInt, boolean direct, int x0, int x1, int y0, int y1, BooleanSupplier cancelled) {
+			
+			HighPrecisionMember sum = G.HP.construct();
+			
+			HighPrecisionMember tmp = G.HP.construct();
+			
+			U value = alg.construct();
+			
+			// each band reads through its own view of the plane
+			
+			PlaneView<U> bandPlane = RenderPool.duplicate(plane);
+			
+			PlaneRowReader<U> reader = new PlaneRowReader<>(alg, bandPlane);
+			
+			reader.useCopy(planeCopy);
+			
+			// the model columns under the screen columns. drawRect() has already
+			// clipped the columns to the ones that show the plane.
+			
+			long firstMx = xform.pixelToModelX(x0);
+			
+			int count = (int) (xform.pixelToModelX(x1 - 1) - firstMx + 1);
+			
+			// the primitive types read a whole row segment at a time. each row is
+			// colored in one pass and then spread across the screen columns.
+			
+			double[] values = (mapping != null && !direct) ? new double[count] : null;
+			
+			int[] smallInts = (mapping != null && direct) ? new int[count] : null;
+			
+			int[] colors = new int[count];
+			
+			ToDoubleFunction<U> toDouble = PlaneRowReader.asDouble();
+			
+			ToIntFunction<U> toSmallInt = smallIntReader();
+			
+			for (int y = y0; y < y1; y++) {
+			
+				// give up as soon as a newer frame is wanted
+				
+				if (cancelled.getAsBoolean())
+					return;
+				
+				if (PaneRows.copyRepeatedRow(arrayInt, paneWidth, scaleNumer, x0, x1, y0, y))
+					continue;
+				
+				long my = xform.pixelToModelY(y);
+				
+				if (values != null) {
+					
+					reader.readDoubles(my, firstMx, count, values, 0, toDouble);
+					
+					mapping.argb(values, 0, count, colors, 0);
+				}
+				else if (smallInts != null) {
+					
+					reader.readInts(my, firstMx, count, smallInts, 0, toSmallInt);
+					
+					for (int i = 0; i < count; i++)
+						colors[i] = mapping.directArgb(smallInts[i]);
+				}
+				else {
+					
+					for (int i = 0; i < count; i++)
+						colors[i] = modelColor(reader, bandPlane, firstMx + i, my, value, sum, tmp);
+				}
+				
+				PaneRows.expandRow(colors, firstMx, arrayInt, xform, scaleNumer, y, x0, x1);
+			}
+		}
+		
+		// reads the values of a type with a direct color table
+		
+		private ToIntFunction<U> smallIntReader() {
+			
+			return new ToIntFunction<U>() {
+				
+				@Override
+				public int applyAsInt(U v) {
+
+					return smallIntValue(v);
+				}
+			};
+		}
+		
+		// the color of one model pixel of a type that is colored through BigDecimal
+		// math. black when the pixel is outside the plane.
+		
+		private int modelColor(PlaneRowReader<U> reader, PlaneView<U> bandPlane, long mx, long my, U value,
+				HighPrecisionMember sum, HighPrecisionMember tmp)
+		{
+			if (mx < 0 || mx >= bandPlane.d0() || my < 0 || my >= bandPlane.d1())
+				return DisplayMapping.BLACK;
+			
+			reader.get(mx, my, value);
+			
+			G.HP.zero().call(sum);
+			
+			boolean includesNans = false; 
+			
+			boolean includesPosInfs = false; 
+			
+			boolean includesNegInfs = false; 
+			
+			long numCounted = 0;
+			
+			if (nanTester != null && nanTester.isNaN().call(value))
+				includesNans = true;
+			else if (infTester != null && infTester.isInfinite().call(value)) {
+			
+				if (signumTester.signum().call(value) < 0)
+					includesNegInfs = true;
+				else
+					includesPosInfs = true;
+			}
+			else {
+				((HighPrecRepresentation) value).toHighPrec(tmp);
+				G.HP.add().call(sum, tmp, sum);
+				numCounted++;
+			}
+
+			// calc average intensity
+
+			BigDecimal avgIntensity = getIntensity(sum, numCounted, includesNans, includesPosInfs, includesNegInfs);
+			
+			return getColor(avgIntensity);
+		}
+
+		// when zoomed out every screen pixel covers a scaleDenom x scaleDenom block of
+		// model pixels. reduce each block to one value with the chosen filter. the
+		// model rows under a screen row are streamed once, left to right, into a row
+		// of accumulators rather than sampling one model pixel per screen pixel.
+		
+		private void drawReducedRows(int[] arrayInt, int x0, int x1, int y0, int y1, BooleanSupplier cancelled) {
+			
+			U value = alg.construct();
+			
+			PlaneView<U> bandPlane = RenderPool.duplicate(plane);
+			
+			PlaneRowReader<U> reader = new PlaneRowReader<>(alg, bandPlane);
+			
+			reader.useCopy(planeCopy);
+			
+			ToDoubleFunction<U> toDouble = PlaneRowReader.asDouble();
+			
+			double[] row = new double[PlaneRowReader.CHUNK];
+			
+			double[] results = new double[x1 - x0];
+			
+			long maxDimX = bandPlane.d0();
+			
+			long maxDimY = bandPlane.d1();
+			
+			// the model columns that land in screen columns x0 to x1
+			
+			long firstMx = Math.max(0, xform.pixelToModelX(x0));
+			
+			long lastMx = Math.min(maxDimX, xform.pixelToModelX(x1));
+			
+			RowReducer reducer = null;
+			
+			HighPrecisionReducer hpReducer = null;
+			
+			if (mapping != null)
+				reducer = new RowReducer(filter, paneWidth);
+			else
+				hpReducer = new HighPrecisionReducer();
+			
+			for (int y = y0; y < y1; y++) {
+				
+				// give up as soon as a newer frame is wanted
+				
+				if (cancelled.getAsBoolean())
+					return;
+				
+				if (reducer != null)
+					reducer.clear();
+				else
+					hpReducer.clear();
+				
+				long firstMy = Math.max(0, xform.pixelToModelY(y));
+				
+				long lastMy = Math.min(maxDimY, xform.pixelToModelY(y + 1));
+				
+				for (long my = firstMy; my < lastMy; my++) {
+					
+					if (reducer == null) {
+						
+						for (long mx = firstMx; mx < lastMx; mx++) {
+							
+							reader.get(mx, my, value);
+							
+							hpReducer.add((int) xform.modelToPixelX(mx), value);
+						}
+						
+						continue;
+					}
+					
+					for (long mx = firstMx; mx < lastMx; mx += row.length) {
+						
+						int n = (int) Math.min(row.length, lastMx - mx);
+						
+						reader.readDoubles(my, mx, n, row, 0, toDouble);
+						
+						// hand each screen column its whole run of model columns at once
+						
+						int i = 0;
+						
+						while (i < n) {
+							
+							int column = (int) xform.modelToPixelX(mx + i);
+							
+							int runEnd = (int) Math.max(i + 1, Math.min(n, xform.pixelToModelX(column + 1) - mx));
+							
+							reducer.add(column, row, i, runEnd - i);
+							
+							i = runEnd;
+						}
+					}
+				}
+				
+				int bufferPos = y * paneWidth;
+				
+				// columns that saw no data reduce to NaN which draws black
+				
+				if (reducer != null) {
+					
+					reducer.results(x0, x1, results, 0);
+					
+					mapping.argb(results, 0, x1 - x0, arrayInt, bufferPos + x0);
+				}
+				else {
+					
+					for (int x = x0; x < x1; x++) {
+						
+						arrayInt[bufferPos + x] = getColor(hpReducer.intensity(x));
+					}
+				}
+			}
 		}
 		
-		private BigInteger modelToPixel(long modelNum, long modelOffset) {
-
-			if (scaleNumer == 1 && scaleDenom == 1) {
-				return BigInteger.valueOf(modelNum).subtract(BigInteger.valueOf(modelOffset));
-			}
-			else if (scaleNumer > 1) {
-				return BigInteger.valueOf(modelNum).subtract(BigInteger.valueOf(modelOffset)).multiply(BigInteger.valueOf(scaleNumer));
-			}
-			else if (scaleDenom > 1) {
-				return BigInteger.valueOf(modelNum).subtract(BigInteger.valueOf(modelOffset)).divide(BigInteger.valueOf(scaleDenom));
-			}
-			else
-				throw new IllegalArgumentException("back to the drawing board");
-		}
+		// the same as drawReducedRows() but reading from a pyramid level. a level
+		// pixel is 2^shift model pixels wide, which is no wider than a screen pixel,
+		// and it is counted in the screen pixel that holds its center.
 		
-		public void draw() {
-
-			// Reduce flicker while not needing to make any changes for double buffering or page flipping.
-			
-			Toolkit.getDefaultToolkit().sync();
-			
-			if (alg instanceof NaN) {
-				this.nanTester = (NaN<U>) alg;
-			}
-
-			if (alg instanceof Infinite) {
-				this.infTester = (Infinite<U>) alg;
-			}
+		private void drawLevelRows(int[] arrayInt, PlanePyramid.Level level, int x0, int x1, int y0, int y1, BooleanSupplier cancelled) {
 			
-			if (alg instanceof Ordered) {
-				this.signumTester = (Ordered<U>) alg;
-			}
-
-			// Safe cast as img is of correct type 
+			// levels hold floats or doubles depending on the type of the data
 			
-			DataBufferInt buffer = (DataBufferInt) argbData.getRaster().getDataBuffer();
-
-			// Conveniently, the buffer already contains the data array
+			float[] floats = (level.pixels instanceof float[]) ? (float[]) level.pixels : null;
 			
-			int[] arrayInt = buffer.getData();
+			double[] doubles = (level.pixels instanceof double[]) ? (double[]) level.pixels : null;
 			
-			// paint the pixels into the plane of data
+			int shift = level.shift;
 			
-			HighPrecisionMember sum = G.HP.construct();
+			long half = (1L << shift) / 2;
 			
-			HighPrecisionMember tmp = G.HP.construct();
+			RowReducer reducer = new RowReducer(filter, paneWidth);
 			
-			U value = alg.construct();
+			double[] results = new double[x1 - x0];
 			
-			long maxDimX = planeData.d0();
+			// the level columns whose centers land in screen columns x0 to x1
 			
-			long maxDimY = planeData.d1();
+			long firstLx = Math.max(0, levelCoord(xform.pixelToModelX(x0), half, shift));
 			
-			for (int y = 0; y < paneHeight; y++) {
+			long lastLx = Math.min(level.width, levelCoord(xform.pixelToModelX(x1), half, shift));
 			
-				long my = pixelToModel(y, originY);
-
-				for (int x = 0; x < paneWidth; x++) {
+			for (int y = y0; y < y1; y++) {
+				
+				// give up as soon as a newer frame is wanted
+				
+				if (cancelled.getAsBoolean())
+					return;
 				
-					G.HP.zero().call(sum);
+				reducer.clear();
+				
+				long firstLy = Math.max(0, levelCoord(xform.pixelToModelY(y), half, shift));
+				
+				long lastLy = Math.min(level.height, levelCoord(xform.pixelToModelY(y + 1), half, shift));
+				
+				for (long ly = firstLy; ly < lastLy; ly++) {
 					
-					boolean includesNans = false; 
+					int rowStart = (int) ly * level.width;
 					
-					boolean includesPosInfs = false; 
+					for (long lx = firstLx; lx < lastLx; lx++) {
+						
+						int column = (int) xform.modelToPixelX((lx << shift) + half);
+						
+						int i = rowStart + (int) lx;
+						
+						reducer.add(column, (floats != null) ? floats[i] : doubles[i]);
+					}
+				}
+				
+				reducer.results(x0, x1, results, 0);
+				
+				mapping.argb(results, 0, x1 - x0, arrayInt, y * paneWidth + x0);
+			}
+		}
+		
+		// the first level pixel whose center is at or after a model coordinate
+		
+		private long levelCoord(long modelCoord, long half, int shift) {
+			
+			return -Math.floorDiv(half - modelCoord, 1L << shift);
+		}
+		
+		// the BigDecimal version of a RowReducer for types that can't be trusted
+		// to fit in a double. it tracks NaNs and infinities on the side the same
+		// way getIntensity() expects them.
+		
+		private class HighPrecisionReducer {
+			
+			private final HighPrecisionMember[] acc = new HighPrecisionMember[paneWidth];
+			private final long[] counts = new long[paneWidth];
+			private final boolean[] nans = new boolean[paneWidth];
+			private final boolean[] posInfs = new boolean[paneWidth];
+			private final boolean[] negInfs = new boolean[paneWidth];
+			private final HighPrecisionMember tmp = G.HP.construct();
+			
+			HighPrecisionReducer() {
+				
+				for (int i = 0; i < paneWidth; i++) {
 					
-					boolean includesNegInfs = false; 
+					acc[i] = G.HP.construct();
+				}
+			}
+			
+			void clear() {
+				
+				Arrays.fill(counts, 0);
+				
+				Arrays.fill(nans, false);
+				
+				Arrays.fill(posInfs, false);
+				
+				Arrays.fill(negInfs, false);
+			}
+			
+			void add(int column, U value) {
+				
+				if (nanTester != null && nanTester.isNaN().call(value)) {
 					
-					long numCounted = 0;
+					nans[column] = true;
 					
-					boolean modelCoordsInBounds = false;
+					return;
+				}
+				
+				if (infTester != null && infTester.isInfinite().call(value)) {
+				
+					if (signumTester.signum().call(value) < 0)
+						negInfs[column] = true;
+					else
+						posInfs[column] = true;
 					
-					long mx = pixelToModel(x, originX);
+					return;
+				}
+
+				((HighPrecRepresentation) value).toHighPrec(tmp);
+				
+				HighPrecisionMember a = acc[column];
+				
+				if (counts[column] == 0)
+					G.HP.assign().call(tmp, a);
+				else if (filter == RowReducer.Filter.MIN) {
+					if (G.HP.isLess().call(tmp, a))
+						G.HP.assign().call(tmp, a);
+				}
+				else if (filter == RowReducer.Filter.MAX) {
+					if (G.HP.isGreater().call(tmp, a))
+						G.HP.assign().call(tmp, a);
+				}
+				else
+					G.HP.add().call(a, tmp, a);
+				
+				counts[column]++;
+			}
+			
+			BigDecimal intensity(int column) {
+				
+				HighPrecisionMember a = acc[column];
+				
+				long count = counts[column];
+				
+				boolean nan = nans[column];
+				
+				boolean posInf = posInfs[column];
+				
+				boolean negInf = negInfs[column];
+				
+				// min and max ignore nans and let the extreme infinity win
+				
+				if (filter == RowReducer.Filter.MIN) {
 					
-					if (mx >= 0 && mx < maxDimX && my >= 0 && my < maxDimY) {
+					if (negInf)
+						return NEGINF_CODE;
 					
-						modelCoordsInBounds = true;
-						
-						planeData.get(mx, my, value);
-						
-						if (nanTester != null && nanTester.isNaN().call(value))
-							includesNans = true;
-						else if (infTester != null && infTester.isInfinite().call(value)) {
-						
-							if (signumTester.signum().call(value) < 0)
-								includesNegInfs = true;
-							else
-								includesPosInfs = true;
-						}
-						else {
-							((HighPrecRepresentation) value).toHighPrec(tmp);
-							G.HP.add().call(sum, tmp, sum);
-							numCounted++;
-						}
-					}
+					if (count > 0)
+						return getIntensity(a, 1, false, false, false);
 					
-					int color = 0;
+					return posInf ? POSINF_CODE : NAN_CODE;
+				}
+				
+				if (filter == RowReducer.Filter.MAX) {
 					
-					if (modelCoordsInBounds) {
-
-						// calc average intensity
-
-						BigDecimal avgIntensity = getIntensity(sum, numCounted, includesNans, includesPosInfs, includesNegInfs);
-						
-						color = getColor(avgIntensity);
-					}
-					else {
-						
-						color = RgbUtils.argb(255, 0, 0, 0);
-					}
+					if (posInf)
+						return POSINF_CODE;
 					
-					int boxHalfSize = drawingBoxHalfSize();
+					if (count > 0)
+						return getIntensity(a, 1, false, false, false);
 					
-					for (int dy = -boxHalfSize; dy <= boxHalfSize; dy++) {
-						
-						int v = y + dy;
-						
-						for (int dx = -boxHalfSize; dx <= boxHalfSize; dx++) {
-
-							int u = x + dx;
-							
-							// plot a point
-							plot(color, arrayInt, u, v);
-						}
-					}
+					return negInf ? NEGINF_CODE : NAN_CODE;
 				}
+
+				return getIntensity(a, count, nan, posInf, negInf);
 			}
+		}
+
+		// calc the display range once per frame for types that can't use a DisplayMapping
+		
+		private void calcBigDecimalRange() {
 			
-			// now paint a yellow outline around the image boundaries
+			HighPrecisionMember hpMin = G.HP.construct();
 			
-			long maxX1 = planeData.d0()-1;
+			HighPrecisionMember hpMax = G.HP.construct();
 			
-			long maxY1 = planeData.d1()-1;
+			((HighPrecRepresentation) min).toHighPrec(hpMin);
 			
-			line(arrayInt, 0, 0, 0, maxY1);
+			((HighPrecRepresentation) max).toHighPrec(hpMax);
 			
-			line(arrayInt, 0, maxY1, maxX1, maxY1);
+			if (dispMin != null && G.HP.isGreater().call(dispMin, hpMin))
+				G.HP.assign().call(dispMin, hpMin);
 			
-			line(arrayInt, maxX1, maxY1, maxX1, 0);
+			if (dispMax != null && G.HP.isLess().call(dispMax, hpMax))
+				G.HP.assign().call(dispMax, hpMax);
 			
-			line(arrayInt, maxX1, 0, 0, 0);
+			BigDecimal denom = hpMax.v().subtract(hpMin.v());
+			
+			if (denom.compareTo(BigDecimal.ZERO) == 0) {
+				denom = BigDecimal.ONE;
+			}
+			
+			rangeMin = hpMin.v();
+			
+			rangeSpan = denom;
 		}
-
+		
 		private BigDecimal getIntensity(HighPrecisionMember valueSum, long numValues, boolean includesNans, boolean includesPosInfs, boolean includesNegInfs) {
 
 			// scale the current value sum to an average intensity from 0 to 1.
@@ -3001,20 +4674,6 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 				return NAN_CODE;
 			}
 			
-			HighPrecisionMember hpMin = new HighPrecisionMember();
-			
-			HighPrecisionMember hpMax = new HighPrecisionMember();
-			
-			((HighPrecRepresentation) min).toHighPrec(hpMin);
-			
-			((HighPrecRepresentation) max).toHighPrec(hpMax);
-			
-			if (dispMin != null && G.HP.isGreater().call(dispMin, hpMin))
-				G.HP.assign().call(dispMin, hpMin);
-			
-			if (dispMax != null && G.HP.isLess().call(dispMax, hpMax))
-				G.HP.assign().call(dispMax, hpMax);
-
 			BigDecimal numV;
 			
 			if (numValues <= 0)
@@ -3025,15 +4684,9 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 			BigDecimal average =
 					valueSum.v().divide(numV, HighPrecisionAlgebra.getContext());
 			
-			BigDecimal numer = average.subtract(hpMin.v());
-			
-			BigDecimal denom = hpMax.v().subtract(hpMin.v());
-			
-			if (denom.compareTo(BigDecimal.ZERO) == 0) {
-				denom = BigDecimal.ONE;
-			}
+			BigDecimal numer = average.subtract(rangeMin);
 
-			BigDecimal ratio = numer.divide(denom, HighPrecisionAlgebra.getContext());
+			BigDecimal ratio = numer.divide(rangeSpan, HighPrecisionAlgebra.getContext());
 
 			if (ratio.compareTo(BigDecimal.ZERO) < 0)
 				return BigDecimal.ZERO;
@@ -3067,7 +4720,7 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 
 			// scale 0-1 to the range of the size of the current color table
 			
-			BigDecimal colorTableSize = BigDecimal.valueOf(colorTable.length-1);
+			BigDecimal colorTableSize = BigDecimal.valueOf(colors.length-1);
 			
 			BigDecimal colorTableIndex = colorTableSize.multiply(intensity);
 			
@@ -3075,7 +4728,7 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 			
 			colorTableIndex = colorTableIndex.add(BigDecimalUtils.ONE_HALF);
 			
-			return colorTable[colorTableIndex.intValue()];
+			return colors[colorTableIndex.intValue()];
 		}
 		
 		private void plot(int argb, int[] arrayInt, int x, int y) {
@@ -3094,58 +4747,37 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 			
 			int COLOR = RgbUtils.argb(180, 0xff, 0xff, 0);
 
-			BigInteger pX0 = modelToPixel(modelX0, originX);
-			BigInteger pX1 = modelToPixel(modelX1, originX);
-			BigInteger pY0 = modelToPixel(modelY0, originY);
-			BigInteger pY1 = modelToPixel(modelY1, originY);
+			long pX0 = xform.modelToPixelX(modelX0);
+			long pX1 = xform.modelToPixelX(modelX1);
+			long pY0 = xform.modelToPixelY(modelY0);
+			long pY1 = xform.modelToPixelY(modelY1);
 			
 			// if the line coords are totally out of bounds then skip drawing
 			
-			if (pX0.compareTo(BigInteger.ZERO) < 0 &&
-					pX1.compareTo(BigInteger.ZERO) < 0)
-				return;
-
-			BigInteger width = BigInteger.valueOf(paneWidth-1);
+			int width = paneWidth-1;
 			
-			if (pX0.compareTo(width) > 0 && pX1.compareTo(width) > 0)
-				return;
+			int height = paneHeight-1;
 			
-			if (pY0.compareTo(BigInteger.ZERO) < 0 &&
-					pY1.compareTo(BigInteger.ZERO) < 0)
+			if ((pX0 < 0 && pX1 < 0) || (pX0 > width && pX1 > width))
 				return;
 			
-			BigInteger height = BigInteger.valueOf(paneHeight-1);
-			
-			if (pY0.compareTo(height) > 0 && pY1.compareTo(height) > 0)
+			if ((pY0 < 0 && pY1 < 0) || (pY0 > height && pY1 > height))
 				return;
 			
 			// clip line if necessary
 			
-			if (pX0.compareTo(BigInteger.ZERO) < 0)
-				pX0 = BigInteger.ZERO;
-
-			if (pX1.compareTo(width) > 0)
-				pX1 = width;
-
-			if (pY0.compareTo(BigInteger.ZERO) < 0)
-				pY0 = BigInteger.ZERO;
-
-			if (pY1.compareTo(height) > 0)
-				pY1 = height;
+			int x0 = (int) Math.max(0, Math.min(width, pX0));
+			int x1 = (int) Math.max(0, Math.min(width, pX1));
+			int y0 = (int) Math.max(0, Math.min(height, pY0));
+			int y1 = (int) Math.max(0, Math.min(height, pY1));
 			
-			if (pX0.compareTo(pX1) == 0) {
-				int x = pX0.intValue();
-				int minY = Math.min(pY0.intValue(), pY1.intValue());
-				int maxY = Math.max(pY0.intValue(), pY1.intValue());
-				for (int y = minY; y <= maxY; y++)
-					plot(COLOR, arrayInt, x, y);
+			if (x0 == x1) {
+				for (int y = Math.min(y0, y1); y <= Math.max(y0, y1); y++)
+					plot(COLOR, arrayInt, x0, y);
 			}
-			else if (pY0.compareTo(pY1) == 0) {
-				int y = pY0.intValue();
-				int minX = Math.min(pX0.intValue(), pX1.intValue());
-				int maxX = Math.max(pX0.intValue(), pX1.intValue());
-				for (int x = minX; x <= maxX; x++)
-					plot(COLOR, arrayInt, x, y);
+			else if (y0 == y1) {
+				for (int x = Math.min(x0, x1); x <= Math.max(x0, x1); x++)
+					plot(COLOR, arrayInt, x, y0);
 			}
 			else {
 				throw new IllegalArgumentException("the line() routine only deals in horz or vert lines");
@@ -3160,18 +4792,23 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 		@SuppressWarnings("rawtypes")
 		public DimensionedDataSource<ArgbMember> takeSnapshot()
 		{
-			int dimX = paneWidth;
+			// the frame on screen can be a different size than the view just after
+			// the window has been resized
 			
-			int dimY = paneHeight;
+			BufferedImage shown = imagePane.getImage();
+			
+			int dimX = shown.getWidth();
+			
+			int dimY = shown.getHeight();
 			
 			DimensionedDataSource<ArgbMember> newDs = (DimensionedDataSource<ArgbMember>)
 					DimensionedStorage.allocate((Allocatable) G.ARGB.construct(), new long[] {dimX, dimY});
 			
-			TwoDView<ArgbMember> view = new TwoDView<>(newDs);
+			IndexedDataSource<ArgbMember> pixels = newDs.rawData();
 			
 			// Safe cast as img is of correct type 
 			
-			DataBufferInt buffer = (DataBufferInt) argbData.getRaster().getDataBuffer();
+			DataBufferInt buffer = (DataBufferInt) shown.getRaster().getDataBuffer();
 
 			// Conveniently, the buffer already contains the data array
 			
@@ -3195,7 +4832,7 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 					
 					tmp.setB(RgbUtils.b(argb));
 					
-					view.set(x, y, tmp);
+					pixels.set(rowPos + x, tmp);
 				}
 			}
 			
@@ -3297,19 +4934,23 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 				
 				C complexValue = cmplxAlg.construct();
 				
-				TwoDView<R> realVw = new TwoDView<>(realData);
+				// both planes are freshly allocated so a row is a run of raw elements
 				
-				TwoDView<C> complexVw = new TwoDView<>(complexData);
+				PlaneRowReader<R> reader = new PlaneRowReader<>(realAlg, new PlaneView<>(realData, 0, 1));
+				
+				IndexedDataSource<C> complexRaw = complexData.rawData();
 				
 				for (long y = 0; y < dims[1]; y++) {
 					
+					long rowStart = y * dims[0];
+					
 					for (long x = 0; x < dims[0]; x++) {
 				
-						realVw.get(x, y, realValue);
+						reader.get(x, y, realValue);
 						
 						complexValue.setR(realValue);
 						
-						complexVw.set(x, y, complexValue);
+						complexRaw.set(rowStart + x, complexValue);
 					}
 				}
 				
@@ -3538,11 +5179,11 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 		
 		I altMaxI = (I) altMax;
 		
-		I minI = inAlg.construct();
-
-		I maxI = inAlg.construct();
+		MinMaxReduction<I> bounds = MinMaxReduction.compute(inAlg, inList, input);
 		
-		MinMaxElement.compute(inAlg, inList , minI, maxI);
+		I minI = bounds.min();
+
+		I maxI = bounds.max();
 		
 		if (altMinI != null && inAlg.isGreater().call(altMinI, minI))
 			
@@ -3640,6 +5281,127 @@ public class RealImageViewer<T extends Algebra<T,U>, U> {
 		}
 	}
 
+	// Types that fit in a double get every statistic in a few parallel passes.
+	
+	private void calculateStats() {
+		
+		DimensionedDataSource<U> data = planeData.getDataSource();
+		
+		StatsEngine<U> engine = new StatsEngine<>(alg, data.rawData(), data);
+		
+		Timer timer = new Timer(100, null);
+		
+		StatsDialog dialog = new StatsDialog(frame, "Stats - " + frame.getTitle(), new Runnable() {
+			
+			@Override
+			public void run() {
+				
+				timer.stop();
+				
+				engine.cancel();
+			}
+		});
+		
+		statsDialog = dialog;
+		
+		timer.addActionListener(new ActionListener() {
+			
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				
+				dialog.progress(engine.phase(), engine.progress());
+			}
+		});
+		
+		timer.start();
+		
+		engine.start(new StatsEngine.Listener() {
+			
+			@Override
+			public void finished(StatsEngine.Result result) {
+				
+				timer.stop();
+				
+				String[] names = new String[] {"Count", "NaNs", "+Infinities", "-Infinities",
+						"Min", "Max", "Mean", "Std dev", "Median"};
+				
+				String[] values = new String[] {
+						String.valueOf(result.count),
+						String.valueOf(result.nans),
+						String.valueOf(result.positiveInfinities),
+						String.valueOf(result.negativeInfinities),
+						String.valueOf(result.min),
+						String.valueOf(result.max),
+						String.valueOf(result.mean),
+						String.valueOf(result.stdDev),
+						String.valueOf(result.median)};
+				
+				dialog.show(names, values);
+			}
+		});
+	}
+	
+	// The wider types keep their full precision by going through BigDecimal. It
+	// is slow so it runs in the background too.
+	
+	private void calculateHighPrecStats() {
+		
+		// the BigDecimal calculation cannot be stopped part way
+		
+		StatsDialog dialog = new StatsDialog(frame, "Stats - " + frame.getTitle(), null);
+		
+		statsDialog = dialog;
+		
+		dialog.progress("Mean, std dev and median", -1);
+		
+		U mean = alg.construct();
+		
+		U median = alg.construct();
+		
+		U stddev = alg.construct();
+		
+		SwingWorker<Object, Object> worker = new SwingWorker<Object, Object>() {
+			
+			@Override
+			protected Object doInBackground() throws Exception {
+				
+				DimensionedDataSource<U> data = planeData.getDataSource();
+				
+				if (data.rawData().accessWithOneThread()) {
+				
+					synchronized (data) {
+						
+						collectStats(alg, data.rawData(), mean, median, stddev);
+					}
+				}
+				else
+					collectStats(alg, data.rawData(), mean, median, stddev);
+				
+				return null;
+			}
+			
+			@Override
+			protected void done() {
+				
+				try {
+					
+					get();
+					
+				} catch (InterruptedException | ExecutionException e) {
+					
+					dialog.show(new String[] {"Error"}, new String[] {String.valueOf(e.getCause())});
+					
+					return;
+				}
+				
+				dialog.show(new String[] {"Mean", "Std dev", "Median"},
+						new String[] {mean.toString(), stddev.toString(), median.toString()});
+			}
+		};
+		
+		worker.execute();
+	}
+
 	@SuppressWarnings("unchecked")
 	<A,
 		BA extends Algebra<BA,B>,
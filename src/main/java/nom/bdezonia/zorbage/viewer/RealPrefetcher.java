@@ -0,0 +1,87 @@
+/*
+ * zorbage-viewer: utility app for loading and viewing various image data formats
+ *
+ * Copyright (c) 2020-2022 Barry DeZonia All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 
+ * Neither the name of the <copyright holder> nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+ * BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package nom.bdezonia.zorbage.viewer;
+
+import nom.bdezonia.zorbage.algebra.Algebra;
+import nom.bdezonia.zorbage.dataview.PlaneView;
+
+/**
+ * A prefetcher of real valued planes. Copies hold doubles so every primitive
+ * real type, including the integer types that are colored through a direct
+ * lookup table, is copied exactly.
+ * 
+ * @author Barry DeZonia
+ *
+ * @param <U> A real type that supports GetAsDouble.
+ */
+public class RealPrefetcher<U> extends PlanePrefetcher<U> {
+
+	private final Algebra<?,U> alg;
+	
+	/**
+	 * 
+	 * @param alg The algebra of the plane's values.
+	 */
+	public RealPrefetcher(Algebra<?,U> alg) {
+		
+		this.alg = alg;
+	}
+	
+	@Override
+	protected int bytesPerPixel() {
+		
+		return 8;
+	}
+	
+	@Override
+	protected Object newPixels(int size) {
+		
+		return new double[size];
+	}
+	
+	@Override
+	protected boolean inMemory(PlaneView<U> plane) {
+		
+		return PrimitiveKernel.of(plane.getDataSource().rawData(), alg.construct()) != null;
+	}
+	
+	@Override
+	protected void copyRow(PlaneView<U> plane, long y, Object pixels) {
+		
+		double[] row = (double[]) pixels;
+		
+		int width = (int) plane.d0();
+		
+		PlaneRowReader<U> reader = new PlaneRowReader<>(alg, plane);
+		
+		reader.readDoubles(y, 0, width, row, (int) (y * width), PlaneRowReader.asDouble());
+	}
+}
@@ -0,0 +1,229 @@
+/*
+ * zorbage-viewer: utility app for loading and viewing various image data formats
+ *
+ * Copyright (c) 2020-2022 Barry DeZonia All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 
+ * Neither the name of the <copyright holder> nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+ * BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package nom.bdezonia.zorbage.viewer;
+
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+import java.util.function.ToDoubleFunction;
+
+import nom.bdezonia.zorbage.algebra.Algebra;
+import nom.bdezonia.zorbage.dataview.PlaneView;
+import nom.bdezonia.zorbage.type.integer.int16.SignedInt16Member;
+import nom.bdezonia.zorbage.type.integer.int16.UnsignedInt16Member;
+import nom.bdezonia.zorbage.type.integer.int8.SignedInt8Member;
+import nom.bdezonia.zorbage.type.integer.int8.UnsignedInt8Member;
+import nom.bdezonia.zorbage.type.real.float16.Float16Member;
+import nom.bdezonia.zorbage.type.real.float32.Float32Member;
+
+/**
+ * A pyramid of a real valued plane. Levels are reduced with the same filter the
+ * viewer uses when zoomed out. They hold floats for types whose values all fit
+ * in a float (small ints, float16 and float32) and doubles for the others so
+ * that wide ranges do not overflow and narrow display ranges do not band.
+ * 
+ * @author Barry DeZonia
+ *
+ * @param <U> A real type that supports GetAsDouble.
+ */
+public class RealPyramid<U> extends PlanePyramid<U> {
+
+	private final Algebra<?,U> alg;
+	private final boolean floats;
+	private volatile RowReducer.Filter filter = RowReducer.Filter.MEAN;
+	
+	/**
+	 * 
+	 * @param alg The algebra of the plane's values.
+	 * @param onLevelBuilt Called from the build thread with the shift of each
+	 *   level as it becomes available.
+	 */
+	public RealPyramid(Algebra<?,U> alg, IntConsumer onLevelBuilt) {
+		
+		super(onLevelBuilt);
+		
+		this.alg = alg;
+		
+		U sample = alg.construct();
+		
+		this.floats = (sample instanceof UnsignedInt8Member) || (sample instanceof SignedInt8Member) ||
+				(sample instanceof UnsignedInt16Member) || (sample instanceof SignedInt16Member) ||
+				(sample instanceof Float16Member) || (sample instanceof Float32Member);
+	}
+	
+	/**
+	 * Change the filter that levels are reduced with. Discards the pyramid if
+	 * the filter is different.
+	 */
+	public void setFilter(RowReducer.Filter filter) {
+		
+		if (filter != this.filter) {
+			
+			this.filter = filter;
+			
+			clear();
+		}
+	}
+	
+	@Override
+	protected int bytesPerPixel() {
+		
+		return floats ? 4 : 8;
+	}
+	
+	@Override
+	protected Object reducePlane(PlaneView<U> plane, int shift, int width, int height, BooleanSupplier cancelled) {
+		
+		Object pixels = floats ? new float[width * height] : new double[width * height];
+		
+		RowReducer.Filter f = filter;
+		
+		RenderPool.renderInBackground(height, false, new RenderPool.Band() {
+			
+			@Override
+			public void render(int y0, int y1) {
+				
+				PlaneView<U> bandPlane = RenderPool.duplicate(plane);
+				
+				PlaneRowReader<U> reader = new PlaneRowReader<>(alg, bandPlane);
+				
+				ToDoubleFunction<U> conv = PlaneRowReader.asDouble();
+				
+				double[] row = new double[PlaneRowReader.CHUNK];
+				
+				RowReducer reducer = new RowReducer(f, width);
+				
+				long planeWidth = bandPlane.d0();
+				
+				long planeHeight = bandPlane.d1();
+				
+				for (int y = y0; y < y1; y++) {
+					
+					if (cancelled.getAsBoolean())
+						return;
+					
+					reducer.clear();
+					
+					long lastY = Math.min(planeHeight, ((long) y + 1) << shift);
+					
+					for (long my = ((long) y) << shift; my < lastY; my++) {
+						
+						for (long mx = 0; mx < planeWidth; mx += row.length) {
+							
+							int count = (int) Math.min(row.length, planeWidth - mx);
+							
+							reader.readDoubles(my, mx, count, row, 0, conv);
+							
+							reducer.addBlocks(mx, shift, row, 0, count);
+						}
+					}
+					
+					store(reducer, pixels, y * width, width);
+				}
+			}
+		});
+		
+		return pixels;
+	}
+	
+	@Override
+	protected Object reduceLevel(Level finer, int width, int height, BooleanSupplier cancelled) {
+		
+		Object src = finer.pixels;
+		
+		Object pixels = floats ? new float[width * height] : new double[width * height];
+		
+		RowReducer.Filter f = filter;
+		
+		RenderPool.renderInBackground(height, false, new RenderPool.Band() {
+			
+			@Override
+			public void render(int y0, int y1) {
+				
+				RowReducer reducer = new RowReducer(f, width);
+				
+				for (int y = y0; y < y1; y++) {
+					
+					if (cancelled.getAsBoolean())
+						return;
+					
+					reducer.clear();
+					
+					int lastY = Math.min(finer.height, 2 * y + 2);
+					
+					for (int fy = 2 * y; fy < lastY; fy++) {
+						
+						int rowStart = fy * finer.width;
+						
+						if (src instanceof float[]) {
+							
+							float[] values = (float[]) src;
+							
+							for (int fx = 0; fx < finer.width; fx++) {
+								
+								reducer.add(fx >> 1, values[rowStart + fx]);
+							}
+						}
+						else {
+							
+							double[] values = (double[]) src;
+							
+							for (int fx = 0; fx < finer.width; fx++) {
+								
+								reducer.add(fx >> 1, values[rowStart + fx]);
+							}
+						}
+					}
+					
+					store(reducer, pixels, y * width, width);
+				}
+			}
+		});
+		
+		return pixels;
+	}
+	
+	// copy the reduced values of a row into a level
+	
+	private static void store(RowReducer reducer, Object pixels, int rowStart, int width) {
+		
+		if (pixels instanceof float[]) {
+			
+			float[] values = (float[]) pixels;
+			
+			for (int x = 0; x < width; x++) {
+				
+				values[rowStart + x] = (float) reducer.result(x);
+			}
+		}
+		else
+			reducer.results(0, width, (double[]) pixels, rowStart);
+	}
+}
@@ -0,0 +1,317 @@
+/*
+ * zorbage-viewer: utility app for loading and viewing various image data formats
+ *
+ * Copyright (c) 2020-2022 Barry DeZonia All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 
+ * Neither the name of the <copyright holder> nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+ * BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package nom.bdezonia.zorbage.viewer;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+
+import nom.bdezonia.zorbage.dataview.PlaneView;
+
+/**
+ * The thread pool shared by all the viewers for rendering. A render is split
+ * into horizontal bands of rows which are drawn in parallel. Long running
+ * work, such as building pyramids and scanning data for statistics, runs on a
+ * second pool of low priority threads so it does not slow down interactive
+ * frames.
+ * 
+ * The number of threads defaults to the number of available processors. It can
+ * be set at startup with the system property zorbage.viewer.threads or at run
+ * time with setParallelism().
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class RenderPool {
+
+	public static final String THREADS_PROPERTY = "zorbage.viewer.threads";
+	
+	// never split a render into bands shorter than this
+	
+	private static final int MIN_BAND_HEIGHT = 16;
+	
+	// replaced whole by setParallelism() so readers need no lock
+	
+	private static volatile ForkJoinPool pool = new ForkJoinPool(defaultParallelism());
+	
+	private static volatile ForkJoinPool background = backgroundPool(pool.getParallelism());
+	
+	private RenderPool() { }
+	
+	/**
+	 * A piece of work that draws the rows from y0 (inclusive) to y1 (exclusive).
+	 */
+	public interface Band {
+		
+		void render(int y0, int y1);
+	}
+	
+	/**
+	 * Returns the number of threads renders are spread across.
+	 */
+	public static int parallelism() {
+		
+		return pool.getParallelism();
+	}
+	
+	/**
+	 * Change the number of threads renders and background work are spread
+	 * across. Work that is in progress finishes on the old pools. Work that
+	 * reaches an old pool after it has been shut down is run on the new one.
+	 * 
+	 * @param numThreads The number of threads. A value of 1 renders serially.
+	 */
+	public static synchronized void setParallelism(int numThreads) {
+		
+		if (numThreads < 1)
+			throw new IllegalArgumentException("parallelism must be 1 or more");
+		
+		if (numThreads == pool.getParallelism())
+			return;
+		
+		ForkJoinPool oldPool = pool;
+		
+		ForkJoinPool oldBackground = background;
+		
+		pool = new ForkJoinPool(numThreads);
+		
+		background = backgroundPool(numThreads);
+		
+		// tasks already submitted still finish
+		
+		oldPool.shutdown();
+		
+		oldBackground.shutdown();
+	}
+	
+	private static int defaultParallelism() {
+		
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		
+		String prop = System.getProperty(THREADS_PROPERTY);
+		
+		if (prop != null) {
+			
+			try {
+				
+				numThreads = Integer.parseInt(prop.trim());
+				
+			} catch (NumberFormatException e) {
+				
+				System.out.println("Ignoring bad value for " + THREADS_PROPERTY + ": " + prop);
+			}
+		}
+		
+		return Math.max(1, numThreads);
+	}
+	
+	private static ForkJoinPool pool() {
+		
+		return pool;
+	}
+	
+	private static ForkJoinPool background() {
+		
+		return background;
+	}
+	
+	/**
+	 * Run a task on the pool of low priority threads for background work and
+	 * wait for its result. The pool has as many threads as the render pool.
+	 */
+	public static <T> T invokeInBackground(ForkJoinTask<T> task) {
+		
+		return invoke(false, task);
+	}
+	
+	// run a task on the current render or background pool. a pool that was
+	// shut down by setParallelism() after it was read rejects the task, which
+	// is then run on its replacement.
+	
+	private static <T> T invoke(boolean interactive, ForkJoinTask<T> task) {
+		
+		while (true) {
+			
+			ForkJoinPool p = interactive ? pool() : background();
+			
+			try {
+				
+				return p.invoke(task);
+				
+			} catch (RejectedExecutionException e) {
+				
+				if (p == (interactive ? pool() : background()))
+					throw e;
+			}
+		}
+	}
+	
+	private static ForkJoinPool backgroundPool(int numThreads) {
+		
+		return new ForkJoinPool(numThreads, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+			
+			@Override
+			public ForkJoinWorkerThread newThread(ForkJoinPool p) {
+				
+				ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+				
+				t.setName("zorbage-viewer-background-" + t.getPoolIndex());
+				
+				t.setPriority(Thread.MIN_PRIORITY);
+				
+				return t;
+			}
+		}, null, false);
+	}
+	
+	/**
+	 * Render the rows 0 to height-1 in parallel bands. Returns when all the bands
+	 * have been drawn.
+	 * 
+	 * @param height The number of rows to draw.
+	 * @param oneThread True if the data being drawn can only be accessed by a
+	 *   single thread. In that case the rows are drawn serially on the calling thread.
+	 * @param band The code that draws a band of rows.
+	 */
+	public static void render(int height, boolean oneThread, Band band) {
+		
+		render(height, 1, oneThread, band);
+	}
+	
+	/**
+	 * Render the rows 0 to height-1 in parallel bands that start on multiples of
+	 * align. Returns when all the bands have been drawn.
+	 * 
+	 * @param height The number of rows to draw.
+	 * @param align Every band but the last is a multiple of this many rows.
+	 * @param oneThread True if the data being drawn can only be accessed by a
+	 *   single thread. In that case the rows are drawn serially on the calling thread.
+	 * @param band The code that draws a band of rows.
+	 */
+	public static void render(int height, int align, boolean oneThread, Band band) {
+		
+		render(true, height, align, oneThread, band);
+	}
+	
+	/**
+	 * Render the rows 0 to height-1 in parallel bands on the low priority pool.
+	 * Returns when all the bands have been drawn.
+	 * 
+	 * @param height The number of rows to draw.
+	 * @param oneThread True if the data being drawn can only be accessed by a
+	 *   single thread. In that case the rows are drawn serially on the calling thread.
+	 * @param band The code that draws a band of rows.
+	 */
+	public static void renderInBackground(int height, boolean oneThread, Band band) {
+		
+		render(false, height, 1, oneThread, band);
+	}
+	
+	private static void render(boolean interactive, int height, int align, boolean oneThread, Band band) {
+		
+		if (height <= 0)
+			return;
+		
+		int numThreads = parallelism();
+		
+		if (oneThread || numThreads == 1 || height < 2 * MIN_BAND_HEIGHT) {
+			
+			band.render(0, height);
+			
+			return;
+		}
+		
+		// a few bands per thread so that threads that finish early can steal work
+		
+		int grain = Math.max(MIN_BAND_HEIGHT, height / (numThreads * 4));
+		
+		grain = ((grain + align - 1) / align) * align;
+		
+		invoke(interactive, new BandTask(band, 0, height, grain, align));
+	}
+	
+	/**
+	 * Make a view of the same plane of data as another view. Each worker thread
+	 * draws from its own view so that no positional state is shared between threads.
+	 */
+	public static <U> PlaneView<U> duplicate(PlaneView<U> view) {
+		
+		PlaneView<U> dup = new PlaneView<>(view.getDataSource(), view.axisNumber0(), view.axisNumber1());
+		
+		for (int i = 0; i < view.getPositionsCount(); i++) {
+			
+			dup.setPositionValue(i, view.getPositionValue(i));
+		}
+		
+		return dup;
+	}
+	
+	@SuppressWarnings("serial")
+	private static class BandTask extends RecursiveAction {
+
+		private final Band band;
+		private final int y0;
+		private final int y1;
+		private final int grain;
+		private final int align;
+		
+		BandTask(Band band, int y0, int y1, int grain, int align) {
+			
+			this.band = band;
+			this.y0 = y0;
+			this.y1 = y1;
+			this.grain = grain;
+			this.align = align;
+		}
+		
+		@Override
+		protected void compute() {
+			
+			if (y1 - y0 <= grain) {
+				
+				band.render(y0, y1);
+			}
+			else {
+				
+				int mid = (y0 + y1) >>> 1;
+				
+				mid -= (mid - y0) % align;
+				
+				if (mid == y0)
+					mid += align;
+				
+				invokeAll(new BandTask(band, y0, mid, grain, align), new BandTask(band, mid, y1, grain, align));
+			}
+		}
+	}
+}
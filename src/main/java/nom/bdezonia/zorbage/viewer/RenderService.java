@@ -0,0 +1,307 @@
+/*
+ * zorbage-viewer: utility app for loading and viewing various image data formats
+ *
+ * Copyright (c) 2020-2022 Barry DeZonia All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 
+ * Neither the name of the <copyright holder> nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+ * BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package nom.bdezonia.zorbage.viewer;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Renders frames for one viewer off of the Swing event thread. Frames are drawn
+ * into a private back buffer and copied into the displayed image on the event
+ * thread once they are complete, so the display never shows a partial frame.
+ * Submitting a new frame cancels the frame that is being drawn and any frames
+ * that are waiting to be drawn. Jobs that draw slowly can show coarse passes
+ * of a frame along the way with publishPass().
+ * 
+ * The back buffer keeps the last frame drawn into it. Each job is told what the
+ * buffer holds, as described by the job that drew it, so that it can reuse the
+ * pixels that are still valid.
+ * 
+ * Frames can change size from one job to the next as the viewer's window is
+ * resized. The pixel arrays behind both buffers are kept and reused for any
+ * frame that fits in them so that dragging a window edge does not allocate a
+ * new pair of buffers for every intermediate size.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class RenderService<S> {
+
+	private final ImagePane display;
+	private int[] backPixels;
+	private int backWidth;
+	private int backHeight;
+	private S backContents = null;
+	private final AtomicBoolean stale = new AtomicBoolean();
+	private final AtomicLong latest = new AtomicLong();
+	private final ThreadPoolExecutor executor;
+	
+	/**
+	 * The code that draws one frame.
+	 * 
+	 * @param <S> The type that describes what a frame shows.
+	 */
+	public interface Job<S> {
+
+		/**
+		 * Draw a complete frame into pixels. Implementations should poll cancelled
+		 * regularly and return early when it becomes true.
+		 * 
+		 * @param pixels The argb pixels of the back buffer.
+		 * @param shown What pixels held before this call or null if unknown.
+		 * @param cancelled Becomes true once a newer frame has been submitted.
+		 * @return What pixels hold now or null if the frame was not finished.
+		 */
+		S render(int[] pixels, S shown, BooleanSupplier cancelled);
+	}
+	
+	/**
+	 * 
+	 * @param display The component that shows published frames.
+	 * @param width The width in pixels of the first frame.
+	 * @param height The height in pixels of the first frame.
+	 */
+	public RenderService(ImagePane display, int width, int height) {
+		
+		this.display = display;
+		
+		this.backPixels = new int[width * height];
+		
+		this.backWidth = width;
+		
+		this.backHeight = height;
+		
+		display.setImage(argbImage(null, width, height));
+		
+		// one thread per viewer that goes away when the viewer is idle
+		
+		this.executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+			
+					@Override
+					public Thread newThread(Runnable r) {
+						
+						Thread t = new Thread(r, "zorbage-viewer-render");
+						
+						t.setDaemon(true);
+						
+						return t;
+					}
+				});
+		
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+	
+	/**
+	 * Queue a frame for drawing. Any frame that is already being drawn is cancelled.
+	 * 
+	 * @param width The width in pixels of the frame.
+	 * @param height The height in pixels of the frame.
+	 * @param job The code that draws the frame. It is passed a buffer of at least
+	 *   width * height pixels laid out in rows of width pixels.
+	 * @return A future that completes when the frame has been published or cancelled.
+	 */
+	public Future<?> submit(int width, int height, Job<S> job) {
+		
+		final long id = latest.incrementAndGet();
+		
+		final BooleanSupplier cancelled = new BooleanSupplier() {
+			
+			@Override
+			public boolean getAsBoolean() {
+
+				return latest.get() != id;
+			}
+		};
+		
+		return executor.submit(new Runnable() {
+			
+			@Override
+			public void run() {
+				
+				// skip frames that were superseded while waiting in the queue
+				
+				if (cancelled.getAsBoolean())
+					return;
+				
+				// the pixels of a frame of another size or of old data are of no use
+				// to the job
+				
+				if (stale.getAndSet(false))
+					backContents = null;
+				
+				if (width != backWidth || height != backHeight) {
+					
+					backPixels = pooled(backPixels, width * height);
+					
+					backWidth = width;
+					
+					backHeight = height;
+					
+					backContents = null;
+				}
+				
+				try {
+				
+					backContents = job.render(backPixels, backContents, cancelled);
+					
+				} catch (RuntimeException e) {
+					
+					backContents = null;
+					
+					e.printStackTrace();
+					
+					return;
+				}
+				
+				if (cancelled.getAsBoolean())
+					return;
+				
+				publish();
+			}
+		});
+	}
+
+	/**
+	 * Show the back buffer before the job drawing it has finished. Jobs that
+	 * draw a frame in passes, each of which leaves a complete picture, call this
+	 * from render() after each pass. Does nothing once the job is cancelled.
+	 * 
+	 * @param cancelled The flag the job was given.
+	 */
+	public void publishPass(BooleanSupplier cancelled) {
+		
+		if (!cancelled.getAsBoolean())
+			publish();
+	}
+	
+	/**
+	 * Forget what the back buffer holds so the next job draws every pixel. Call
+	 * this when the data changes in place.
+	 */
+	public void invalidate() {
+		
+		stale.set(true);
+	}
+	
+	/**
+	 * Cancel the frame being drawn and any frames waiting to be drawn.
+	 */
+	public void cancel() {
+		
+		latest.incrementAndGet();
+	}
+
+	// Copy the back buffer to the displayed image on the event thread. Wait for the
+	// copy so the next frame can't start drawing over the back buffer too early.
+	
+	private void publish() {
+		
+		try {
+			
+			SwingUtilities.invokeAndWait(new Runnable() {
+				
+				@Override
+				public void run() {
+					
+					BufferedImage image = display.getImage();
+					
+					if (image.getWidth() != backWidth || image.getHeight() != backHeight) {
+						
+						image = argbImage(image, backWidth, backHeight);
+						
+						display.setImage(image);
+					}
+					
+					int[] frontPixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+					
+					System.arraycopy(backPixels, 0, frontPixels, 0, backWidth * backHeight);
+					
+					display.repaint();
+				}
+			});
+			
+		} catch (InterruptedException e) {
+			
+			Thread.currentThread().interrupt();
+			
+		} catch (InvocationTargetException e) {
+			
+			e.getCause().printStackTrace();
+		}
+	}
+	
+	// make an image of a new size that reuses the pixels of an old one if they fit
+	
+	private static BufferedImage argbImage(BufferedImage old, int width, int height) {
+		
+		int[] pixels = null;
+		
+		if (old != null)
+			pixels = ((DataBufferInt) old.getRaster().getDataBuffer()).getData();
+		
+		pixels = pooled(pixels, width * height);
+		
+		DirectColorModel colorModel = (DirectColorModel) ColorModel.getRGBdefault();
+		
+		WritableRaster raster = Raster.createPackedRaster(new DataBufferInt(pixels, pixels.length),
+				width, height, width, colorModel.getMasks(), null);
+		
+		return new BufferedImage(colorModel, raster, false, null);
+	}
+	
+	// reuse an array if it is big enough and not much too big. grow with some room
+	// to spare so a window that is being dragged larger does not reallocate often.
+	
+	private static int[] pooled(int[] pixels, int size) {
+		
+		if (pixels != null && pixels.length >= size && pixels.length / 4 <= size)
+			return pixels;
+		
+		return new int[size + size / 4];
+	}
+}
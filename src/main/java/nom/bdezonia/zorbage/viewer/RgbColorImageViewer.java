@@ -39,23 +39,30 @@ import java.awt.Font;
 import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
 import java.math.BigDecimal;
-import java.math.BigInteger;
 import java.math.MathContext;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+import java.util.function.ToIntFunction;
 
 import javax.swing.Box;
 import javax.swing.BoxLayout;
 import javax.swing.ButtonGroup;
-import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
 import javax.swing.JDialog;
@@ -63,11 +70,11 @@ import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JRadioButton;
-import javax.swing.JScrollPane;
 import javax.swing.JSeparator;
 import javax.swing.JTextField;
-import javax.swing.SwingWorker;
+import javax.swing.SwingUtilities;
 
 import nom.bdezonia.zorbage.algebra.Algebra;
 import nom.bdezonia.zorbage.algebra.Allocatable;
@@ -80,7 +87,6 @@ import nom.bdezonia.zorbage.data.DimensionedDataSource;
 import nom.bdezonia.zorbage.data.DimensionedStorage;
 import nom.bdezonia.zorbage.datasource.IndexedDataSource;
 import nom.bdezonia.zorbage.dataview.PlaneView;
-import nom.bdezonia.zorbage.dataview.TwoDView;
 import nom.bdezonia.zorbage.misc.DataSourceUtils;
 import nom.bdezonia.zorbage.tuple.Tuple2;
 import nom.bdezonia.zorbage.type.color.ArgbAlgebra;
@@ -104,12 +110,17 @@ public class RgbColorImageViewer<T extends Algebra<T,U>, U> {
 	private final T alg;
 	private final PlaneView<U> planeData;
 	private final PanZoomView pz;
-	private final BufferedImage argbData;
+	private final ImagePane imagePane;
+	private final RenderService<PanZoomView> renderService;
+	private final ArgbPyramid<U> pyramid;
+	private final ArgbPrefetcher<U> prefetcher;
 	private final JLabel[] positionLabels;
 	private final JFrame frame;
 	private final Font font = new Font("Verdana", Font.PLAIN, 18);
-	private AtomicBoolean animatingRightNow = new AtomicBoolean();
-	private AtomicBoolean pleaseQuitAnimating = new AtomicBoolean();
+	private final PlaybackScheduler playback = new PlaybackScheduler();
+	private final JLabel playbackLabel;
+	private final FrameCache frameCache = new FrameCache();
+	private final JProgressBar frameCacheBar;
 	private final JLabel ctrXLabel; 
 	private final JLabel ctrYLabel; 
 	DecimalFormat df = new DecimalFormat("0.00000");
@@ -156,7 +167,33 @@ public class RgbColorImageViewer<T extends Algebra<T,U>, U> {
 		
 		frame.setLayout(new BorderLayout());
 		
-		argbData = new BufferedImage(pz.paneWidth, pz.paneHeight, BufferedImage.TYPE_INT_ARGB);
+		frame.addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosing(WindowEvent e) {
+				playback.stop();
+				frameCache.invalidate();
+				TileCache.shared().invalidate(planeData.getDataSource());  // else the shared cache keeps the data reachable
+			}
+		});
+		
+		imagePane = new ImagePane(pz.paneWidth, pz.paneHeight);
+		renderService = new RenderService<>(imagePane, pz.paneWidth, pz.paneHeight);
+		// zoomed out views of big planes draw from a reduced copy of the plane
+		pyramid = new ArgbPyramid<U>(alg, new IntConsumer() {
+			@Override
+			public void accept(int shift) {
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						// redraw if the new level is usable at the current zoom
+						if (pz.scaleDenom >= (1 << shift))
+							pz.draw();
+					}
+				});
+			}
+		});
+		// stepping and animating through planes draws from copies read ahead of time
+		prefetcher = new ArgbPrefetcher<U>(alg);
 		
 		positionLabels = new JLabel[planeData.getPositionsCount()];
 		for (int i = 0; i < positionLabels.length; i++) {
@@ -173,6 +210,14 @@ public class RgbColorImageViewer<T extends Algebra<T,U>, U> {
 		ctrYLabel = new JLabel("Zoom center d1:");
 		ctrYLabel.setFont(font);
 
+		playbackLabel = new JLabel("Playback:");
+		playbackLabel.setFont(font);
+
+		frameCacheBar = new JProgressBar(0, 100);
+		frameCacheBar.setStringPainted(true);
+		frameCacheBar.setString("Frame cache: empty");
+		frameCacheBar.setFont(font);
+
 		setZoomCenterLabels();
 		
 		JLabel sourceLabel = new JLabel("Source: "+source);
@@ -198,9 +243,19 @@ public class RgbColorImageViewer<T extends Algebra<T,U>, U> {
 		headerPanel.add(headerPanelLeft, BorderLayout.WEST);
 
 		JPanel graphicsPanel = new JPanel();
-		JLabel image = new JLabel(new ImageIcon(argbData));
-		JScrollPane scrollPane = new JScrollPane(image);
-		graphicsPanel.add(scrollPane, BorderLayout.CENTER);
+		graphicsPanel.setLayout(new BorderLayout());
+		graphicsPanel.add(imagePane, BorderLayout.CENTER);
+		
+		// the view follows the size of the window
+		imagePane.addComponentListener(new ComponentAdapter() {
+			@Override
+			public void componentResized(ComponentEvent e) {
+				if (pz.resize(imagePane.getWidth(), imagePane.getHeight())) {
+					setZoomCenterLabels();
+					pz.draw();
+				}
+			}
+		});
 
 		JPanel buttonPanel = new JPanel();
 		JButton metadata = new JButton("Metadata ...");
@@ -214,6 +269,7 @@ public class RgbColorImageViewer<T extends Algebra<T,U>, U> {
 		JButton panUp = new JButton("Pan Up");
 		JButton panDown = new JButton("Pan Down");
 		JButton resetZoom = new JButton("Reset Pan/Zoom");
+		JButton playbackSettings = new JButton("Playback ...");
 		JButton toFloat = new JButton("To Float ...");
 		JButton explode = new JButton("Explode ...");
 		JButton saveAs = new JButton("Save As ...");
@@ -226,6 +282,7 @@ public class RgbColorImageViewer<T extends Algebra<T,U>, U> {
 		panUp.setMinimumSize(size);
 		panDown.setMinimumSize(size);
 		resetZoom.setMinimumSize(size);
+		playbackSettings.setMinimumSize(size);
 		toFloat.setMinimumSize(size);
 		snapshot.setMinimumSize(size);
 		grabPlane.setMinimumSize(size);
@@ -240,6 +297,7 @@ public class RgbColorImageViewer<T extends Algebra<T,U>, U> {
 		panUp.setMaximumSize(size);
 		panDown.setMaximumSize(size);
 		resetZoom.setMaximumSize(size);
+		playbackSettings.setMaximumSize(size);
 		toFloat.setMaximumSize(size);
 		snapshot.setMaximumSize(size);
 		grabPlane.setMaximumSize(size);
@@ -255,6 +313,7 @@ public class RgbColorImageViewer<T extends Algebra<T,U>, U> {
 		vertBox.add(panUp);
 		vertBox.add(panDown);
 		vertBox.add(resetZoom);
+		vertBox.add(playbackSettings);
 		vertBox.add(toFloat);
 		vertBox.add(snapshot);
 		vertBox.add(grabPlane);
@@ -566,11 +625,17 @@ public class RgbColorImageViewer<T extends Algebra<T,U>, U> {
 					explode(dataSource, axis);
 			}
 		});
+		playbackSettings.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				playback.showSettings(frame);
+			}
+		});
 		saveAs.addActionListener(new ActionListener() {
 			
 			@Override
 			public void actionPerformed(ActionEvent e) {
-				new ImageSaver(frame, argbData).save();
+				new ImageSaver(frame, imagePane.getImage()).save();
 			}
 		});
 		
@@ -586,6 +651,7 @@ public class RgbColorImageViewer<T extends Algebra<T,U>, U> {
 			JButton incrementButton = new JButton(">");
 			JButton endButton = new JButton(">>");
 			JButton animButton = new JButton("Animate");
+			JButton cachedButton = new JButton("Animate (cached)");
 			JButton stopButton = new JButton("Stop");
 			JButton chooseButton = new JButton("Choose ...");
 			int axisPos = i;
@@ -603,6 +669,7 @@ public class RgbColorImageViewer<T extends Algebra<T,U>, U> {
 			miniPanel.add(incrementButton);
 			miniPanel.add(endButton);
 			miniPanel.add(animButton);
+			miniPanel.add(cachedButton);
 			miniPanel.add(stopButton);
 			miniPanel.add(chooseButton);
 			miniPanel.add(jax);
@@ -613,11 +680,14 @@ public class RgbColorImageViewer<T extends Algebra<T,U>, U> {
 			homeButton.addActionListener(new Home(i));
 			endButton.addActionListener(new End(i));
 			animButton.addActionListener(new Animator(i));
+			cachedButton.addActionListener(new CachedAnimator(i));
 			stopButton.addActionListener(new ActionListener() {
 				@Override
 				public void actionPerformed(ActionEvent e) {
-					if (animatingRightNow.get())
-						pleaseQuitAnimating.set(true);
+					playback.stop();
+					// don't start a cached animation whose frames are still being drawn
+					if (frameCache.cancelFill())
+						showFrameCacheEmpty();
 				}
 			});
 			chooseButton.addActionListener(new ActionListener() {
@@ -665,6 +735,7 @@ public class RgbColorImageViewer<T extends Algebra<T,U>, U> {
 							if (idx < 1) idx = 1;
 							if (idx > maxVal) idx = maxVal;
 							planeData.setPositionValue(axisPos, idx-1);
+							prefetcher.moved(planeData, axisPos);
 							CoordinateSpace space = planeData.getDataSource().getCoordinateSpace();
 							BigDecimal[] currCoords = new BigDecimal[space.numDimensions()];
 							getCurrCoords(space, currCoords);
@@ -682,97 +753,52 @@ public class RgbColorImageViewer<T extends Algebra<T,U>, U> {
 		readout.setOpaque(true);
 		readout.setText("");
 		readout.setFont(font);
-		scrollPane.addMouseMotionListener(new MouseMotionListener() {
-
-			long[] modelCoords = new long[dataSource.numDimensions()];
-			BigDecimal[] realWorldCoords = new BigDecimal[dataSource.numDimensions()]; 
+		DragPanner dragPanner = new DragPanner();
+		imagePane.addMouseListener(dragPanner);
+		// the readout of the point under the mouse
+		PointerReadout pointerReadout = new PointerReadout(readout, planeData, df) {
 			U value = alg.construct();
 			RgbMember rgb = (value instanceof RgbMember) ? (RgbMember) value : null;
 			ArgbMember argb = (value instanceof ArgbMember) ? (ArgbMember) value : null;
-
 			@Override
-			public void mouseMoved(MouseEvent e) {
-
-				// model X and mouse X move in the same direction
-				
-				int pixelX = e.getX();
-
-				// This weird math is because model "Y" runs bottom to
-				// top but mouse coords run top to bottom.
-
-				int pixelY = pz.paneHeight - e.getY() - 1;
-				
-				long i0 = pz.pixelToModel(pixelX, pz.getVirtualOriginX());
-
-				long i1 = pz.pixelToModel(pixelY, pz.getVirtualOriginY());
-
-				if (i0 >= 0 && i0 < planeData.d0() && i1 >= 0 && i1 < planeData.d1()) {
-					planeData.getModelCoords(i0, i1, modelCoords);
-					dataSource.getCoordinateSpace().project(modelCoords, realWorldCoords);
-					planeData.get(i0, i1, value);
-					int axisNumber0 = planeData.axisNumber0();
-					int axisNumber1 = planeData.axisNumber1();
-					StringBuilder sb = new StringBuilder();
-					sb.append(dataSource.getAxisType(axisNumber0));
-					sb.append(" = ");
-					sb.append(i0);
-					// only display calibrated values if they are not == 1.0 * uncalibrated values
-					if (axisNumber0 < dataSource.numDimensions()) {
-						if (realWorldCoords[axisNumber0].subtract(BigDecimal.valueOf(modelCoords[axisNumber0])).abs().compareTo(BigDecimal.valueOf(0.000001)) > 0) {
-							sb.append(" (");
-							sb.append(df.format(realWorldCoords[axisNumber0]));
-							sb.append(" ");
-							sb.append(dataSource.getAxisUnit(axisNumber0));
-							sb.append(")");
-						}
-					}
-					if (axisNumber1 < dataSource.numDimensions()) {
-						sb.append(", ");
-						sb.append(dataSource.getAxisType(axisNumber1));
-						sb.append(" = ");
-						sb.append(i1);
-					}
-					// only display calibrated values if they are not == 1.0 * uncalibrated values
-					if (axisNumber1 < dataSource.numDimensions()) {
-						if (realWorldCoords[axisNumber1].subtract(BigDecimal.valueOf(modelCoords[axisNumber1])).abs().compareTo(BigDecimal.valueOf(0.000001)) > 0) {
-							sb.append(" (");
-							sb.append(df.format(realWorldCoords[axisNumber1]));
-							sb.append(" ");
-							sb.append(dataSource.getAxisUnit(axisNumber1));
-							sb.append(")");
-						}
-					}
-					sb.append(", value = ");
-					if (rgb != null) {
-						sb.append('(');
-						sb.append(rgb.r());
-						sb.append(',');
-						sb.append(rgb.g());
-						sb.append(',');
-						sb.append(rgb.b());
-						sb.append(')');
-						
-					} else if (argb != null) {
-						sb.append('(');
-						sb.append(argb.a());
-						sb.append(',');
-						sb.append(argb.r());
-						sb.append(',');
-						sb.append(argb.g());
-						sb.append(',');
-						sb.append(argb.b());
-						sb.append(')');
-					}
-					else
-						throw new IllegalArgumentException("strange color type error");
-					sb.append(" ");
-					sb.append(dataSource.getValueUnit());
-					readout.setText(sb.toString());
+			protected ViewTransform view() {
+				return pz.transform();
+			}
+			@Override
+			protected void appendValue(long i0, long i1, StringBuffer sb) {
+				planeData.get(i0, i1, value);
+				if (rgb != null) {
+					sb.append('(');
+					sb.append(rgb.r());
+					sb.append(',');
+					sb.append(rgb.g());
+					sb.append(',');
+					sb.append(rgb.b());
+					sb.append(')');
 				}
+				else if (argb != null) {
+					sb.append('(');
+					sb.append(argb.a());
+					sb.append(',');
+					sb.append(argb.r());
+					sb.append(',');
+					sb.append(argb.g());
+					sb.append(',');
+					sb.append(argb.b());
+					sb.append(')');
+				}
+				else
+					throw new IllegalArgumentException("strange color type error");
+			}
+		};
+		imagePane.addMouseMotionListener(new MouseMotionListener() {
+			@Override
+			public void mouseMoved(MouseEvent e) {
+				pointerReadout.pointerMoved(e.getX(), e.getY());
 			}
-			
 			@Override
 			public void mouseDragged(MouseEvent e) {
+				dragPanner.mouseDragged(e);
 			}
 		});
 		
@@ -793,6 +819,8 @@ public class RgbColorImageViewer<T extends Algebra<T,U>, U> {
 		miscPanel.add(scaleLabel);
 		miscPanel.add(ctrXLabel);
 		miscPanel.add(ctrYLabel);
+		miscPanel.add(playbackLabel);
+		miscPanel.add(frameCacheBar);
 		miscPanel.add(new JSeparator());
 
 		JPanel sliderPanel = new JPanel();
@@ -826,15 +854,10 @@ public class RgbColorImageViewer<T extends Algebra<T,U>, U> {
 		DimensionedDataSource<U> newDs = (DimensionedDataSource<U>)
 				DimensionedStorage.allocate((Allocatable) alg.construct(), new long[] {dimX, dimY});
 		
-		U tmp = alg.construct();
-		
-		TwoDView<U> view = new TwoDView<>(newDs);
-		
-		for (int y = 0; y < dimY; y++) {
-			for (int x = 0; x < dimX; x++) {
-				planeData.get(x, y , tmp);
-				view.set(x, y, tmp);
-			}
+		// the new plane's rows are consecutive runs of its raw data
+		PlaneRowReader<U> reader = new PlaneRowReader<>(alg, planeData);
+		for (long y = 0; y < dimY; y++) {
+			reader.readValues(y, 0, dimX, newDs.rawData(), y * dimX);
 		}
 		
 		DimensionedDataSource<U> origDs = planeData.getDataSource();
@@ -923,6 +946,7 @@ public class RgbColorImageViewer<T extends Algebra<T,U>, U> {
 			if (pos < maxVal - 1) {
 				pos++;
 				planeData.setPositionValue(extraPos, pos);
+				prefetcher.moved(planeData, extraPos);
 				CoordinateSpace space = planeData.getDataSource().getCoordinateSpace();
 				BigDecimal[] currCoords = new BigDecimal[space.numDimensions()];
 				getCurrCoords(space, currCoords);
@@ -950,6 +974,7 @@ public class RgbColorImageViewer<T extends Algebra<T,U>, U> {
 			if (pos > 0) {
 				pos--;
 				planeData.setPositionValue(extraPos, pos);
+				prefetcher.moved(planeData, extraPos);
 				CoordinateSpace space = planeData.getDataSource().getCoordinateSpace();
 				BigDecimal[] currCoords = new BigDecimal[space.numDimensions()];
 				getCurrCoords(space, currCoords);
@@ -1011,6 +1036,37 @@ public class RgbColorImageViewer<T extends Algebra<T,U>, U> {
 			frame.repaint();
 		}
 	}
+	// pans the view to follow the mouse while a button is held down
+
+	private class DragPanner extends MouseAdapter {
+		
+		private int lastX;
+		private int lastY;
+		
+		@Override
+		public void mousePressed(MouseEvent e) {
+			lastX = e.getX();
+			lastY = e.getY();
+		}
+		
+		@Override
+		public void mouseDragged(MouseEvent e) {
+			int dx = e.getX() - lastX;
+			int dy = e.getY() - lastY;
+			if (dx == 0 && dy == 0)
+				return;
+			long origX = pz.getVirtualOriginX();
+			long origY = pz.getVirtualOriginY();
+			int[] used = pz.dragBy(dx, dy);
+			lastX += used[0];
+			lastY += used[1];
+			if (pz.getVirtualOriginX() != origX || pz.getVirtualOriginY() != origY) {
+				setZoomCenterLabels();
+				pz.draw();
+			}
+		}
+	}
+	
 	// code to set a slider to its max value and react
 
 	private class Animator implements ActionListener {
@@ -1023,75 +1079,145 @@ public class RgbColorImageViewer<T extends Algebra<T,U>, U> {
 
 		@Override
 		public void actionPerformed(ActionEvent e) {
-			
-			boolean wasAlreadyAnimating = animatingRightNow.getAndSet(true);
-			
-			if (wasAlreadyAnimating) return;
+			long maxVal = planeData.getDataSourceAxisSize(extraPos);
+			// the scheduler keeps to the chosen frame rate and skips the frames
+			// that could not be drawn in time.
+			playback.start(maxVal, new PlaybackScheduler.Player() {
+				@Override
+				public Future<?> show(long i) {
+					planeData.setPositionValue(extraPos, i);
+					prefetcher.moved(planeData, extraPos);
+					CoordinateSpace space = planeData.getDataSource().getCoordinateSpace();
+					BigDecimal[] currCoords = new BigDecimal[space.numDimensions()];
+					getCurrCoords(space, currCoords);
+					positionLabels[extraPos].setText(""+(i+1)+" / "+maxVal+" ("+currCoords[extraPos].round(roundContext)+")");
+					return pz.draw();
+				}
+				@Override
+				public void progress(double fps, long dropped, boolean playing) {
+					String rate = String.format("%.1f", fps);
+					playbackLabel.setText("Playback: " + rate + " fps, " + dropped + " dropped" + (playing ? "" : " (done)"));
+				}
+			});
+		}
+	}
+
+	// code to play the planes along an axis from frames that were drawn ahead of
+	// time. the frames are drawn the first time and reused until the view changes.
 
-			SwingWorker<Object, Object> worker = new SwingWorker<Object, Object>() {
+	private class CachedAnimator implements ActionListener {
 
+		private final int extraPos;
+
+		public CachedAnimator(int extraNum) {
+			extraPos = extraNum;
+		}
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			if (playback.isPlaying())
+				return;
+			long maxVal = planeData.getDataSourceAxisSize(extraPos);
+			PanZoomView frames = new PanZoomView(pz);
+			List<Object> key = frames.frameKey(extraPos);
+			if (frameCache.isReady(key)) {
+				play(key, maxVal);
+				return;
+			}
+			// the frames are already being drawn
+			if (frameCache.holds(key))
+				return;
+			frameCacheBar.setValue(0);
+			frameCacheBar.setString("Frame cache: 0 / " + maxVal);
+			frameCache.fill(extraPos, key, maxVal, frames.paneWidth, frames.paneHeight, new FrameCache.Renderer() {
 				@Override
-				protected Object doInBackground() throws Exception {
-					long maxVal = planeData.getDataSourceAxisSize(extraPos);
-					for (long i = 0; i < maxVal; i++) {
-						if (pleaseQuitAnimating.get()) {
-							pleaseQuitAnimating.getAndSet(false);
-							animatingRightNow.set(false);
-							return true;
-						}
-						planeData.setPositionValue(extraPos, i);
-						CoordinateSpace space = planeData.getDataSource().getCoordinateSpace();
-						BigDecimal[] currCoords = new BigDecimal[space.numDimensions()];
-						getCurrCoords(space, currCoords);
-						positionLabels[extraPos].setText(""+(i+1)+" / "+maxVal+" ("+currCoords[extraPos].round(roundContext)+")");
-						pz.draw();
-						// paint needed instead of repaint to show immediate animation
-						// But this method has a LOT of flicker. ImageJ1 uses double
-						// buffered drawing to avoid flicker. See ImageCanvas paint()
-						// I think.
-						frame.paint(frame.getGraphics());
-						try {
-							Thread.sleep(100);
-						} catch(InterruptedException excep) {
-							;
+				public boolean render(long frame, int[] pixels, BooleanSupplier cancelled) {
+					return frames.renderFrame(extraPos, frame, pixels, cancelled);
+				}
+			}, new FrameCache.Listener() {
+				@Override
+				public void progress(long filled, long total) {
+					if (!frameCache.holds(key))
+						return;
+					frameCacheBar.setValue((int) (100 * filled / total));
+					frameCacheBar.setString("Frame cache: " + filled + " / " + total);
+					if (filled == total && frameCache.isReady(key))
+						play(key, maxVal);
+				}
+				@Override
+				public void failed(String reason) {
+					showFrameCacheEmpty();
+					JOptionPane.showMessageDialog(frame,
+						    "Cannot cache the frames. " + reason,
+						    "WARNING",
+						    JOptionPane.WARNING_MESSAGE);
+				}
+			});
+		}
+
+		// play the cached frames by copying them to the screen. if the view changes
+		// during playback the cache is dropped and the frames are drawn as usual.
+
+		private void play(List<Object> key, long maxVal) {
+			playback.start(maxVal, new PlaybackScheduler.Player() {
+				@Override
+				public Future<?> show(long i) {
+					planeData.setPositionValue(extraPos, i);
+					CoordinateSpace space = planeData.getDataSource().getCoordinateSpace();
+					BigDecimal[] currCoords = new BigDecimal[space.numDimensions()];
+					getCurrCoords(space, currCoords);
+					positionLabels[extraPos].setText(""+(i+1)+" / "+maxVal+" ("+currCoords[extraPos].round(roundContext)+")");
+					if (!frameCache.isReady(key))
+						return pz.draw();
+					return renderService.submit(frameCache.width(), frameCache.height(), new RenderService.Job<PanZoomView>() {
+						@Override
+						public PanZoomView render(int[] pixels, PanZoomView shown, BooleanSupplier cancelled) {
+							// the cache can be dropped after isReady(). then this frame
+							// is not published and the plane is drawn the usual way.
+							if (!frameCache.copyFrame(i, pixels)) {
+								renderService.cancel();
+								SwingUtilities.invokeLater(new Runnable() {
+									@Override
+									public void run() {
+										pz.draw();
+									}
+								});
+							}
+							// the pixels no longer match any snapshot
+							return null;
 						}
-					}
-					pleaseQuitAnimating.getAndSet(false);
-					animatingRightNow.set(false);
-					return true;
+					});
 				}
-				
-			};
-			
-			worker.execute();
+				@Override
+				public void progress(double fps, long dropped, boolean playing) {
+					String rate = String.format("%.1f", fps);
+					playbackLabel.setText("Playback: " + rate + " fps, " + dropped + " dropped" + (playing ? "" : " (done)"));
+				}
+			});
 		}
 	}
 
+	private void showFrameCacheEmpty() {
+		frameCacheBar.setValue(0);
+		frameCacheBar.setString("Frame cache: empty");
+	}
+
 	private void setZoomCenterLabels() {
 
-		// TODO - take this code and make a viewCoord to modelCoord xform. Use it
-		// in mouse listener and here to DRY code up
-		
 		DimensionedDataSource<?> model = planeData.getDataSource();
 
-		long[] modelCoords = new long[model.numDimensions()];
-		BigDecimal[] realWorldCoords = new BigDecimal[model.numDimensions()];
-
-		int axisNumber0 = planeData.axisNumber0();
 		int axisNumber1 = planeData.axisNumber1();
 
-		long i0 = pz.pixelToModel(pz.paneWidth/2, pz.getVirtualOriginX());
-		long i1 = pz.pixelToModel(pz.paneHeight/2, pz.getVirtualOriginY());
-		
-		planeData.getModelCoords(i0, i1, modelCoords);
+		ViewTransform view = pz.transform();
 		
-		model.getCoordinateSpace().project(modelCoords, realWorldCoords);
+		long i0 = view.pixelToModelX(pz.paneWidth/2);
+		long i1 = view.pixelToModelY(pz.paneHeight/2);
 		
-		ctrXLabel.setText("Zoom Ctr d0: " + df.format(realWorldCoords[axisNumber0]));
+		ctrXLabel.setText("Zoom Ctr d0: " + df.format(view.worldX(i0, i1)));
 		if (axisNumber1 >= model.numDimensions())
 			ctrYLabel.setText("Zoom Ctr d1: 0");
 		else
-			ctrYLabel.setText("Zoom Ctr d1: " + df.format(realWorldCoords[axisNumber1]));
+			ctrYLabel.setText("Zoom Ctr d1: " + df.format(view.worldY(i0, i1)));
 	}
 	
 	@SuppressWarnings("unchecked")
@@ -1101,11 +1227,15 @@ public class RgbColorImageViewer<T extends Algebra<T,U>, U> {
 		private int scaleDenom; // >= 1
 		private long originX;  // model coords
 		private long originY;  // model coords
-		private final int paneWidth; // pixel window coords
-		private final int paneHeight;  // pixel window coords
+		private int paneWidth; // pixel window coords
+		private int paneHeight;  // pixel window coords
 		private long calculatedPaneWidth; // the best guess at model width of paneWidth at curr scale/offset
 		private long calculatedPaneHeight; // the best guess at model height of paneHeight at curr scale/offset
-		private final int maxScale;
+		private int maxScale;
+		private PlaneView<U> plane = null;  // the plane position a frame snapshot draws
+		private List<Object> drawnKey = null;  // the view state a snapshot was drawn with
+		private ViewTransform xform = null;  // pixel <-> model <-> world coords at the current pan / zoom
+		private int[] planeCopy = null;  // the plane's colors if they were read ahead of time
 		
 		public PanZoomView(int paneWidth, int paneHeight) {
 			this.paneWidth = paneWidth;
@@ -1113,6 +1243,24 @@ public class RgbColorImageViewer<T extends Algebra<T,U>, U> {
 			this.maxScale = Math.min(paneWidth, paneHeight);
 			setInitialNumbers();
 		}
+		
+		// make a frozen copy of another view that a render thread can draw while
+		// the user keeps changing the original.
+		
+		private PanZoomView(PanZoomView other) {
+			this.paneWidth = other.paneWidth;
+			this.paneHeight = other.paneHeight;
+			this.maxScale = other.maxScale;
+			this.scaleNumer = other.scaleNumer;
+			this.scaleDenom = other.scaleDenom;
+			this.originX = other.originX;
+			this.originY = other.originY;
+			this.xform = other.transform();
+			this.calculatedPaneWidth = other.calculatedPaneWidth;
+			this.calculatedPaneHeight = other.calculatedPaneHeight;
+			this.plane = RenderPool.duplicate(planeData);
+			this.planeCopy = (int[]) prefetcher.plane(plane);
+		}
 
 		private void setInitialNumbers() {
 			this.calculatedPaneWidth = paneWidth;
@@ -1145,7 +1293,35 @@ public class RgbColorImageViewer<T extends Algebra<T,U>, U> {
 			else
 				throw new IllegalArgumentException("weird scale components "+scaleNumer+" "+scaleDenom);
 		}
+		
+		/**
+		 * Change the size of the view to follow the size of its window. The model
+		 * point at the center of the view stays at the center.
+		 * 
+		 * @return True if the size changed.
+		 */
+		public boolean resize(int width, int height) {
+			if (width <= 0 || height <= 0 || (width == paneWidth && height == paneHeight))
+				return false;
+			originX += pixelToModel(paneWidth / 2, 0) - pixelToModel(width / 2, 0);
+			originY += pixelToModel(paneHeight / 2, 0) - pixelToModel(height / 2, 0);
+			this.paneWidth = width;
+			this.paneHeight = height;
+			this.maxScale = Math.min(width, height);  // zoom limits follow the window size
+			calcPaneSize();
+			return true;
+		}
 
+		/**
+		 * The transform between pixel, model and real world coords at the current
+		 * pan position and zoom level. It is only rebuilt after one of them changes.
+		 */
+		public ViewTransform transform() {
+			if (xform == null || !xform.matches(planeData, paneWidth, paneHeight, scaleNumer, scaleDenom, originX, originY))
+				xform = new ViewTransform(planeData, paneWidth, paneHeight, scaleNumer, scaleDenom, originX, originY);
+			return xform;
+		}
+		
 		public long getVirtualOriginX() {
 			return originX;
 		}
@@ -1311,6 +1487,23 @@ public class RgbColorImageViewer<T extends Algebra<T,U>, U> {
 			return true;
 		}
 		
+		/**
+		 * Pan so the image follows a mouse drag of dx, dy screen pixels. The pan is
+		 * made in whole model pixels and stops at the same limits as the pan buttons.
+		 * 
+		 * @return The screen pixels in x and y that the pan used up. When zoomed in
+		 *   the remainder should be carried into the next drag.
+		 */
+		public int[] dragBy(int dx, int dy) {
+			long modelDx = (scaleDenom > 1) ? ((long) dx) * scaleDenom : dx / scaleNumer;
+			long modelDy = (scaleDenom > 1) ? ((long) dy) * scaleDenom : dy / scaleNumer;
+			originX = Math.max(-(getVirtualWidth()-1), Math.min(planeData.d0()-1, originX - modelDx));
+			originY = Math.max(-(getVirtualHeight()-1), Math.min(planeData.d1()-1, originY - modelDy));
+			if (scaleDenom > 1)
+				return new int[] {dx, dy};
+			return new int[] {(int) (modelDx * scaleNumer), (int) (modelDy * scaleNumer)};
+		}
+		
 		public String effectiveScale() {
 			if (scaleDenom == 1)
 				return "" + scaleNumer + "X";
@@ -1332,84 +1525,352 @@ public class RgbColorImageViewer<T extends Algebra<T,U>, U> {
 				throw new IllegalArgumentException("back to the drawing board");
 		}
 		
-		private BigInteger modelToPixel(long modelNum, long modelOffset) {
+		
+		/**
+		 * Queue the current view for drawing on the render thread. Returns right
+		 * away. Any frame still being drawn is abandoned.
+		 * 
+		 * @return A future that completes when the frame is on screen or abandoned.
+		 */
+		public Future<?> draw() {
 
-			if (scaleNumer == 1 && scaleDenom == 1) {
-				return BigInteger.valueOf(modelNum).subtract(BigInteger.valueOf(modelOffset));
-			}
-			else if (scaleNumer > 1) {
-				return BigInteger.valueOf(modelNum).subtract(BigInteger.valueOf(modelOffset)).multiply(BigInteger.valueOf(scaleNumer));
-			}
-			else if (scaleDenom > 1) {
-				return BigInteger.valueOf(modelNum).subtract(BigInteger.valueOf(modelOffset)).divide(BigInteger.valueOf(scaleDenom));
+			Toolkit.getDefaultToolkit().sync();
+			
+			final PanZoomView snapshot = new PanZoomView(this);
+			// frames drawn ahead of time are of no use once the view changes
+			int cachedAxis = frameCache.axis();
+			if (cachedAxis >= 0 && frameCache.invalidateUnless(snapshot.frameKey(cachedAxis)))
+				showFrameCacheEmpty();
+			return renderService.submit(paneWidth, paneHeight, new RenderService.Job<PanZoomView>() {
+				@Override
+				public PanZoomView render(int[] pixels, PanZoomView shown, BooleanSupplier cancelled) {
+					return snapshot.render(pixels, shown, cancelled);
+				}
+			});
+		}
+		
+		// draw a snapshot into a buffer of argb pixels that currently shows another
+		// snapshot. runs on the render thread. returns this snapshot if the frame
+		// was finished and null if it was cancelled.
+		
+		private PanZoomView render(int[] arrayInt, PanZoomView shown, BooleanSupplier cancelled) {
+			
+			// when zoomed out use the reduced copy of the plane if one is ready
+			final PlanePyramid.Level level = (scaleDenom > 1) ? pyramid.level(plane, scaleDenom) : null;
+			// draw bands of rows in parallel when the data allows it
+			boolean oneThread = (level == null) && (planeCopy == null) &&
+					plane.getDataSource().rawData().accessWithOneThread();
+			final int levelShift = (level == null) ? 0 : level.shift;
+			drawnKey = TileCache.key(plane, paneWidth, scaleNumer, scaleDenom, levelShift);
+			boolean finished;
+			if (oneThread) {
+				// the prefetcher can be reading the same data on its own thread
+				synchronized (plane.getDataSource()) {
+					finished = drawFrame(arrayInt, shown, level, oneThread, cancelled);
+				}
 			}
 			else
-				throw new IllegalArgumentException("back to the drawing board");
+				finished = drawFrame(arrayInt, shown, level, oneThread, cancelled);
+			if (!finished)
+				return null;
+			outline(arrayInt);
+			// once a big plane is on screen start building its pyramid
+			if (plane.d0() > paneWidth || plane.d1() > paneHeight)
+				pyramid.build(plane);
+			return this;
 		}
 		
-		public void draw() {
-
-			// Reduce flicker while not needing to make any changes for double buffering or page flipping.
-			
-			Toolkit.getDefaultToolkit().sync();
-			
-			U value = alg.construct();
-			RgbMember rgb = (value instanceof RgbMember) ? (RgbMember) value : null;
-			ArgbMember argb = (value instanceof ArgbMember) ? (ArgbMember) value : null;
-
-			// Safe cast as img is of correct type 
-			
-			DataBufferInt buffer = (DataBufferInt) argbData.getRaster().getDataBuffer();
-
-			// Conveniently, the buffer already contains the data array
-			int[] arrayInt = buffer.getData();
-			
-			long maxDimX = planeData.d0();
-			long maxDimY = planeData.d1();
-			for (int y = 0; y < paneHeight; y++) {
-				long my = pixelToModel(y, originY);
-				for (int x = 0; x < paneWidth; x++) {
-					boolean modelCoordsInBounds = false;
-					long mx = pixelToModel(x, originX);
-					if (mx >= 0 && mx < maxDimX && my >= 0 && my < maxDimY) {
-						modelCoordsInBounds = true;
-						planeData.get(mx, my, value);
-					}
-					int color = 0;
-					if (modelCoordsInBounds) {
-
-						if (rgb != null) {
-							color = RgbUtils.argb(255, rgb.r(), rgb.g(), rgb.b());
-						}
-						else if (argb != null) {
-							color = RgbUtils.argb(argb.a(), argb.r(), argb.g(), argb.b());
-						}
-						else
-							throw new IllegalArgumentException("Unknown color type "+value.getClass().getSimpleName());
-					}
-					else {
-						color = RgbUtils.argb(255, 0, 0, 0);
-					}
-					
-					int boxHalfSize = drawingBoxHalfSize();
-					for (int dy = -boxHalfSize; dy <= boxHalfSize; dy++) {
-						int v = y + dy;
-						for (int dx = -boxHalfSize; dx <= boxHalfSize; dx++) {
-							int u = x + dx;
-							// plot a point
-							plot(color, arrayInt, u, v);
-						}
-					}
+		// draw this snapshot at another position along an extra axis. every pixel
+		// is drawn and the tile cache is left alone. returns false if the frame
+		// was cancelled. used to fill the frame cache.
+		
+		private boolean renderFrame(int extraPos, long position, int[] arrayInt, BooleanSupplier cancelled) {
+			plane.setPositionValue(extraPos, position);
+			planeCopy = (int[]) prefetcher.plane(plane);
+			final PlanePyramid.Level level = (scaleDenom > 1) ? pyramid.level(plane, scaleDenom) : null;
+			final boolean oneThread = (level == null) && (planeCopy == null) &&
+					plane.getDataSource().rawData().accessWithOneThread();
+			RenderPool.Band band = new RenderPool.Band() {
+				@Override
+				public void render(int y0, int y1) {
+					drawRect(arrayInt, level, 0, paneWidth, y0, y1, cancelled);
+				}
+			};
+			if (oneThread) {
+				synchronized (plane.getDataSource()) {
+					RenderPool.render(paneHeight, oneThread, band);
 				}
 			}
-			long maxX1 = planeData.d0()-1;
-			long maxY1 = planeData.d1()-1;
+			else
+				RenderPool.render(paneHeight, oneThread, band);
+			if (cancelled.getAsBoolean())
+				return false;
+			outline(arrayInt);
+			return true;
+		}
+		
+		// paint a yellow outline around the image boundaries
+		
+		private void outline(int[] arrayInt) {
+			long maxX1 = plane.d0()-1;
+			long maxY1 = plane.d1()-1;
 			line(arrayInt, 0, 0, 0, maxY1);
 			line(arrayInt, 0, maxY1, maxX1, maxY1);
 			line(arrayInt, maxX1, maxY1, maxX1, 0);
 			line(arrayInt, maxX1, 0, 0, 0);
 		}
 		
+		// everything that decides the colors of the frames of a walk along an
+		// extra axis. the same at every position along the axis.
+		
+		private List<Object> frameKey(int extraPos) {
+			List<Object> key = TileCache.key(plane, paneWidth, paneHeight, scaleNumer, scaleDenom, originX, originY);
+			// the positions follow the data source and the two axes
+			key.set(3 + extraPos, -1L);
+			return key;
+		}
+		
+		// draw the pixels of a frame. returns false if the frame was cancelled.
+		
+		private boolean drawFrame(int[] arrayInt, PanZoomView shown, PlanePyramid.Level level, boolean oneThread, BooleanSupplier cancelled) {
+			// if only the pan origin changed scroll the pixels we already have and
+			// draw just what scrolled into view
+			int[] distance = null;
+			if (shown != null && drawnKey.equals(shown.drawnKey))
+				distance = scrollDistance(shown);
+			if (distance != null) {
+				scroll(arrayInt, distance[0], distance[1]);
+				drawExposed(arrayInt, level, oneThread, distance[0], distance[1]);
+				return true;
+			}
+			// slow data is shown in coarse passes before the full resolution pass.
+			// a frame whose first tile is cached is probably all cached.
+			int[] steps = (level != null || planeCopy != null) ? new int[0] :
+				PaneRows.coarseSteps(plane.getDataSource().rawData(), false, scaleNumer);
+			int firstRows = Math.min(paneHeight, TileCache.TILE_ROWS);
+			if (steps.length > 0 && !TileCache.shared().fetch(tileKey(0, firstRows), arrayInt, 0, firstRows * paneWidth)) {
+				for (int step : steps) {
+					drawCoarse(arrayInt, oneThread, step, cancelled);
+					if (cancelled.getAsBoolean())
+						return false;
+					outline(arrayInt);
+					renderService.publishPass(cancelled);
+				}
+			}
+			drawTiles(arrayInt, level, oneThread, cancelled);
+			return !cancelled.getAsBoolean();
+		}
+		
+		// draw the whole pane in parallel bands at 1/step resolution. each band
+		// samples through its own reader.
+		
+		private void drawCoarse(int[] arrayInt, boolean oneThread, int step, BooleanSupplier cancelled) {
+			RenderPool.render(paneHeight, step, oneThread, new RenderPool.Band() {
+				@Override
+				public void render(int y0, int y1) {
+					int[] shows = PaneRows.clip(arrayInt, xform, plane.d0(), plane.d1(), 0, paneWidth, y0, y1);
+					if (shows == null)
+						return;
+					PlaneRowReader<U> reader = new PlaneRowReader<>(alg, RenderPool.duplicate(plane));
+					ToIntFunction<U> toArgb = PlaneRowReader.asArgb();
+					int[] color = new int[1];
+					PaneRows.drawCoarse(arrayInt, xform, step, shows[0], shows[1], shows[2], shows[3],
+							new PaneRows.Sampler()
+					{
+						@Override
+						public int argb(long mx, long my) {
+							reader.readInts(my, mx, 1, color, 0, toArgb);
+							return color[0];
+						}
+					}, cancelled);
+				}
+			});
+		}
+		
+		// draw the whole pane in parallel bands of whole tiles. tiles that have been
+		// drawn before with the same view state come from the tile cache.
+		
+		private void drawTiles(int[] arrayInt, PlanePyramid.Level level, boolean oneThread, BooleanSupplier cancelled) {
+			final TileCache tiles = TileCache.shared();
+			RenderPool.render(paneHeight, TileCache.TILE_ROWS, oneThread, new RenderPool.Band() {
+				@Override
+				public void render(int y0, int y1) {
+					for (int ty = y0; ty < y1; ty += TileCache.TILE_ROWS) {
+						int ty1 = Math.min(y1, ty + TileCache.TILE_ROWS);
+						List<Object> key = tileKey(ty, ty1 - ty);
+						if (tiles.fetch(key, arrayInt, ty * paneWidth, (ty1 - ty) * paneWidth))
+							continue;
+						drawRect(arrayInt, level, 0, paneWidth, ty, ty1, cancelled);
+						// never cache a partly drawn tile
+						if (cancelled.getAsBoolean())
+							return;
+						tiles.store(key, arrayInt, ty * paneWidth, (ty1 - ty) * paneWidth);
+					}
+				}
+			});
+		}
+		
+		// the tile cache key of the tile of the given number of rows that starts
+		// at row y. the last tile of a pane is usually short.
+		
+		private List<Object> tileKey(int y, int rows) {
+			List<Object> key = new ArrayList<>(drawnKey);
+			key.add(originX);
+			key.add(originY);
+			key.add(y);
+			key.add(rows);
+			return key;
+		}
+		
+		// how many screen pixels this view is panned from another view at the same
+		// zoom. null if the views don't overlap, are not a whole pixel apart or are
+		// not panned at all.
+		
+		private int[] scrollDistance(PanZoomView other) {
+			if (scaleNumer != other.scaleNumer || scaleDenom != other.scaleDenom)
+				return null;
+			long dx = originX - other.originX;
+			long dy = originY - other.originY;
+			if (Math.abs(dx) >= paneWidth * (long) scaleDenom || Math.abs(dy) >= paneHeight * (long) scaleDenom)
+				return null;
+			if (dx % scaleDenom != 0 || dy % scaleDenom != 0)
+				return null;
+			long px = dx * scaleNumer / scaleDenom;
+			long py = dy * scaleNumer / scaleDenom;
+			if (Math.abs(px) >= paneWidth || Math.abs(py) >= paneHeight)
+				return null;
+			// a redraw of the same view was asked for because something else changed
+			if (px == 0 && py == 0)
+				return null;
+			return new int[] {(int) px, (int) py};
+		}
+		
+		// move the pixels so that the one at (x+dx, y+dy) ends up at (x, y)
+		
+		private void scroll(int[] arrayInt, int dx, int dy) {
+			int width = paneWidth - Math.abs(dx);
+			int srcX = Math.max(0, dx);
+			int dstX = Math.max(0, -dx);
+			// copy in the order that never overwrites a row before it is read
+			if (dy >= 0) {
+				for (int y = 0; y < paneHeight - dy; y++)
+					System.arraycopy(arrayInt, (y + dy) * paneWidth + srcX, arrayInt, y * paneWidth + dstX, width);
+			}
+			else {
+				for (int y = paneHeight - 1; y >= -dy; y--)
+					System.arraycopy(arrayInt, (y + dy) * paneWidth + srcX, arrayInt, y * paneWidth + dstX, width);
+			}
+		}
+		
+		// draw the rows and columns that a scroll of dx, dy exposed
+		
+		private void drawExposed(int[] arrayInt, PlanePyramid.Level level, boolean oneThread, int dx, int dy) {
+			int top = Math.min(paneHeight, Math.max(0, -dy));
+			int bottom = Math.max(top, paneHeight - Math.max(0, dy));
+			int left = Math.min(paneWidth, Math.max(0, -dx));
+			int right = Math.max(left, paneWidth - Math.max(0, dx));
+			drawRegion(arrayInt, level, oneThread, 0, paneWidth, 0, top);
+			drawRegion(arrayInt, level, oneThread, 0, paneWidth, bottom, paneHeight);
+			drawRegion(arrayInt, level, oneThread, 0, left, top, bottom);
+			drawRegion(arrayInt, level, oneThread, right, paneWidth, top, bottom);
+		}
+		
+		// draw a rectangle of the pane in parallel bands. exposed strips are narrow
+		// so they are always finished rather than left half drawn by a cancel.
+		
+		private void drawRegion(int[] arrayInt, PlanePyramid.Level level, boolean oneThread, int x0, int x1, int y0, int y1) {
+			if (x0 >= x1 || y0 >= y1)
+				return;
+			BooleanSupplier never = new BooleanSupplier() {
+				@Override
+				public boolean getAsBoolean() {
+					return false;
+				}
+			};
+			RenderPool.render(y1 - y0, oneThread, new RenderPool.Band() {
+				@Override
+				public void render(int b0, int b1) {
+					drawRect(arrayInt, level, x0, x1, y0 + b0, y0 + b1, never);
+				}
+			});
+		}
+		
+		// draw the pixels from x0 to x1 (exclusive) of the rows y0 to y1 (exclusive)
+		
+		private void drawRect(int[] arrayInt, PlanePyramid.Level level, int x0, int x1, int y0, int y1, BooleanSupplier cancelled) {
+			// only the part that shows the plane is drawn pixel by pixel
+			int[] shows = PaneRows.clip(arrayInt, xform, plane.d0(), plane.d1(), x0, x1, y0, y1);
+			if (shows == null)
+				return;
+			int dx0 = shows[0], dx1 = shows[1], dy0 = shows[2], dy1 = shows[3];
+			if (level != null)
+				drawLevelRows(arrayInt, level, dx0, dx1, dy0, dy1, cancelled);
+			else
+				drawRows(arrayInt, dx0, dx1, dy0, dy1, cancelled);
+		}
+		
+		// draw rows from a pyramid level by sampling the level pixel under the
+		// center of each screen pixel. the level has already averaged the colors.
+		
+		private void drawLevelRows(int[] arrayInt, PlanePyramid.Level level, int x0, int x1, int y0, int y1, BooleanSupplier cancelled) {
+			int[] pixels = (int[]) level.pixels;
+			int shift = level.shift;
+			int black = RgbUtils.argb(255, 0, 0, 0);
+			for (int y = y0; y < y1; y++) {
+				// give up as soon as a newer frame is wanted
+				if (cancelled.getAsBoolean())
+					return;
+				long ly = (xform.pixelToModelY(y) + scaleDenom / 2) >> shift;
+				int bufferPos = y * paneWidth;
+				for (int x = x0; x < x1; x++) {
+					long lx = (xform.pixelToModelX(x) + scaleDenom / 2) >> shift;
+					if (lx >= 0 && lx < level.width && ly >= 0 && ly < level.height)
+						arrayInt[bufferPos + x] = pixels[(int) ly * level.width + (int) lx];
+					else
+						arrayInt[bufferPos + x] = black;
+				}
+			}
+		}
+		
+		// draw the columns from x0 to x1 of the rows from y0 (inclusive) to y1 (exclusive).
+		// this can be called from multiple threads at once so it only touches local
+		// scratch variables. each visible model pixel is read once and filled across
+		// its run of columns. rows that show the same model row are copied. at zoom 1
+		// the packed colors of a row are read straight into the pane.
+		
+		private void drawRows(int[] arrayInt, int x0, int x1, int y0, int y1, BooleanSupplier cancelled) {
+			// each band reads through its own view of the plane
+			PlaneView<U> bandPlane = RenderPool.duplicate(plane);
+			PlaneRowReader<U> reader = new PlaneRowReader<>(alg, bandPlane);
+			reader.useCopy(planeCopy);
+			ToIntFunction<U> toArgb = PlaneRowReader.asArgb();
+			// the model columns under the screen columns. drawRect() has already
+			// clipped the columns to the ones that show the plane.
+			long firstMx = xform.pixelToModelX(x0);
+			int count = (int) (xform.pixelToModelX(x1 - 1) - firstMx + 1);
+			// zoomed out the sampled columns are read one by one
+			int[] colors = (scaleDenom == 1 && scaleNumer > 1) ? new int[count] : null;
+			for (int y = y0; y < y1; y++) {
+				// give up as soon as a newer frame is wanted
+				if (cancelled.getAsBoolean())
+					return;
+				if (PaneRows.copyRepeatedRow(arrayInt, paneWidth, scaleNumer, x0, x1, y0, y))
+					continue;
+				long my = xform.pixelToModelY(y);
+				int rowStart = y * paneWidth;
+				if (scaleNumer == 1 && scaleDenom == 1)
+					reader.readInts(my, firstMx, count, arrayInt, rowStart + x0, toArgb);
+				else if (colors != null) {
+					reader.readInts(my, firstMx, count, colors, 0, toArgb);
+					PaneRows.expandRow(colors, firstMx, arrayInt, xform, scaleNumer, y, x0, x1);
+				}
+				else {
+					for (int x = x0; x < x1; x++)
+						reader.readInts(my, xform.pixelToModelX(x), 1, arrayInt, rowStart + x, toArgb);
+				}
+			}
+		}
+		
 		private void plot(int argb, int[] arrayInt, int x, int y) {
 			
 			if (x < 0 || x >= paneWidth || y < 0 || y >= paneHeight)
@@ -1425,58 +1886,37 @@ public class RgbColorImageViewer<T extends Algebra<T,U>, U> {
 			// yellow
 			int COLOR = RgbUtils.argb(180, 0xff, 0xff, 0);
 			
-			BigInteger pX0 = modelToPixel(modelX0, originX);
-			BigInteger pX1 = modelToPixel(modelX1, originX);
-			BigInteger pY0 = modelToPixel(modelY0, originY);
-			BigInteger pY1 = modelToPixel(modelY1, originY);
+			long pX0 = xform.modelToPixelX(modelX0);
+			long pX1 = xform.modelToPixelX(modelX1);
+			long pY0 = xform.modelToPixelY(modelY0);
+			long pY1 = xform.modelToPixelY(modelY1);
 			
 			// if the line coords are totally out of bounds then skip drawing
 			
-			if (pX0.compareTo(BigInteger.ZERO) < 0 &&
-					pX1.compareTo(BigInteger.ZERO) < 0)
-				return;
-
-			BigInteger width = BigInteger.valueOf(paneWidth-1);
+			int width = paneWidth-1;
 			
-			if (pX0.compareTo(width) > 0 && pX1.compareTo(width) > 0)
-				return;
+			int height = paneHeight-1;
 			
-			if (pY0.compareTo(BigInteger.ZERO) < 0 &&
-					pY1.compareTo(BigInteger.ZERO) < 0)
+			if ((pX0 < 0 && pX1 < 0) || (pX0 > width && pX1 > width))
 				return;
 			
-			BigInteger height = BigInteger.valueOf(paneHeight-1);
-			
-			if (pY0.compareTo(height) > 0 && pY1.compareTo(height) > 0)
+			if ((pY0 < 0 && pY1 < 0) || (pY0 > height && pY1 > height))
 				return;
 			
 			// clip line if necessary
 			
-			if (pX0.compareTo(BigInteger.ZERO) < 0)
-				pX0 = BigInteger.ZERO;
-
-			if (pX1.compareTo(width) > 0)
-				pX1 = width;
-
-			if (pY0.compareTo(BigInteger.ZERO) < 0)
-				pY0 = BigInteger.ZERO;
-
-			if (pY1.compareTo(height) > 0)
-				pY1 = height;
+			int x0 = (int) Math.max(0, Math.min(width, pX0));
+			int x1 = (int) Math.max(0, Math.min(width, pX1));
+			int y0 = (int) Math.max(0, Math.min(height, pY0));
+			int y1 = (int) Math.max(0, Math.min(height, pY1));
 			
-			if (pX0.compareTo(pX1) == 0) {
-				int x = pX0.intValue();
-				int minY = Math.min(pY0.intValue(), pY1.intValue());
-				int maxY = Math.max(pY0.intValue(), pY1.intValue());
-				for (int y = minY; y <= maxY; y++)
-					plot(COLOR, arrayInt, x, y);
+			if (x0 == x1) {
+				for (int y = Math.min(y0, y1); y <= Math.max(y0, y1); y++)
+					plot(COLOR, arrayInt, x0, y);
 			}
-			else if (pY0.compareTo(pY1) == 0) {
-				int y = pY0.intValue();
-				int minX = Math.min(pX0.intValue(), pX1.intValue());
-				int maxX = Math.max(pX0.intValue(), pX1.intValue());
-				for (int x = minX; x <= maxX; x++)
-					plot(COLOR, arrayInt, x, y);
+			else if (y0 == y1) {
+				for (int x = Math.min(x0, x1); x <= Math.max(x0, x1); x++)
+					plot(COLOR, arrayInt, x, y0);
 			}
 			else {
 				throw new IllegalArgumentException("the line() routine only deals in horz or vert lines");
@@ -1490,18 +1930,23 @@ public class RgbColorImageViewer<T extends Algebra<T,U>, U> {
 		@SuppressWarnings("rawtypes")
 		public DimensionedDataSource<ArgbMember> takeSnapshot()
 		{
-			int dimX = paneWidth;
+			// the frame on screen can be a different size than the view just after
+			// the window has been resized
+			
+			BufferedImage shown = imagePane.getImage();
+			
+			int dimX = shown.getWidth();
 			
-			int dimY = paneHeight;
+			int dimY = shown.getHeight();
 			
 			DimensionedDataSource<ArgbMember> newDs = (DimensionedDataSource<ArgbMember>)
 					DimensionedStorage.allocate((Allocatable) G.ARGB.construct(), new long[] {dimX, dimY});
 			
-			TwoDView<ArgbMember> view = new TwoDView<>(newDs);
+			IndexedDataSource<ArgbMember> pixels = newDs.rawData();
 			
 			// Safe cast as img is of correct type 
 			
-			DataBufferInt buffer = (DataBufferInt) argbData.getRaster().getDataBuffer();
+			DataBufferInt buffer = (DataBufferInt) shown.getRaster().getDataBuffer();
 
 			// Conveniently, the buffer already contains the data array
 			
@@ -1525,7 +1970,7 @@ public class RgbColorImageViewer<T extends Algebra<T,U>, U> {
 					
 					tmp.setB(RgbUtils.b(argb));
 					
-					view.set(x, y, tmp);
+					pixels.set(rowPos + x, tmp);
 				}
 			}
 			
@@ -0,0 +1,201 @@
+/*
+ * zorbage-viewer: utility app for loading and viewing various image data formats
+ *
+ * Copyright (c) 2020-2022 Barry DeZonia All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 
+ * Neither the name of the <copyright holder> nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+ * BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package nom.bdezonia.zorbage.viewer;
+
+import java.util.Arrays;
+
+/**
+ * Reduces blocks of values to one value per column. Values are added a row at a
+ * time in any column order and each column keeps a running mean, min, or max.
+ * NaNs poison a mean but are skipped by min and max. A column that received no
+ * values reduces to NaN.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class RowReducer {
+
+	/**
+	 * The ways a block of values can be reduced to one.
+	 */
+	public enum Filter {
+		
+		MEAN, MIN, MAX
+	}
+	
+	private final Filter filter;
+	private final double[] acc;
+	private final int[] counts;
+	private final double[] minMax = new double[2];
+	private final DisplayKernels kernels = DisplayKernels.get();
+	
+	/**
+	 * 
+	 * @param filter How each column is reduced.
+	 * @param width The number of columns.
+	 */
+	public RowReducer(Filter filter, int width) {
+		
+		this.filter = filter;
+		
+		this.acc = new double[width];
+		
+		this.counts = new int[width];
+		
+		clear();
+	}
+	
+	/**
+	 * Forget all values added so far.
+	 */
+	public void clear() {
+		
+		switch (filter) {
+		
+		case MIN:
+			Arrays.fill(acc, Double.POSITIVE_INFINITY);
+			break;
+			
+		case MAX:
+			Arrays.fill(acc, Double.NEGATIVE_INFINITY);
+			break;
+
+		default:
+			Arrays.fill(acc, 0);
+			break;
+		}
+		
+		Arrays.fill(counts, 0);
+	}
+	
+	/**
+	 * Add one value to a column.
+	 */
+	public void add(int column, double value) {
+		
+		switch (filter) {
+		
+		case MIN:
+			if (value != value) return;
+			if (value < acc[column]) acc[column] = value;
+			break;
+			
+		case MAX:
+			if (value != value) return;
+			if (value > acc[column]) acc[column] = value;
+			break;
+			
+		default:
+			acc[column] += value;
+			break;
+		}
+
+		counts[column]++;
+	}
+	
+	/**
+	 * Add a run of values to one column.
+	 */
+	public void add(int column, double[] values, int off, int count) {
+		
+		switch (filter) {
+		
+		case MIN:
+			int mins = kernels.minMax(values, off, count, minMax);
+			if (mins == 0) return;
+			if (minMax[0] < acc[column]) acc[column] = minMax[0];
+			counts[column] += mins;
+			break;
+			
+		case MAX:
+			int maxes = kernels.minMax(values, off, count, minMax);
+			if (maxes == 0) return;
+			if (minMax[1] > acc[column]) acc[column] = minMax[1];
+			counts[column] += maxes;
+			break;
+			
+		default:
+			acc[column] += kernels.sum(values, off, count);
+			counts[column] += count;
+			break;
+		}
+	}
+	
+	/**
+	 * Add a run of values to columns that are each 2^shift values wide. The
+	 * first value belongs to column firstX &gt;&gt; shift.
+	 */
+	public void addBlocks(long firstX, int shift, double[] values, int off, int count) {
+		
+		int i = 0;
+		
+		while (i < count) {
+			
+			long x = firstX + i;
+			
+			long column = x >> shift;
+			
+			int n = (int) Math.min(count - i, ((column + 1) << shift) - x);
+			
+			add((int) column, values, off + i, n);
+			
+			i += n;
+		}
+	}
+	
+	/**
+	 * The reduced values of a range of columns. NaN for columns that received
+	 * no values.
+	 */
+	public void results(int first, int last, double[] dest, int destOff) {
+		
+		for (int column = first; column < last; column++) {
+			
+			dest[destOff + column - first] = result(column);
+		}
+	}
+	
+	/**
+	 * The reduced value of a column. NaN if the column received no values.
+	 */
+	public double result(int column) {
+		
+		int count = counts[column];
+		
+		if (count == 0)
+			return Double.NaN;
+		
+		if (filter == Filter.MEAN)
+			return acc[column] / count;
+		
+		return acc[column];
+	}
+}
@@ -0,0 +1,213 @@
+/*
+ * zorbage-viewer: utility app for loading and viewing various image data formats
+ *
+ * Copyright (c) 2020-2022 Barry DeZonia All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 
+ * Neither the name of the <copyright holder> nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+ * BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package nom.bdezonia.zorbage.viewer;
+
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.GridLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+
+/**
+ * A window that shows the progress of a statistics calculation and then its
+ * results. Closing the window or pressing Cancel while the calculation is
+ * running calls the cancel action. Calculations that cannot be cancelled get
+ * no Cancel button.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class StatsDialog {
+
+	private final JDialog dialog;
+	private final JLabel phaseLabel = new JLabel(" ");
+	private final JProgressBar bar = new JProgressBar(0, 1000);
+	private final JButton button = new JButton("Cancel");
+	private boolean running = true;
+	
+	/**
+	 * 
+	 * @param owner The viewer window.
+	 * @param title The window title.
+	 * @param cancel Called on the Swing event thread when the user gives up on
+	 *   the calculation. null if the calculation cannot be cancelled. Its
+	 *   results are then dropped if the window is closed early.
+	 */
+	public StatsDialog(JFrame owner, String title, Runnable cancel) {
+		
+		dialog = new JDialog(owner, title, false);
+		
+		dialog.setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+		
+		dialog.addWindowListener(new WindowAdapter() {
+			
+			@Override
+			public void windowClosed(WindowEvent e) {
+				
+				if (running) {
+					
+					running = false;
+					
+					if (cancel != null)
+						cancel.run();
+				}
+			}
+		});
+		
+		button.addActionListener(new ActionListener() {
+			
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				
+				dialog.dispose();
+			}
+		});
+		
+		bar.setStringPainted(true);
+		
+		JPanel progress = new JPanel(new GridLayout(2, 1, 0, 6));
+		
+		progress.setBorder(BorderFactory.createEmptyBorder(12, 12, 6, 12));
+		
+		progress.add(phaseLabel);
+		
+		progress.add(bar);
+		
+		dialog.setLayout(new BorderLayout());
+		
+		dialog.add(progress, BorderLayout.CENTER);
+		
+		if (cancel != null)
+			dialog.add(buttonRow(), BorderLayout.SOUTH);
+		
+		dialog.pack();
+		
+		dialog.setLocationRelativeTo(owner);
+		
+		dialog.setVisible(true);
+	}
+	
+	/**
+	 * Show how far along the calculation is.
+	 * 
+	 * @param phase What is being calculated.
+	 * @param fraction From 0 to 1. Negative when the amount of work is unknown.
+	 */
+	public void progress(String phase, double fraction) {
+		
+		if (!running)
+			return;
+		
+		phaseLabel.setText(phase);
+		
+		if (fraction < 0) {
+			
+			bar.setIndeterminate(true);
+			
+			bar.setStringPainted(false);
+		}
+		else {
+			
+			bar.setIndeterminate(false);
+			
+			bar.setStringPainted(true);
+			
+			bar.setValue((int) Math.round(fraction * 1000));
+		}
+	}
+	
+	/**
+	 * Replace the progress display with a table of results.
+	 */
+	public void show(String[] names, String[] values) {
+		
+		if (!running)
+			return;
+		
+		running = false;
+		
+		JPanel table = new JPanel(new GridLayout(names.length, 2, 16, 4));
+		
+		table.setBorder(BorderFactory.createEmptyBorder(12, 12, 6, 12));
+		
+		for (int i = 0; i < names.length; i++) {
+			
+			table.add(new JLabel(names[i]));
+			
+			table.add(new JLabel(values[i]));
+		}
+		
+		button.setText("Close");
+		
+		dialog.getContentPane().removeAll();
+		
+		dialog.add(table, BorderLayout.CENTER);
+		
+		dialog.add(buttonRow(), BorderLayout.SOUTH);
+		
+		dialog.pack();
+	}
+	
+	/**
+	 * Whether the calculation is still wanted.
+	 */
+	public boolean isRunning() {
+		
+		return running;
+	}
+	
+	/**
+	 * Close the window. A running calculation is cancelled.
+	 */
+	public void close() {
+		
+		dialog.dispose();
+	}
+	
+	private JPanel buttonRow() {
+		
+		JPanel row = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+		
+		row.add(button);
+		
+		return row;
+	}
+}
@@ -0,0 +1,689 @@
+/*
+ * zorbage-viewer: utility app for loading and viewing various image data formats
+ *
+ * Copyright (c) 2020-2022 Barry DeZonia All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 
+ * Neither the name of the <copyright holder> nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+ * BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package nom.bdezonia.zorbage.viewer;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToDoubleFunction;
+
+import javax.swing.SwingUtilities;
+
+import nom.bdezonia.zorbage.algebra.Algebra;
+import nom.bdezonia.zorbage.datasource.IndexedDataSource;
+
+/**
+ * Calculates the statistics of a data source of a type whose values fit in a
+ * double. All the math is done in doubles on several threads and off of the
+ * Swing event thread.
+ * <p>
+ * The first pass finds the count, min, max, and the NaN and infinity counts,
+ * along with the mean and variance by Welford's method. The mean is updated
+ * with compensated summation. Partial results of ranges of the data are
+ * merged with the pairwise formulas of Chan et al. NaNs and infinities are
+ * left out of the mean and variance.
+ * <p>
+ * The median is exact. Each later pass makes a histogram of the values that
+ * can still be the median and remembers the smallest and largest value of
+ * every bin. The bin that holds the median bounds the values of the next
+ * pass. Once few enough values are left they are collected and sorted. Small
+ * integer types take one histogram pass.
+ * 
+ * @author Barry DeZonia
+ *
+ * @param <U> A type that supports GetAsDouble.
+ */
+public class StatsEngine<U> {
+
+	// the values read at a time
+	
+	private static final int BLOCK = 4096;
+	
+	private static final int BINS = 1 << 16;
+	
+	// the most values that are sorted to find the median
+	
+	private static final int COLLECT_LIMIT = 1 << 22;
+	
+	private final Algebra<?,U> alg;
+	private final IndexedDataSource<U> data;
+	private final Object lock;
+	private final PrimitiveKernel kernel;
+	private final AtomicLong generation = new AtomicLong();
+	private final AtomicLong done = new AtomicLong();
+	private volatile String phase = "";
+	private volatile int pass = 0;
+	
+	/**
+	 * The statistics of a data source.
+	 */
+	public static class Result {
+		
+		/** The number of values that are not NaNs or infinities. */
+		public long count;
+		public long nans;
+		public long positiveInfinities;
+		public long negativeInfinities;
+		/** Infinities are included. */
+		public double min = Double.NaN;
+		/** Infinities are included. */
+		public double max = Double.NaN;
+		public double mean = Double.NaN;
+		/** The sample standard deviation. */
+		public double stdDev = Double.NaN;
+		/** Infinities are included. */
+		public double median = Double.NaN;
+	}
+	
+	/**
+	 * Called when a calculation ends.
+	 */
+	public interface Listener {
+		
+		/**
+		 * Called on the Swing event thread with the statistics. Not called if the
+		 * calculation was cancelled.
+		 */
+		void finished(Result result);
+	}
+	
+	/**
+	 * 
+	 * @param alg The algebra of the values.
+	 * @param data The values.
+	 * @param lock The object that guards data if it can only be read by one
+	 *   thread at a time.
+	 */
+	public StatsEngine(Algebra<?,U> alg, IndexedDataSource<U> data, Object lock) {
+		
+		this.alg = alg;
+		
+		this.data = data;
+		
+		this.lock = lock;
+		
+		this.kernel = PrimitiveKernel.of(data, alg.construct());
+	}
+	
+	/**
+	 * Start calculating in the background. A calculation that is already running
+	 * is cancelled.
+	 */
+	public void start(Listener listener) {
+		
+		final long id = generation.incrementAndGet();
+		
+		Thread t = new Thread(new Runnable() {
+			
+			@Override
+			public void run() {
+				
+				Result result = calculate(id);
+				
+				SwingUtilities.invokeLater(new Runnable() {
+					
+					@Override
+					public void run() {
+						
+						if (result != null && generation.get() == id)
+							listener.finished(result);
+					}
+				});
+			}
+		}, "zorbage-viewer-stats");
+		
+		t.setDaemon(true);
+		
+		t.start();
+	}
+	
+	/**
+	 * Stop a running calculation. Its listener is not called.
+	 */
+	public void cancel() {
+		
+		generation.incrementAndGet();
+	}
+	
+	/**
+	 * What the running calculation is doing.
+	 */
+	public String phase() {
+		
+		return phase;
+	}
+	
+	/**
+	 * How far along the current pass is, from 0 to 1.
+	 */
+	public double progress() {
+		
+		long size = data.size();
+		
+		return (size == 0) ? 1 : Math.min(1, (double) done.get() / size);
+	}
+	
+	// returns null if cancelled
+	
+	private Result calculate(long id) {
+		
+		Result result = new Result();
+		
+		pass = 0;
+		
+		Moments moments = run(id, "Mean and variance", new Moments());
+		
+		if (moments == null)
+			return null;
+		
+		result.count = moments.count;
+		
+		result.nans = moments.nans;
+		
+		result.positiveInfinities = moments.posInfs;
+		
+		result.negativeInfinities = moments.negInfs;
+		
+		if (moments.count > 0) {
+			
+			result.min = moments.min;
+			
+			result.max = moments.max;
+			
+			result.mean = moments.mean;
+			
+			if (moments.count > 1)
+				result.stdDev = Math.sqrt(moments.m2 / (moments.count - 1));
+		}
+		
+		if (moments.negInfs > 0)
+			result.min = Double.NEGATIVE_INFINITY;
+		
+		if (moments.posInfs > 0)
+			result.max = Double.POSITIVE_INFINITY;
+		
+		// the middle one or two of the values in order. infinities are at the ends.
+		
+		long ordered = moments.negInfs + moments.count + moments.posInfs;
+		
+		if (ordered == 0)
+			return result;
+		
+		Double lower = rankedValue(id, moments, (ordered - 1) / 2);
+		
+		if (lower == null)
+			return null;
+		
+		Double upper = lower;
+		
+		if (ordered % 2 == 0) {
+			
+			upper = rankedValue(id, moments, ordered / 2);
+			
+			if (upper == null)
+				return null;
+		}
+		
+		result.median = (lower.doubleValue() == upper.doubleValue()) ? lower : (lower + upper) / 2;
+		
+		return result;
+	}
+	
+	// the value at a position of the non NaN values in order. null if cancelled.
+	
+	private Double rankedValue(long id, Moments moments, long rank) {
+		
+		if (rank < moments.negInfs)
+			return Double.NEGATIVE_INFINITY;
+		
+		rank -= moments.negInfs;
+		
+		if (rank >= moments.count)
+			return Double.POSITIVE_INFINITY;
+		
+		double lo = moments.min;
+		
+		double hi = moments.max;
+		
+		long candidates = moments.count;
+		
+		while (lo < hi && candidates > COLLECT_LIMIT) {
+			
+			Histogram histogram = run(id, "Median", new Histogram(lo, hi));
+			
+			if (histogram == null)
+				return null;
+			
+			int bin = 0;
+			
+			while (rank >= histogram.counts[bin]) {
+				
+				rank -= histogram.counts[bin];
+				
+				bin++;
+			}
+			
+			lo = histogram.mins[bin];
+			
+			hi = histogram.maxes[bin];
+			
+			candidates = histogram.counts[bin];
+		}
+		
+		if (lo == hi)
+			return lo;
+		
+		Collector collector = run(id, "Median", new Collector(lo, hi));
+		
+		if (collector == null)
+			return null;
+		
+		double[] values = Arrays.copyOf(collector.values, collector.size);
+		
+		Arrays.sort(values);
+		
+		return values[(int) rank];
+	}
+	
+	// run one pass over the data. returns null if cancelled.
+	
+	private <A extends Pass<A>> A run(long id, String what, A empty) {
+		
+		phase = what + " (pass " + (++pass) + ")";
+		
+		done.set(0);
+		
+		long size = data.size();
+		
+		if (data.accessWithOneThread()) {
+			
+			ToDoubleFunction<U> conv = PlaneRowReader.asDouble();
+			
+			U value = alg.construct();
+			
+			double[] block = new double[BLOCK];
+			
+			for (long start = 0; start < size; start += BLOCK) {
+				
+				if (generation.get() != id)
+					return null;
+				
+				int n = (int) Math.min(BLOCK, size - start);
+				
+				// let other readers have the data between blocks
+				
+				synchronized (lock) {
+					
+					for (int i = 0; i < n; i++) {
+						
+						data.get(start + i, value);
+						
+						block[i] = conv.applyAsDouble(value);
+					}
+				}
+				
+				empty.accept(block, n);
+				
+				done.addAndGet(n);
+			}
+			
+			return empty;
+		}
+		
+		// a few ranges per thread so threads that finish early can steal work
+		
+		long grain = Math.max(BLOCK * 16L, size / (RenderPool.parallelism() * 8L));
+		
+		A result = RenderPool.invokeInBackground(new PassTask<>(id, empty, 0, size, grain));
+		
+		return (generation.get() == id) ? result : null;
+	}
+	
+	@SuppressWarnings("serial")
+	private class PassTask<A extends Pass<A>> extends RecursiveTask<A> {
+		
+		private final long id;
+		private final A empty;
+		private final long start;
+		private final long end;
+		private final long grain;
+		
+		PassTask(long id, A empty, long start, long end, long grain) {
+			
+			this.id = id;
+			
+			this.empty = empty;
+			
+			this.start = start;
+			
+			this.end = end;
+			
+			this.grain = grain;
+		}
+		
+		@Override
+		protected A compute() {
+			
+			if (end - start <= grain)
+				return leaf();
+			
+			long mid = start + (end - start) / 2;
+			
+			PassTask<A> left = new PassTask<>(id, empty, start, mid, grain);
+			
+			left.fork();
+			
+			A right = new PassTask<>(id, empty, mid, end, grain).compute();
+			
+			A result = left.join();
+			
+			result.merge(right);
+			
+			return result;
+		}
+		
+		private A leaf() {
+			
+			A acc = empty.fresh();
+			
+			ToDoubleFunction<U> conv = PlaneRowReader.asDouble();
+			
+			U value = alg.construct();
+			
+			double[] block = new double[BLOCK];
+			
+			for (long i = start; i < end; i += BLOCK) {
+				
+				if (generation.get() != id)
+					break;
+				
+				int n = (int) Math.min(BLOCK, end - i);
+				
+				if (kernel != null)
+					kernel.readDoubles(i, 1, n, block, 0);
+				else {
+					
+					for (int k = 0; k < n; k++) {
+						
+						data.get(i + k, value);
+						
+						block[k] = conv.applyAsDouble(value);
+					}
+				}
+				
+				acc.accept(block, n);
+				
+				done.addAndGet(n);
+			}
+			
+			return acc;
+		}
+	}
+	
+	// what one pass calculates. each range of values gets its own fresh
+	// accumulator and the accumulators are merged pairwise.
+	
+	private static abstract class Pass<A extends Pass<A>> {
+		
+		abstract A fresh();
+		
+		abstract void accept(double[] block, int n);
+		
+		abstract void merge(A other);
+	}
+	
+	private static class Moments extends Pass<Moments> {
+		
+		long count = 0;
+		long nans = 0;
+		long posInfs = 0;
+		long negInfs = 0;
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		double mean = 0;
+		double meanError = 0;
+		double m2 = 0;
+		
+		@Override
+		Moments fresh() {
+			
+			return new Moments();
+		}
+		
+		@Override
+		void accept(double[] block, int n) {
+			
+			for (int i = 0; i < n; i++) {
+				
+				double v = block[i];
+				
+				if (v != v) {
+					nans++;
+					continue;
+				}
+				
+				if (v == Double.POSITIVE_INFINITY) {
+					posInfs++;
+					continue;
+				}
+				
+				if (v == Double.NEGATIVE_INFINITY) {
+					negInfs++;
+					continue;
+				}
+				
+				if (v < min) min = v;
+				
+				if (v > max) max = v;
+				
+				count++;
+				
+				double delta = v - mean;
+				
+				// add delta / count to the mean with Kahan compensation
+				
+				double y = delta / count - meanError;
+				
+				double t = mean + y;
+				
+				meanError = (t - mean) - y;
+				
+				mean = t;
+				
+				m2 += delta * (v - mean);
+			}
+		}
+		
+		@Override
+		void merge(Moments other) {
+			
+			nans += other.nans;
+			
+			posInfs += other.posInfs;
+			
+			negInfs += other.negInfs;
+			
+			if (other.count == 0)
+				return;
+			
+			if (count == 0) {
+				
+				count = other.count;
+				min = other.min;
+				max = other.max;
+				mean = other.mean;
+				meanError = other.meanError;
+				m2 = other.m2;
+				return;
+			}
+			
+			long n = count + other.count;
+			
+			// fold in the pending compensations before combining the means
+			
+			double meanA = mean - meanError;
+			
+			double delta = (other.mean - other.meanError) - meanA;
+			
+			mean = meanA + delta * other.count / n;
+			
+			m2 += other.m2 + delta * delta * ((double) count * other.count / n);
+			
+			meanError = 0;
+			
+			count = n;
+			
+			min = Math.min(min, other.min);
+			
+			max = Math.max(max, other.max);
+		}
+	}
+	
+	// counts the values from lo to hi in evenly sized bins
+	
+	private static class Histogram extends Pass<Histogram> {
+		
+		final double lo;
+		final double hi;
+		final double scale;
+		final long[] counts = new long[BINS];
+		final double[] mins = new double[BINS];
+		final double[] maxes = new double[BINS];
+		
+		Histogram(double lo, double hi) {
+			
+			this.lo = lo;
+			
+			this.hi = hi;
+			
+			// halved so that the widest double ranges do not overflow
+			
+			this.scale = (BINS * 0.5) / ((hi * 0.5) - (lo * 0.5));
+			
+			Arrays.fill(mins, Double.POSITIVE_INFINITY);
+			
+			Arrays.fill(maxes, Double.NEGATIVE_INFINITY);
+		}
+		
+		@Override
+		Histogram fresh() {
+			
+			return new Histogram(lo, hi);
+		}
+		
+		@Override
+		void accept(double[] block, int n) {
+			
+			for (int i = 0; i < n; i++) {
+				
+				double v = block[i];
+				
+				// also skips NaNs
+				
+				if (!(v >= lo && v <= hi))
+					continue;
+				
+				int bin = (int) ((v - lo) * scale);
+				
+				if (bin >= BINS) bin = BINS - 1;
+				
+				counts[bin]++;
+				
+				if (v < mins[bin]) mins[bin] = v;
+				
+				if (v > maxes[bin]) maxes[bin] = v;
+			}
+		}
+		
+		@Override
+		void merge(Histogram other) {
+			
+			for (int i = 0; i < BINS; i++) {
+				
+				counts[i] += other.counts[i];
+				
+				if (other.mins[i] < mins[i]) mins[i] = other.mins[i];
+				
+				if (other.maxes[i] > maxes[i]) maxes[i] = other.maxes[i];
+			}
+		}
+	}
+	
+	// gathers the values from lo to hi
+	
+	private static class Collector extends Pass<Collector> {
+		
+		final double lo;
+		final double hi;
+		double[] values = new double[256];
+		int size = 0;
+		
+		Collector(double lo, double hi) {
+			
+			this.lo = lo;
+			
+			this.hi = hi;
+		}
+		
+		@Override
+		Collector fresh() {
+			
+			return new Collector(lo, hi);
+		}
+		
+		@Override
+		void accept(double[] block, int n) {
+			
+			for (int i = 0; i < n; i++) {
+				
+				double v = block[i];
+				
+				if (v >= lo && v <= hi)
+					add(v);
+			}
+		}
+		
+		@Override
+		void merge(Collector other) {
+			
+			for (int i = 0; i < other.size; i++)
+				add(other.values[i]);
+		}
+		
+		private void add(double v) {
+			
+			if (size == values.length)
+				values = Arrays.copyOf(values, size * 2);
+			
+			values[size++] = v;
+		}
+	}
+}
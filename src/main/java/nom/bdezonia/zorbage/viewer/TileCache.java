@@ -0,0 +1,295 @@
+/*
+ * zorbage-viewer: utility app for loading and viewing various image data formats
+ *
+ * Copyright (c) 2020-2022 Barry DeZonia All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 
+ * Neither the name of the <copyright holder> nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+ * BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package nom.bdezonia.zorbage.viewer;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import nom.bdezonia.zorbage.dataview.PlaneView;
+
+/**
+ * A cache of rendered tiles shared by all the viewers. A tile is a strip of
+ * TILE_ROWS full width rows of argb pixels. It is keyed by everything that
+ * decides its colors: the plane, the axes, the zoom, the pan origin, the tile's
+ * row, and the color table and display range. Revisiting a view that is still
+ * cached is a copy instead of a render.
+ * 
+ * The least recently used tiles are dropped once the cache grows past its byte
+ * budget. The budget defaults to 64 MB and can be set with the system property
+ * zorbage.viewer.tilecache.mb or at run time with setBudget().
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class TileCache {
+
+	public static final String BUDGET_PROPERTY = "zorbage.viewer.tilecache.mb";
+	
+	public static final int TILE_ROWS = 64;
+	
+	private static final TileCache SHARED = new TileCache(defaultBudget());
+	
+	private final LinkedHashMap<List<Object>,int[]> tiles = new LinkedHashMap<>(64, 0.75f, true);
+	private long budget;
+	private long bytes = 0;
+	private long hits = 0;
+	private long misses = 0;
+	
+	/**
+	 * 
+	 * @param budget The most bytes of tiles to hold.
+	 */
+	public TileCache(long budget) {
+		
+		this.budget = budget;
+	}
+	
+	/**
+	 * Returns the cache that all the viewers share.
+	 */
+	public static TileCache shared() {
+		
+		return SHARED;
+	}
+	
+	/**
+	 * Make a tile key. The plane's data source, axes and position come first and
+	 * the rest of the view state follows.
+	 */
+	public static List<Object> key(PlaneView<?> plane, Object... viewState) {
+		
+		List<Object> key = new ArrayList<>(3 + plane.getPositionsCount() + viewState.length);
+		
+		key.add(plane.getDataSource());
+		
+		key.add(plane.axisNumber0());
+		
+		key.add(plane.axisNumber1());
+		
+		for (int i = 0; i < plane.getPositionsCount(); i++) {
+			
+			key.add(plane.getPositionValue(i));
+		}
+		
+		for (Object o : viewState) {
+			
+			key.add(o);
+		}
+		
+		return key;
+	}
+	
+	/**
+	 * Copy a cached tile into a buffer.
+	 * 
+	 * @param length The number of pixels the tile must have.
+	 * @return True if the tile was cached. False if it needs to be rendered.
+	 */
+	public boolean fetch(List<Object> key, int[] dest, int offset, int length) {
+		
+		int[] tile;
+		
+		synchronized (this) {
+			
+			tile = tiles.get(key);
+			
+			// a tile of another size would leave part of the buffer undrawn
+			
+			if (tile == null || tile.length != length) {
+				
+				misses++;
+				
+				return false;
+			}
+			
+			hits++;
+		}
+		
+		// tiles are never changed once stored so copy outside the lock
+		
+		System.arraycopy(tile, 0, dest, offset, tile.length);
+		
+		return true;
+	}
+	
+	/**
+	 * Store a copy of a freshly rendered tile.
+	 */
+	public void store(List<Object> key, int[] src, int offset, int length) {
+		
+		long size = 4L * length;
+		
+		if (size > budget())
+			return;
+		
+		int[] tile = new int[length];
+		
+		System.arraycopy(src, offset, tile, 0, length);
+		
+		synchronized (this) {
+			
+			int[] old = tiles.put(key, tile);
+			
+			if (old != null)
+				bytes -= 4L * old.length;
+			
+			bytes += size;
+			
+			evict();
+		}
+	}
+	
+	/**
+	 * Drop every tile of a data source. Call this when its values have been
+	 * changed in place.
+	 */
+	public synchronized void invalidate(Object dataSource) {
+		
+		Iterator<Map.Entry<List<Object>,int[]>> iter = tiles.entrySet().iterator();
+		
+		while (iter.hasNext()) {
+			
+			Map.Entry<List<Object>,int[]> entry = iter.next();
+			
+			if (entry.getKey().get(0) == dataSource) {
+				
+				bytes -= 4L * entry.getValue().length;
+				
+				iter.remove();
+			}
+		}
+	}
+	
+	/**
+	 * Drop every tile.
+	 */
+	public synchronized void clear() {
+		
+		tiles.clear();
+		
+		bytes = 0;
+	}
+	
+	/**
+	 * Change the most bytes of tiles to hold. Tiles are dropped right away if
+	 * the cache is over the new budget.
+	 */
+	public synchronized void setBudget(long budget) {
+		
+		this.budget = Math.max(0, budget);
+		
+		evict();
+	}
+	
+	public synchronized long budget() {
+		
+		return budget;
+	}
+	
+	/**
+	 * The number of bytes of tiles held now.
+	 */
+	public synchronized long bytes() {
+		
+		return bytes;
+	}
+	
+	/**
+	 * The number of fetches that found their tile.
+	 */
+	public synchronized long hits() {
+		
+		return hits;
+	}
+	
+	/**
+	 * The number of fetches that did not find their tile.
+	 */
+	public synchronized long misses() {
+		
+		return misses;
+	}
+	
+	/**
+	 * Zero the hit and miss counters.
+	 */
+	public synchronized void resetCounters() {
+		
+		hits = 0;
+		
+		misses = 0;
+	}
+	
+	@Override
+	public synchronized String toString() {
+		
+		return "TileCache: " + tiles.size() + " tiles, " + bytes + " of " + budget +
+				" bytes, " + hits + " hits, " + misses + " misses";
+	}
+	
+	// drop least recently used tiles until under budget
+	
+	private void evict() {
+		
+		Iterator<int[]> iter = tiles.values().iterator();
+		
+		while (bytes > budget && iter.hasNext()) {
+			
+			bytes -= 4L * iter.next().length;
+			
+			iter.remove();
+		}
+	}
+	
+	private static long defaultBudget() {
+		
+		long megabytes = 64;
+		
+		String prop = System.getProperty(BUDGET_PROPERTY);
+		
+		if (prop != null) {
+			
+			try {
+				
+				megabytes = Long.parseLong(prop.trim());
+				
+			} catch (NumberFormatException e) {
+				
+				System.out.println("Ignoring bad value for " + BUDGET_PROPERTY + ": " + prop);
+			}
+		}
+		
+		return Math.max(0, megabytes) * 1024 * 1024;
+	}
+}
@@ -0,0 +1,375 @@
+/*
+ * zorbage-viewer: utility app for loading and viewing various image data formats
+ *
+ * Copyright (c) 2020-2022 Barry DeZonia All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 
+ * Neither the name of the <copyright holder> nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+ * BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package nom.bdezonia.zorbage.viewer;
+
+import java.math.BigDecimal;
+
+import nom.bdezonia.zorbage.coordinates.CoordinateSpace;
+import nom.bdezonia.zorbage.coordinates.LinearNdCoordinateSpace;
+import nom.bdezonia.zorbage.data.DimensionedDataSource;
+import nom.bdezonia.zorbage.dataview.PlaneView;
+
+/**
+ * The mapping between the pixels of a pan / zoom viewport, the model coords
+ * of the plane it shows and the real world coords of that plane. It is fixed
+ * for one pan position and zoom level so it can be shared by the code that
+ * draws a frame, the code that draws the plane outline, the mouse readout and
+ * the zoom center labels, and they all agree on where a pixel is.
+ * <p>
+ * Pixel and model coords are related with long math that saturates rather
+ * than wraps when a far away model coord does not fit. When the data source
+ * has a linear coordinate space the real world projection of the two plane
+ * axes is reduced to a double scale and offset.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class ViewTransform {
+
+	private final PlaneView<?> plane;
+	private final CoordinateSpace space;
+	private final int paneWidth;
+	private final int paneHeight;
+	private final int scaleNumer;
+	private final int scaleDenom;
+	private final long originX;
+	private final long originY;
+	private final boolean linear;
+	private final double scaleX;
+	private final double offsetX;
+	private final double scaleY;
+	private final double offsetY;
+	
+	/**
+	 * Make the transform of a viewport.
+	 * 
+	 * @param plane The plane the viewport shows.
+	 * @param paneWidth The width of the viewport in pixels.
+	 * @param paneHeight The height of the viewport in pixels.
+	 * @param scaleNumer The zoom in factor (>= 1).
+	 * @param scaleDenom The zoom out factor (>= 1). Only one of the factors can be above 1.
+	 * @param originX The model x coord of the left column of pixels.
+	 * @param originY The model y coord of the top row of pixels.
+	 */
+	public ViewTransform(PlaneView<?> plane, int paneWidth, int paneHeight,
+			int scaleNumer, int scaleDenom, long originX, long originY)
+	{
+		if (scaleNumer < 1 || scaleDenom < 1 || (scaleNumer > 1 && scaleDenom > 1))
+			throw new IllegalArgumentException("weird scale components "+scaleNumer+" "+scaleDenom);
+		
+		this.plane = plane;
+		
+		this.space = plane.getDataSource().getCoordinateSpace();
+		
+		this.paneWidth = paneWidth;
+		
+		this.paneHeight = paneHeight;
+		
+		this.scaleNumer = scaleNumer;
+		
+		this.scaleDenom = scaleDenom;
+		
+		this.originX = originX;
+		
+		this.originY = originY;
+		
+		DimensionedDataSource<?> model = plane.getDataSource();
+		
+		int axisNumber0 = plane.axisNumber0();
+		
+		int axisNumber1 = plane.axisNumber1();
+		
+		this.linear = space instanceof LinearNdCoordinateSpace;
+		
+		if (linear) {
+
+			LinearNdCoordinateSpace linSpace = (LinearNdCoordinateSpace) space;
+			
+			this.scaleX = linSpace.getScale(axisNumber0).doubleValue();
+			
+			this.offsetX = linSpace.getOffset(axisNumber0).doubleValue();
+			
+			// a one dimensional source has no real y axis
+			
+			boolean hasY = axisNumber1 < model.numDimensions();
+			
+			this.scaleY = hasY ? linSpace.getScale(axisNumber1).doubleValue() : 1;
+			
+			this.offsetY = hasY ? linSpace.getOffset(axisNumber1).doubleValue() : 0;
+		}
+		else {
+			
+			this.scaleX = 1;
+			
+			this.offsetX = 0;
+			
+			this.scaleY = 1;
+			
+			this.offsetY = 0;
+		}
+	}
+	
+	/**
+	 * Tells whether this transform was made from the given viewport state. Used
+	 * to rebuild a transform only when the pan or zoom has changed.
+	 */
+	public boolean matches(PlaneView<?> plane, int paneWidth, int paneHeight,
+			int scaleNumer, int scaleDenom, long originX, long originY)
+	{
+		return this.plane == plane &&
+				this.space == plane.getDataSource().getCoordinateSpace() &&
+				this.paneWidth == paneWidth &&
+				this.paneHeight == paneHeight &&
+				this.scaleNumer == scaleNumer &&
+				this.scaleDenom == scaleDenom &&
+				this.originX == originX &&
+				this.originY == originY;
+	}
+	
+	public int paneWidth() {
+		
+		return paneWidth;
+	}
+	
+	public int paneHeight() {
+		
+		return paneHeight;
+	}
+	
+	/**
+	 * The model x coord that a column of pixels shows. When zoomed out this is
+	 * the first of the model columns the pixel covers.
+	 */
+	public long pixelToModelX(int pixelX) {
+		
+		return pixelToModel(pixelX, originX);
+	}
+	
+	/**
+	 * The model y coord that a row of pixels shows. When zoomed out this is
+	 * the first of the model rows the pixel covers.
+	 */
+	public long pixelToModelY(int pixelY) {
+		
+		return pixelToModel(pixelY, originY);
+	}
+	
+	/**
+	 * The column of pixels that shows a model x coord. When zoomed in this is
+	 * the first of the columns the model pixel covers. Coords far outside the
+	 * viewport saturate at Long.MIN_VALUE or Long.MAX_VALUE.
+	 */
+	public long modelToPixelX(long modelX) {
+		
+		return modelToPixel(modelX, originX);
+	}
+	
+	/**
+	 * The row of pixels that shows a model y coord. When zoomed in this is
+	 * the first of the rows the model pixel covers. Coords far outside the
+	 * viewport saturate at Long.MIN_VALUE or Long.MAX_VALUE.
+	 */
+	public long modelToPixelY(long modelY) {
+		
+		return modelToPixel(modelY, originY);
+	}
+	
+	/**
+	 * The pixels of the viewport that show any part of a plane of the given
+	 * size. The area is clipped to the viewport and may be empty.
+	 * 
+	 * @return The columns from [0] to [1] (exclusive) of the rows from [2] to
+	 *   [3] (exclusive).
+	 */
+	public int[] dataBounds(long modelWidth, long modelHeight) {
+		
+		int x0 = clip(modelToPixelX(0), paneWidth);
+		
+		int x1 = Math.max(x0, clip(pixelAfter(modelWidth, originX), paneWidth));
+		
+		int y0 = clip(modelToPixelY(0), paneHeight);
+		
+		int y1 = Math.max(y0, clip(pixelAfter(modelHeight, originY), paneHeight));
+		
+		return new int[] {x0, x1, y0, y1};
+	}
+	
+	/**
+	 * The real world coord along the plane's first axis of a model point.
+	 */
+	public BigDecimal worldX(long i0, long i1) {
+		
+		if (linear)
+			return BigDecimal.valueOf(scaleX * i0 + offsetX);
+		
+		return project(i0, i1, plane.axisNumber0());
+	}
+	
+	/**
+	 * The real world coord along the plane's second axis of a model point.
+	 */
+	public BigDecimal worldY(long i0, long i1) {
+		
+		if (linear)
+			return BigDecimal.valueOf(scaleY * i1 + offsetY);
+		
+		if (plane.axisNumber1() >= plane.getDataSource().numDimensions())
+			return BigDecimal.ZERO;
+		
+		return project(i0, i1, plane.axisNumber1());
+	}
+	
+	/**
+	 * Tells whether the real world coords of the plane axes are a double scale
+	 * and offset of their model coords. If so linearWorldX() and linearWorldY()
+	 * can be used in place of the BigDecimal projection.
+	 */
+	public boolean isLinear() {
+		
+		return linear;
+	}
+	
+	/**
+	 * The real world coord along the plane's first axis of a model x coord.
+	 * Only meaningful when isLinear() is true.
+	 */
+	public double linearWorldX(long i0) {
+		
+		return scaleX * i0 + offsetX;
+	}
+	
+	/**
+	 * The real world coord along the plane's second axis of a model y coord.
+	 * Only meaningful when isLinear() is true.
+	 */
+	public double linearWorldY(long i1) {
+		
+		return scaleY * i1 + offsetY;
+	}
+	
+	/**
+	 * Project a model point of the plane to real world coords using buffers that
+	 * the caller reuses from one call to the next.
+	 * 
+	 * @param modelCoords A buffer of numDimensions() longs of the data source.
+	 * @param realWorldCoords Set to the real world coords of every axis.
+	 */
+	public void project(long i0, long i1, long[] modelCoords, BigDecimal[] realWorldCoords) {
+		
+		plane.getModelCoords(i0, i1, modelCoords);
+		
+		space.project(modelCoords, realWorldCoords);
+	}
+	
+	/**
+	 * Tells whether the real world coords of the plane's first axis differ
+	 * from its model coords.
+	 */
+	public boolean isCalibratedX(long i0, long i1) {
+
+		if (linear)
+			return Math.abs(scaleX * i0 + offsetX - i0) > 0.000001;
+		
+		return worldX(i0, i1).subtract(BigDecimal.valueOf(i0)).abs().compareTo(BigDecimal.valueOf(0.000001)) > 0;
+	}
+	
+	/**
+	 * Tells whether the real world coords of the plane's second axis differ
+	 * from its model coords.
+	 */
+	public boolean isCalibratedY(long i0, long i1) {
+
+		if (linear)
+			return Math.abs(scaleY * i1 + offsetY - i1) > 0.000001;
+		
+		return worldY(i0, i1).subtract(BigDecimal.valueOf(i1)).abs().compareTo(BigDecimal.valueOf(0.000001)) > 0;
+	}
+	
+	private long pixelToModel(int pixelNum, long modelOffset) {
+		
+		if (scaleNumer > 1)
+			return Math.addExact(pixelNum / scaleNumer, modelOffset);
+		
+		return Math.addExact(Math.multiplyExact((long) pixelNum, scaleDenom), modelOffset);
+	}
+	
+	private long modelToPixel(long modelNum, long modelOffset) {
+		
+		try {
+			
+			long delta = Math.subtractExact(modelNum, modelOffset);
+			
+			if (scaleNumer > 1)
+				return Math.multiplyExact(delta, scaleNumer);
+			
+			// round toward -infinity so a model coord left of the origin is
+			// never mistaken for one in the first column
+			
+			return Math.floorDiv(delta, scaleDenom);
+		}
+		catch (ArithmeticException e) {
+			
+			return (modelNum < modelOffset) ? Long.MIN_VALUE : Long.MAX_VALUE;
+		}
+	}
+
+	// the first pixel past the one that shows the last of size model coords
+	
+	private long pixelAfter(long size, long modelOffset) {
+		
+		if (scaleNumer > 1)
+			return modelToPixel(size, modelOffset);
+		
+		long last = modelToPixel(size - 1, modelOffset);
+		
+		return (last == Long.MAX_VALUE) ? last : last + 1;
+	}
+	
+	private static int clip(long pixel, int paneSize) {
+		
+		return (int) Math.max(0, Math.min(paneSize, pixel));
+	}
+	
+	// the general projection for coordinate spaces that are not linear
+	
+	private BigDecimal project(long i0, long i1, int axis) {
+		
+		DimensionedDataSource<?> model = plane.getDataSource();
+		
+		long[] modelCoords = new long[model.numDimensions()];
+		
+		BigDecimal[] realWorldCoords = new BigDecimal[model.numDimensions()];
+		
+		project(i0, i1, modelCoords, realWorldCoords);
+		
+		return realWorldCoords[axis];
+	}
+}
@@ -0,0 +1,212 @@
+/*
+ * zorbage-viewer: utility app for loading and viewing various image data formats
+ *
+ * Copyright (c) 2020-2022 Barry DeZonia All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 
+ * Neither the name of the <copyright holder> nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+ * BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package nom.bdezonia.zorbage.viewer;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The display kernels written with the Java Vector API. Each loop processes as
+ * many values per step as the widest vectors of the cpu hold and finishes the
+ * tail with the scalar loops of the superclass. This class is compiled into
+ * the META-INF/versions/17 part of the jar and is only found by
+ * {@link DisplayKernels#get()}.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class VectorDisplayKernels extends DisplayKernels {
+
+	private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+	
+	private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+	
+	// ints with as many lanes as DOUBLES so that doubles convert lane for lane
+	
+	private static final VectorSpecies<Integer> INTS =
+			VectorSpecies.of(int.class, VectorShape.forBitSize(DOUBLES.length() * Integer.SIZE));
+	
+	public VectorDisplayKernels() {
+		
+		// touch the api now so that a missing module fails in DisplayKernels.get()
+		
+		DoubleVector.zero(DOUBLES);
+		
+		IntVector.zero(INTS);
+	}
+	
+	@Override
+	public String name() {
+		
+		return "vector (" + DOUBLES.vectorBitSize() + " bit)";
+	}
+	
+	@Override
+	public void argb(double[] values, int off, int count, double min, double scale,
+			int[] colorTable, int[] dest, int destOff)
+	{
+		int maxIndex = colorTable.length - 1;
+		
+		double halfMin = min * 0.5;
+		
+		int vectorEnd = DOUBLES.loopBound(count);
+		
+		for (int i = 0; i < vectorEnd; i += DOUBLES.length()) {
+			
+			DoubleVector v = DoubleVector.fromArray(DOUBLES, values, off + i);
+			
+			// mul() then add() rather than fma() so colors match the scalar loop
+			
+			IntVector index = (IntVector) v.mul(0.5).sub(halfMin).mul(scale).add(0.5).max(0).min(maxIndex)
+					.convertShape(VectorOperators.D2I, INTS, 0);
+			
+			// the indices are parked in dest and then replaced by what they gather
+			
+			index.intoArray(dest, destOff + i);
+			
+			IntVector colors = IntVector.fromArray(INTS, colorTable, 0, dest, destOff + i);
+			
+			VectorMask<Double> black = v.test(VectorOperators.IS_NAN).or(v.eq(Double.NEGATIVE_INFINITY));
+			
+			VectorMask<Double> white = v.eq(Double.POSITIVE_INFINITY);
+			
+			colors = colors.blend(DisplayMapping.BLACK, black.cast(INTS)).blend(DisplayMapping.WHITE, white.cast(INTS));
+			
+			colors.intoArray(dest, destOff + i);
+		}
+		
+		super.argb(values, off + vectorEnd, count - vectorEnd, min, scale, colorTable, dest, destOff + vectorEnd);
+	}
+	
+	@Override
+	public int minMax(double[] values, int off, int count, double[] minMax) {
+		
+		int vectorEnd = DOUBLES.loopBound(count);
+		
+		DoubleVector min = DoubleVector.broadcast(DOUBLES, Double.POSITIVE_INFINITY);
+		
+		DoubleVector max = DoubleVector.broadcast(DOUBLES, Double.NEGATIVE_INFINITY);
+		
+		int nans = 0;
+		
+		for (int i = 0; i < vectorEnd; i += DOUBLES.length()) {
+			
+			DoubleVector v = DoubleVector.fromArray(DOUBLES, values, off + i);
+			
+			VectorMask<Double> nan = v.test(VectorOperators.IS_NAN);
+			
+			if (nan.anyTrue()) {
+				
+				nans += nan.trueCount();
+				
+				min = min.min(v.blend(Double.POSITIVE_INFINITY, nan));
+				
+				max = max.max(v.blend(Double.NEGATIVE_INFINITY, nan));
+			}
+			else {
+				
+				min = min.min(v);
+				
+				max = max.max(v);
+			}
+		}
+		
+		int counted = super.minMax(values, off + vectorEnd, count - vectorEnd, minMax);
+		
+		minMax[0] = Math.min(minMax[0], min.reduceLanes(VectorOperators.MIN));
+		
+		minMax[1] = Math.max(minMax[1], max.reduceLanes(VectorOperators.MAX));
+		
+		return counted + vectorEnd - nans;
+	}
+	
+	@Override
+	public int minMax(float[] values, int off, int count, double[] minMax) {
+		
+		int vectorEnd = FLOATS.loopBound(count);
+		
+		FloatVector min = FloatVector.broadcast(FLOATS, Float.POSITIVE_INFINITY);
+		
+		FloatVector max = FloatVector.broadcast(FLOATS, Float.NEGATIVE_INFINITY);
+		
+		int nans = 0;
+		
+		for (int i = 0; i < vectorEnd; i += FLOATS.length()) {
+			
+			FloatVector v = FloatVector.fromArray(FLOATS, values, off + i);
+			
+			VectorMask<Float> nan = v.test(VectorOperators.IS_NAN);
+			
+			if (nan.anyTrue()) {
+				
+				nans += nan.trueCount();
+				
+				min = min.min(v.blend(Float.POSITIVE_INFINITY, nan));
+				
+				max = max.max(v.blend(Float.NEGATIVE_INFINITY, nan));
+			}
+			else {
+				
+				min = min.min(v);
+				
+				max = max.max(v);
+			}
+		}
+		
+		int counted = super.minMax(values, off + vectorEnd, count - vectorEnd, minMax);
+		
+		minMax[0] = Math.min(minMax[0], min.reduceLanes(VectorOperators.MIN));
+		
+		minMax[1] = Math.max(minMax[1], max.reduceLanes(VectorOperators.MAX));
+		
+		return counted + vectorEnd - nans;
+	}
+	
+	@Override
+	public double sum(double[] values, int off, int count) {
+		
+		int vectorEnd = DOUBLES.loopBound(count);
+		
+		DoubleVector sum = DoubleVector.zero(DOUBLES);
+		
+		for (int i = 0; i < vectorEnd; i += DOUBLES.length()) {
+			
+			sum = sum.add(DoubleVector.fromArray(DOUBLES, values, off + i));
+		}
+		
+		return sum.reduceLanes(VectorOperators.ADD) + super.sum(values, off + vectorEnd, count - vectorEnd);
+	}
+}